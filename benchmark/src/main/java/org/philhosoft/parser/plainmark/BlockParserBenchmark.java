@@ -0,0 +1,83 @@
+package org.philhosoft.parser.plainmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.parser.StringWalker;
+
+/**
+ * Classification of the lines by their block sign, and block parsing of documents made of short lines of all block types,
+ * where the fragment parsing is minimal.
+ * <p>
+ * In the package of the parser, to time its package-private classification of the lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BlockParserBenchmark
+{
+	private static final String[] LINES =
+	{
+		"# Title", "## Subtitle", "### Section", "- item", "* item", "+ item", "1. first", "12. twelfth", "#hashtag",
+		"-5 degrees", "2024 was", "Plain line", "*bold* line", "~# not a title", "~12. not an item", "~~ escaped escape",
+	};
+	private static final String BLOCKS = "# Title\n## Subtitle\n\nText\nof paragraph\n\n- item\n* item\n1. first\n2. second\n" +
+			"```\ncode\n```\n### Section\n\n";
+
+	private final CompiledSyntax syntax = new ParsingParameters().compile();
+	private final String document;
+
+	public BlockParserBenchmark()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+		{
+			sb.append(BLOCKS);
+		}
+		document = sb.toString();
+	}
+
+	/**
+	 * Finds the block type of a line, with the code of the block parser: block signs, numbered items and escapes.
+	 * Includes the creation of a walker per line. Results are per line.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(16)
+	public int classifyLines()
+	{
+		int count = 0;
+		for (String line : LINES)
+		{
+			BlockType blockType = BlockParser.checkBlockSignWithEscape(new StringWalker(line), syntax);
+			if (blockType != null)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parses a document of 1 500 short lines (titles, lists, paragraphs, code blocks). Results are per line.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(1500)
+	public Block parseBlocks()
+	{
+		return BlockParser.parse(new StringWalker(document), syntax);
+	}
+}
@@ -0,0 +1,118 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.concurrent.AsyncConverter;
+
+/**
+ * Bursts of concurrent conversions with the {@link AsyncConverter}: all the conversions of a burst are started at once,
+ * then awaited. One operation is a whole burst.
+ * <p>
+ * Compares platform threads (a thread per task, and a pool sized to the processors) with the default executor
+ * of the converter, which uses virtual threads on Java 21 and later (a pool otherwise).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class BurstBenchmark
+{
+	/**
+	 * The executors running the conversions.
+	 */
+	public enum Threads
+	{
+		/** A new platform thread per conversion (cached thread pool). */
+		THREAD_PER_TASK,
+		/** A pool of platform threads, one per processor. */
+		POOL,
+		/** AsyncConverter.getDefaultExecutor(): virtual threads when available. */
+		DEFAULT;
+	}
+
+	@Param({ "THREAD_PER_TASK", "POOL", "DEFAULT" })
+	public Threads threads;
+
+	@Param({ "10000" })
+	public int burstSize;
+
+	private ExecutorService executor;
+	private AsyncConverter converter;
+	private String[] documents;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		documents = Corpus.CHAT.getDocuments();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor()).build();
+		Executor chosen;
+		switch (threads)
+		{
+		case THREAD_PER_TASK:
+			executor = Executors.newCachedThreadPool();
+			chosen = executor;
+			break;
+		case POOL:
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			chosen = executor;
+			break;
+		default:
+			chosen = AsyncConverter.getDefaultExecutor();
+			break;
+		}
+		converter = new AsyncConverter(engine, chosen);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		if (executor != null)
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Starts all the conversions of a burst, then waits for all of them.
+	 *
+	 * @return the total length of the outputs
+	 */
+	@Benchmark
+	public long burst() throws InterruptedException, ExecutionException
+	{
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[burstSize];
+		for (int i = 0; i < burstSize; i++)
+		{
+			futures[i] = converter.convertAsync(documents[i % documents.length]);
+		}
+		CompletableFuture.allOf(futures).get();
+		long length = 0;
+		for (CompletableFuture<?> future : futures)
+		{
+			length += ((String) future.get()).length();
+		}
+		return length;
+	}
+}
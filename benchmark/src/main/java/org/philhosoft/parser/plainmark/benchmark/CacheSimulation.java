@@ -0,0 +1,181 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.philhosoft.parser.plainmark.cache.RenderCache;
+import org.philhosoft.parser.plainmark.cache.RenderKey;
+
+/**
+ * Replays a Zipfian trace of requests (a few very popular texts, a long tail of rare ones) on render caches
+ * of several capacities, with and without frequency admission, and reports their hit rates.
+ * <p>
+ * It shows which capacity a given popularity skew needs, and how much the TinyLFU admission gains over plain LRU;
+ * the cache tests only check that it gains something. Run with:
+ * <pre>
+ * java -cp benchmark/target/benchmarks.jar org.philhosoft.parser.plainmark.benchmark.CacheSimulation [options]
+ * </pre>
+ * Options: <code>-items 50000</code> distinct texts, <code>-requests 300000</code>, <code>-exponent 0.9</code> of the
+ * Zipf law (higher is more skewed), <code>-capacities 500,2500,10000</code> in entries, <code>-seed 42</code>.
+ */
+public class CacheSimulation
+{
+	private static final String OUTPUT = new String(new char[200]);
+
+	/**
+	 * Hit rates of the caches of a capacity.
+	 */
+	public static class Result
+	{
+		private final int capacity;
+		private final RenderCache lru;
+		private final RenderCache tinyLfu;
+
+		Result(int capacity, RenderCache lru, RenderCache tinyLfu)
+		{
+			this.capacity = capacity;
+			this.lru = lru;
+			this.tinyLfu = tinyLfu;
+		}
+
+		public int getCapacity()
+		{
+			return capacity;
+		}
+		public double getLruHitRate()
+		{
+			return lru.getHitRate();
+		}
+		public double getTinyLfuHitRate()
+		{
+			return tinyLfu.getHitRate();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%,9d  LRU %5.1f %% (%,d evictions)  TinyLFU %5.1f %% (%,d evictions, %,d rejections)  %+5.1f points",
+					capacity, getLruHitRate() * 100, lru.getEvictionCount(), getTinyLfuHitRate() * 100,
+					tinyLfu.getEvictionCount(), tinyLfu.getRejectionCount(), (getTinyLfuHitRate() - getLruHitRate()) * 100);
+		}
+	}
+
+	private final int[] trace;
+
+	public CacheSimulation(int[] trace)
+	{
+		this.trace = trace;
+	}
+
+	/**
+	 * Replays the trace on an LRU cache and a TinyLFU cache of each given capacity, in entries.
+	 */
+	public List<Result> run(int... capacities)
+	{
+		long entryWeight = getEntryWeight();
+		List<Result> results = new ArrayList<Result>();
+		for (int capacity : capacities)
+		{
+			RenderCache lru = new RenderCache(entryWeight * capacity, false);
+			RenderCache tinyLfu = new RenderCache(entryWeight * capacity, true);
+			replay(lru);
+			replay(tinyLfu);
+			results.add(new Result(capacity, lru, tinyLfu));
+		}
+		return results;
+	}
+
+	private void replay(RenderCache cache)
+	{
+		for (int item : trace)
+		{
+			RenderKey key = new RenderKey(item, item, 0);
+			if (cache.get(key) == null)
+			{
+				cache.put(key, OUTPUT);
+			}
+		}
+	}
+
+	/** The estimated weight of an entry, overhead included, as the cache counts it. */
+	private static long getEntryWeight()
+	{
+		RenderCache probe = new RenderCache(Long.MAX_VALUE, false);
+		probe.put(new RenderKey(0, 0, 0), OUTPUT);
+		return probe.getWeight();
+	}
+
+	/**
+	 * Makes a trace of item numbers, the probability of item k being proportional to 1 / k^exponent.
+	 */
+	public static int[] makeZipfianTrace(int itemCount, int requestCount, double exponent, Random random)
+	{
+		double[] cumulated = new double[itemCount];
+		double sum = 0;
+		for (int k = 0; k < itemCount; k++)
+		{
+			sum += 1 / Math.pow(k + 1, exponent);
+			cumulated[k] = sum;
+		}
+		int[] trace = new int[requestCount];
+		for (int i = 0; i < requestCount; i++)
+		{
+			int index = Arrays.binarySearch(cumulated, random.nextDouble() * sum);
+			trace[i] = index >= 0 ? index : -index - 1;
+		}
+		return trace;
+	}
+
+	public static void main(String[] args)
+	{
+		int itemCount = 50000;
+		int requestCount = 300000;
+		double exponent = 0.9;
+		int[] capacities = { 500, 2500, 10000 };
+		long seed = 42;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			if (args[i].equals("-items"))
+			{
+				itemCount = Integer.parseInt(value);
+			}
+			else if (args[i].equals("-requests"))
+			{
+				requestCount = Integer.parseInt(value);
+			}
+			else if (args[i].equals("-exponent"))
+			{
+				exponent = Double.parseDouble(value);
+			}
+			else if (args[i].equals("-capacities"))
+			{
+				String[] values = value.split(",");
+				capacities = new int[values.length];
+				for (int c = 0; c < values.length; c++)
+				{
+					capacities[c] = Integer.parseInt(values[c].trim());
+				}
+			}
+			else if (args[i].equals("-seed"))
+			{
+				seed = Long.parseLong(value);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		System.out.println(String.format(Locale.ROOT, "Hit rates of %,d requests over %,d texts, Zipf exponent %.2f",
+				requestCount, itemCount, exponent));
+		int[] trace = makeZipfianTrace(itemCount, requestCount, exponent, new Random(seed));
+		for (Result result : new CacheSimulation(trace).run(capacities))
+		{
+			System.out.println(result);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.parser.CharacterCheck;
+
+/**
+ * Applies the {@link CharacterCheck} predicates to each character of the specification document,
+ * a realistic mix of letters, spaces, signs and line breaks. Results are per character.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CharacterCheckBenchmark
+{
+	private final char[] chars = StringWalkerBenchmark.fitLength(StringWalkerBenchmark.TEXT).toCharArray();
+
+	@Benchmark
+	@OperationsPerInvocation(StringWalkerBenchmark.LENGTH)
+	public int isWhitespace()
+	{
+		int count = 0;
+		for (char c : chars)
+		{
+			if (CharacterCheck.isWhitespace(c))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(StringWalkerBenchmark.LENGTH)
+	public int isAlphaNumerical()
+	{
+		int count = 0;
+		for (char c : chars)
+		{
+			if (CharacterCheck.isAlphaNumerical(c))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(StringWalkerBenchmark.LENGTH)
+	public int isDigit()
+	{
+		int count = 0;
+		for (char c : chars)
+		{
+			if (CharacterCheck.isDigit(c))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(StringWalkerBenchmark.LENGTH)
+	public int isLineTerminator()
+	{
+		int count = 0;
+		for (char c : chars)
+		{
+			if (CharacterCheck.isLineTerminator(c))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(StringWalkerBenchmark.LENGTH)
+	public int isOneOf()
+	{
+		int count = 0;
+		for (char c : chars)
+		{
+			if (CharacterCheck.isOneOf(c, "*_-`~"))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+}
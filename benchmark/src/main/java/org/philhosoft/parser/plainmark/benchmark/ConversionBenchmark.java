@@ -0,0 +1,93 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.parser.plainmark.PlainMark;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.jfr.JFRConversionMonitor;
+
+/**
+ * End-to-end conversions of each corpus, one document per operation, cycling over the documents of the corpus.
+ * <p>
+ * Measures the throughput (documents per second) and the latency distribution of the conversions.
+ * Run with <code>-prof gc</code> (done by default by {@link BenchmarkRunner}) to get the allocation rate
+ * (<code>gc.alloc.rate.norm</code> is the number of bytes allocated per document).
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConversionBenchmark
+{
+	@Param({ "CHAT", "LINKS", "CODE", "SPEC", "PATHOLOGICAL", "GENERATED" })
+	public Corpus corpus;
+
+	private String[] documents;
+	private int index;
+	private PlainMarkEngine engine;
+	private PlainMarkEngine monitoredEngine;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		documents = corpus.getDocuments();
+		engine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor()).build();
+		monitoredEngine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor())
+				.setMonitor(new JFRConversionMonitor()).build();
+	}
+
+	private String nextDocument()
+	{
+		String document = documents[index];
+		index = index + 1 == documents.length ? 0 : index + 1;
+		return document;
+	}
+
+	/**
+	 * The usual entry point, creating a new converter on each call.
+	 */
+	@Benchmark
+	public String convertToHTML()
+	{
+		return PlainMark.convertToHTML(nextDocument());
+	}
+
+	@Benchmark
+	public String convertToPlainText()
+	{
+		return PlainMark.convertToPlainText(nextDocument());
+	}
+
+	/**
+	 * Same as {@link #convertToHTML()} with a shared engine, compiling the syntax only once.
+	 */
+	@Benchmark
+	public String engineToHTML()
+	{
+		return engine.convert(nextDocument());
+	}
+
+	/**
+	 * Same as {@link #engineToHTML()} with a JFRConversionMonitor, out of any recording: should cost about the same.
+	 */
+	@Benchmark
+	public String monitoredEngineToHTML()
+	{
+		return monitoredEngine.convert(nextDocument());
+	}
+}
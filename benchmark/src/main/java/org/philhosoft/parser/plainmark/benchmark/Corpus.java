@@ -0,0 +1,130 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.philhosoft.parser.plainmark.generator.DocumentGenerator;
+
+/**
+ * Sets of documents the benchmarks convert, from the typical use of PlainMark (short comments) to inputs made to stress the parsers.
+ * <p>
+ * The text corpora are resources where documents are separated by lines holding only <code>%%</code>.
+ * The pathological one is generated, always the same.
+ */
+public enum Corpus
+{
+	/** Short chat or issue comments, a few lines with little markup. */
+	CHAT("chat.txt"),
+	/** Posts full of explicit links and bare URLs. */
+	LINKS("links.txt"),
+	/** Posts with code blocks and code fragments. */
+	CODE("code.txt"),
+	/** The specification of PlainMark, a large document using all the markup. */
+	SPEC("PlainMark - Simple Humane Markup.txt"),
+	/** Inputs hard for the parsers: unclosed or deeply nested signs, long lines, lots of escapes, etc. */
+	PATHOLOGICAL(null),
+	/** Synthetic documents of all sizes, from a few lines to 100 K characters, always the same. */
+	GENERATED(null);
+
+	private static final String SEPARATOR = "\n%%\n";
+
+	private final String resourceName;
+
+	private Corpus(String resourceName)
+	{
+		this.resourceName = resourceName;
+	}
+
+	/**
+	 * Returns the documents of this corpus, with Unix line endings.
+	 */
+	public String[] getDocuments()
+	{
+		if (this == GENERATED)
+			return generateDocuments();
+		if (resourceName == null)
+			return generatePathologicalDocuments();
+
+		String text = readResource("/corpus/" + resourceName).replace("\r\n", "\n");
+		List<String> documents = new ArrayList<String>();
+		int start = 0;
+		int end;
+		while ((end = text.indexOf(SEPARATOR, start)) >= 0)
+		{
+			documents.add(text.substring(start, end));
+			start = end + SEPARATOR.length();
+		}
+		documents.add(text.substring(start));
+		return documents.toArray(new String[documents.size()]);
+	}
+
+	private static String readResource(String path)
+	{
+		InputStream in = Corpus.class.getResourceAsStream(path);
+		if (in == null)
+			throw new IllegalStateException("Corpus not found: " + path);
+		try
+		{
+			try
+			{
+				return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Cannot read the corpus " + path, e);
+		}
+	}
+
+	private static String[] generatePathologicalDocuments()
+	{
+		return new String[]
+		{
+			// Opening signs never closed: each one is tried until the end of the line
+			repeat("*a _b -c `d [e ", 2000),
+			// Deep nesting, closed in reverse order at the end of the line
+			repeat("*_-", 300) + "x" + repeat("-_*", 300),
+			// Signs glued to letters or escaped, that all stay literal
+			repeat("x*y_z-w ~*~_~-~`~~ ", 2000),
+			// Unbalanced brackets and parentheses of links
+			repeat("[[[(", 1000) + "http://example.com/" + repeat(")", 1000),
+			// A single huge URL, beyond any maximal link length
+			"See http://example.com/" + repeat("abcdefghij/", 2000) + " now",
+			// Many short list items and titles
+			repeat("- item\n* *bold* item\n# Title\n1. number\n", 1000),
+			// A very long paragraph without any markup
+			repeat("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ", 2000),
+			// Many empty lines and unterminated code blocks
+			repeat("\n\n\n```\ncode\n", 1000),
+		};
+	}
+
+	private static String[] generateDocuments()
+	{
+		DocumentGenerator generator = new DocumentGenerator.Builder().setSeed(2016).build();
+		String[] documents = new String[20];
+		for (int i = 0; i < documents.length; i++)
+		{
+			// 100 to 100 000 characters, growing geometrically
+			documents[i] = generator.generate((int) (100 * Math.pow(1000, i / 19.0)));
+		}
+		return documents;
+	}
+
+	private static String repeat(String s, int count)
+	{
+		StringBuilder sb = new StringBuilder(s.length() * count);
+		for (int i = 0; i < count; i++)
+		{
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,59 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.parser.StringWalker;
+import org.philhosoft.parser.plainmark.CompiledSyntax;
+import org.philhosoft.parser.plainmark.FragmentParser;
+import org.philhosoft.parser.plainmark.ParsingParameters;
+
+/**
+ * Parses single lines of various kinds with {@link FragmentParser}, without the block parsing around it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FragmentParserBenchmark
+{
+	public enum LineKind
+	{
+		PLAIN("Just a plain line of text, without any markup sign, as most lines of comments are."),
+		DECORATED("Some *bold*, _italic_, -deleted- and `code` text, and *_nested -styles-_* too."),
+		LINK("See [the *documentation*](https://docs.example.org/guide/index.html) and [the FAQ](https://example.org/faq)."),
+		URL("Bare URLs: https://example.com/issues/101, http://www.example.com/a/very/long/path/to/a/resource.html"),
+		ESCAPED("Escaped ~*signs~*, ~_x~_, ~-y~-, ~`z~` and ~[not a link~](http~://example.com) ~~ ~~"),
+		UNCLOSED("Opening *signs _never -closed `here [neither *there _or -elsewhere `at [all and *more _signs");
+
+		private final String line;
+
+		private LineKind(String line)
+		{
+			this.line = line;
+		}
+	}
+
+	@Param
+	public LineKind kind;
+
+	private final CompiledSyntax syntax = new ParsingParameters().compile();
+
+	@Benchmark
+	public Line parse()
+	{
+		return FragmentParser.parse(new StringWalker(kind.line), syntax);
+	}
+}
@@ -0,0 +1,58 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.generator.DocumentGenerator;
+
+/**
+ * Parses documents of the {@link DocumentGenerator}, regular or of an adversarial shape, at several sizes,
+ * to see how each path of the parsers scales with the size of the input: the time per character should stay flat.
+ * <p>
+ * Eg. <code>java -jar target/benchmarks.jar GeneratedDocumentBenchmark -p shape=DEEP_NESTING -p length=1000,1000000</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GeneratedDocumentBenchmark
+{
+	/** REGULAR for the usual documents, or the name of a shape of DocumentGenerator. */
+	@Param({ "REGULAR", "DEEP_NESTING", "UNTERMINATED_NESTING", "BRACKET_STORM", "ESCAPE_STORM", "LONG_URLS",
+			"BLOCK_SIGN_STORM" })
+	public String shape;
+
+	@Param({ "1000", "100000" })
+	public int length;
+
+	private final PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+	private String document;
+
+	@Setup
+	public void setUp()
+	{
+		DocumentGenerator generator = new DocumentGenerator.Builder().setSeed(length).build();
+		document = shape.equals("REGULAR") ? generator.generate(length) :
+				generator.generate(DocumentGenerator.Shape.valueOf(shape), length);
+	}
+
+	@Benchmark
+	public Block parse()
+	{
+		return engine.parse(document);
+	}
+}
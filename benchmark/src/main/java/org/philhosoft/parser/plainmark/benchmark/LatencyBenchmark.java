@@ -0,0 +1,125 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.metrics.LatencyRecorder;
+
+/**
+ * Measures the latency distribution of the conversions of a mix of documents, per size class of the documents,
+ * to see the tail latencies (p99, p99.9) that averages hide.
+ * <p>
+ * Each thread converts the documents of all the corpora in a shuffled order, with its own engine and
+ * {@link LatencyRecorder}, so the recording does not contend; the recorders are merged at the end.
+ * Run with:
+ * <pre>
+ * java -cp benchmark/target/benchmarks.jar org.philhosoft.parser.plainmark.benchmark.LatencyBenchmark [options]
+ * </pre>
+ * Options: <code>-threads n</code>, <code>-time seconds</code>, <code>-export file</code> to write the merged histogram
+ * of all the conversions, eg. to merge it with the ones of other machines.
+ */
+public class LatencyBenchmark
+{
+	private static final long WARM_UP_MILLIS = 5000;
+
+	private final List<String> documents = new ArrayList<String>();
+
+	public LatencyBenchmark(Corpus... corpora)
+	{
+		for (Corpus corpus : corpora)
+		{
+			Collections.addAll(documents, corpus.getDocuments());
+		}
+	}
+
+	/**
+	 * Converts the documents on the given number of threads during the given time.
+	 *
+	 * @return the latencies of all the threads
+	 */
+	public LatencyRecorder run(int threadCount, final long durationMillis) throws InterruptedException
+	{
+		final LatencyRecorder[] recorders = new LatencyRecorder[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++)
+		{
+			final int index = t;
+			recorders[t] = new LatencyRecorder();
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(recorders[index]).build();
+					List<String> shuffled = new ArrayList<String>(documents);
+					Random random = new Random(index);
+					long end = System.nanoTime() + durationMillis * 1000000;
+					while (System.nanoTime() < end)
+					{
+						Collections.shuffle(shuffled, random);
+						for (String document : shuffled)
+						{
+							engine.convert(document);
+						}
+					}
+				}
+			}, "latency-" + t);
+			threads[t].start();
+		}
+
+		LatencyRecorder merged = new LatencyRecorder();
+		for (int t = 0; t < threadCount; t++)
+		{
+			threads[t].join();
+			merged.add(recorders[t]);
+		}
+		return merged;
+	}
+
+	public static void main(String[] args) throws InterruptedException, IOException
+	{
+		int threadCount = 1;
+		long durationMillis = 10000;
+		String exportFile = null;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			if (args[i].equals("-threads"))
+			{
+				threadCount = Integer.parseInt(value);
+			}
+			else if (args[i].equals("-time"))
+			{
+				durationMillis = (long) (Double.parseDouble(value) * 1000);
+			}
+			else if (args[i].equals("-export"))
+			{
+				exportFile = value;
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		LatencyBenchmark benchmark = new LatencyBenchmark(Corpus.values());
+		benchmark.run(threadCount, WARM_UP_MILLIS);
+		LatencyRecorder latencies = benchmark.run(threadCount, durationMillis);
+
+		System.out.println(String.format(Locale.ROOT, "Latencies of %d documents on %d threads during %.1f s",
+				benchmark.documents.size(), threadCount, durationMillis / 1000.0));
+		System.out.print(latencies.report());
+		if (exportFile != null)
+		{
+			Files.write(Paths.get(exportFile), latencies.getTotal().export().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
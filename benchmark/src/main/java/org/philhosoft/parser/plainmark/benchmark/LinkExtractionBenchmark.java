@@ -0,0 +1,103 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.Fragment;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.LinkFragment;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+import org.philhosoft.parser.plainmark.ExtractedLink;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+/**
+ * Listing the URLs of the documents of each corpus with the LinkExtractor, compared to parsing the documents
+ * and walking their tree to collect the URLs of the link fragments, one document per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LinkExtractionBenchmark
+{
+	@Param({ "CHAT", "LINKS", "CODE", "SPEC", "PATHOLOGICAL", "GENERATED" })
+	public Corpus corpus;
+
+	private String[] documents;
+	private int index;
+	private PlainMarkEngine engine;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		documents = corpus.getDocuments();
+		engine = new PlainMarkEngine.Builder().build();
+	}
+
+	private String nextDocument()
+	{
+		String document = documents[index];
+		index = index + 1 == documents.length ? 0 : index + 1;
+		return document;
+	}
+
+	@Benchmark
+	public List<ExtractedLink> extractLinks()
+	{
+		return engine.extractLinks(nextDocument());
+	}
+
+	/**
+	 * The way to get the URLs without the extractor.
+	 */
+	@Benchmark
+	public List<String> parseAndCollect()
+	{
+		List<String> urls = new ArrayList<String>();
+		collectURLs(engine.parse(nextDocument()), urls);
+		return urls;
+	}
+
+	private static void collectURLs(Block block, List<String> urls)
+	{
+		if (block instanceof TypedBlock)
+		{
+			for (Block child : ((TypedBlock) block).getBlocks())
+			{
+				collectURLs(child, urls);
+			}
+		}
+		else
+		{
+			collectURLs(((Line) block).getFragments(), urls);
+		}
+	}
+
+	private static void collectURLs(List<Fragment> fragments, List<String> urls)
+	{
+		for (Fragment fragment : fragments)
+		{
+			if (fragment instanceof LinkFragment)
+			{
+				urls.add(((LinkFragment) fragment).getUrl());
+			}
+			collectURLs(fragment.getFragments(), urls);
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.parser.plainmark.ParsingParameters;
+import org.philhosoft.parser.plainmark.PlainMark;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.concurrent.AsyncConverter;
+
+/**
+ * Measures how the conversions scale with the number of threads converting at once, on platform and virtual threads.
+ * <p>
+ * For 1, 2, 4... up to the number of processors, the threads convert the documents of a corpus in a loop for a fixed duration.
+ * The scaling efficiency is the throughput divided by the number of threads times the throughput of one platform thread:
+ * 1 means linear scaling. Below the threshold, the result is flagged as sub-linear, revealing something shared limiting
+ * the scaling (locks, shared mutable state, false sharing, allocation rate exhausting the memory bandwidth...).
+ * <p>
+ * JMH can run the other benchmarks with several threads (<code>-t</code>), but not on virtual threads, hence this harness.
+ * Run with:
+ * <pre>
+ * java -cp benchmark/target/benchmarks.jar org.philhosoft.parser.plainmark.benchmark.ScalingBenchmark [options]
+ * </pre>
+ * Options: <code>-corpus CHAT</code>, <code>-api ENGINE|FACADE</code>, <code>-threads max</code>, <code>-time seconds</code>,
+ * <code>-threshold 0.8</code>. Exits with status 1 if some scaling is sub-linear, so it can fail a build.
+ */
+public class ScalingBenchmark
+{
+	/**
+	 * The way documents are converted.
+	 */
+	public enum Api
+	{
+		/** A PlainMarkEngine shared by all the threads. */
+		ENGINE,
+		/**
+		 * A new PlainMark facade for each conversion, compiling its parsing parameters on each call:
+		 * the cost of code not keeping its converter.
+		 */
+		FACADE;
+	}
+
+	/**
+	 * Throughput of a number of threads.
+	 */
+	public static class Result
+	{
+		private final int threadCount;
+		private final boolean virtual;
+		private final double conversionsPerSecond;
+		private final double efficiency;
+
+		Result(int threadCount, boolean virtual, double conversionsPerSecond, double singleThreadRate)
+		{
+			this.threadCount = threadCount;
+			this.virtual = virtual;
+			this.conversionsPerSecond = conversionsPerSecond;
+			this.efficiency = conversionsPerSecond / (threadCount * singleThreadRate);
+		}
+
+		public int getThreadCount()
+		{
+			return threadCount;
+		}
+		public boolean isVirtual()
+		{
+			return virtual;
+		}
+		public double getConversionsPerSecond()
+		{
+			return conversionsPerSecond;
+		}
+		/**
+		 * Returns the throughput relative to linear scaling from one platform thread: 1 is linear.
+		 */
+		public double getEfficiency()
+		{
+			return efficiency;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "%3d %-8s %,14.0f conv/s  speed-up %5.2f  efficiency %4.0f %%",
+					threadCount, virtual ? "virtual" : "platform", conversionsPerSecond, efficiency * threadCount,
+					efficiency * 100);
+		}
+	}
+
+	private final String[] documents;
+	private final Api api;
+	private final PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor()).build();
+	private final long durationMillis;
+
+	public ScalingBenchmark(String[] documents, Api api, long durationMillis)
+	{
+		if (documents.length == 0)
+			throw new IllegalArgumentException("No documents to convert");
+		this.documents = documents;
+		this.api = api;
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * Runs the conversions on the given number of threads during the configured duration.
+	 *
+	 * @return the total number of conversions per second
+	 */
+	public double measure(int threadCount, boolean virtual) throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threadCount);
+		final long[] counts = new long[threadCount];
+		// Output lengths, so the conversions cannot be optimized away
+		final long[] lengths = new long[threadCount];
+		ExecutorService virtualThreads = virtual ? AsyncConverter.createVirtualThreadExecutor() : null;
+		if (virtual && virtualThreads == null)
+			throw new IllegalStateException("Virtual threads are not available in this JVM");
+
+		final StopFlag stopFlag = new StopFlag();
+		for (int t = 0; t < threadCount; t++)
+		{
+			final int index = t;
+			Runnable worker = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+						// Each thread starts at another document, and keeps its counters local until the end
+						int d = index % documents.length;
+						long count = 0;
+						long length = 0;
+						while (!stopFlag.stopped)
+						{
+							length += convert(documents[d]).length();
+							d = d + 1 == documents.length ? 0 : d + 1;
+							count++;
+						}
+						counts[index] = count;
+						lengths[index] = length;
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+					finally
+					{
+						done.countDown();
+					}
+				}
+			};
+			if (virtual)
+			{
+				virtualThreads.execute(worker);
+			}
+			else
+			{
+				Thread thread = new Thread(worker, "scaling-" + t);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+		Thread.sleep(durationMillis);
+		stopFlag.stopped = true;
+		done.await();
+		long elapsed = System.nanoTime() - startTime;
+		if (virtualThreads != null)
+		{
+			virtualThreads.shutdown();
+		}
+
+		long total = 0;
+		for (long count : counts)
+		{
+			total += count;
+		}
+		return total * 1e9 / elapsed;
+	}
+
+	/**
+	 * Measures the throughput for 1, 2, 4... up to the given number of threads (included), on platform threads,
+	 * then on virtual threads if available, after a warm-up on all the threads.
+	 */
+	public List<Result> run(int maxThreadCount) throws InterruptedException
+	{
+		boolean virtual = AsyncConverter.hasVirtualThreads();
+		// Long enough for the JIT to compile the conversions in their final form, which takes a few seconds
+		measure(1, false);
+		measure(maxThreadCount, false);
+		if (virtual)
+		{
+			measure(maxThreadCount, true);
+		}
+
+		List<Integer> threadCounts = getThreadCounts(maxThreadCount);
+		List<Result> results = new ArrayList<Result>();
+		double singleThreadRate = 0;
+		for (int threadCount : threadCounts)
+		{
+			double rate = measure(threadCount, false);
+			if (threadCount == 1)
+			{
+				singleThreadRate = rate;
+			}
+			results.add(new Result(threadCount, false, rate, singleThreadRate));
+		}
+		if (virtual)
+		{
+			for (int threadCount : threadCounts)
+			{
+				results.add(new Result(threadCount, true, measure(threadCount, true), singleThreadRate));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns 1, 2, 4... up to the given count, which is always included.
+	 */
+	static List<Integer> getThreadCounts(int maxThreadCount)
+	{
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for (int n = 1; n < maxThreadCount; n *= 2)
+		{
+			threadCounts.add(n);
+		}
+		threadCounts.add(Math.max(1, maxThreadCount));
+		return threadCounts;
+	}
+
+	private String convert(String document)
+	{
+		if (api == Api.ENGINE)
+			return engine.convert(document);
+		return new PlainMark().setParsingParameters(new ParsingParameters()).setVisitor(new HTMLVisitor()).convert(document);
+	}
+
+	/** Written once by the timing thread, read in the loop of the workers. */
+	private static class StopFlag
+	{
+		volatile boolean stopped;
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		Corpus corpus = Corpus.CHAT;
+		Api api = Api.ENGINE;
+		int maxThreadCount = Runtime.getRuntime().availableProcessors();
+		long durationMillis = 3000;
+		double threshold = 0.8;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			if (args[i].equals("-corpus"))
+			{
+				corpus = Corpus.valueOf(value.toUpperCase(Locale.ROOT));
+			}
+			else if (args[i].equals("-api"))
+			{
+				api = Api.valueOf(value.toUpperCase(Locale.ROOT));
+			}
+			else if (args[i].equals("-threads"))
+			{
+				maxThreadCount = Integer.parseInt(value);
+			}
+			else if (args[i].equals("-time"))
+			{
+				durationMillis = (long) (Double.parseDouble(value) * 1000);
+			}
+			else if (args[i].equals("-threshold"))
+			{
+				threshold = Double.parseDouble(value);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		System.out.println("Scaling of " + api + " conversions of the " + corpus + " corpus, " +
+				Runtime.getRuntime().availableProcessors() + " processors" +
+				(AsyncConverter.hasVirtualThreads() ? "" : ", no virtual threads"));
+		if (maxThreadCount > Runtime.getRuntime().availableProcessors())
+		{
+			System.out.println("More threads than processors: efficiency cannot be linear beyond " +
+					Runtime.getRuntime().availableProcessors());
+		}
+		List<Result> results = new ScalingBenchmark(corpus.getDocuments(), api, durationMillis).run(maxThreadCount);
+		int subLinear = 0;
+		for (Result result : results)
+		{
+			boolean flagged = result.getEfficiency() < threshold;
+			System.out.println(result + (flagged ? "  SUB-LINEAR" : ""));
+			if (flagged)
+			{
+				subLinear++;
+			}
+		}
+		if (subLinear > 0)
+		{
+			System.out.println(subLinear + " results below the efficiency threshold of " + Math.round(threshold * 100) + " %");
+			System.exit(1);
+		}
+	}
+}
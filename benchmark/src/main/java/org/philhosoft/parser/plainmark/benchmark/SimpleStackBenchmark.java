@@ -0,0 +1,95 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.collection.SimpleStack;
+
+/**
+ * Operations of {@link SimpleStack} at the depths met by the parsers: a few levels for usual texts,
+ * more for deeply nested fragments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SimpleStackBenchmark
+{
+	@Param({ "4", "64" })
+	public int depth;
+
+	private final Object item = new Object();
+	private SimpleStack<Object> filled;
+
+	@Setup
+	public void setUp()
+	{
+		filled = new SimpleStack<Object>();
+		for (int i = 0; i < depth; i++)
+		{
+			filled.push(new Object());
+		}
+	}
+
+	/**
+	 * Fills a new stack then empties it.
+	 */
+	@Benchmark
+	public Object pushPop()
+	{
+		SimpleStack<Object> stack = new SimpleStack<Object>();
+		for (int i = 0; i < depth; i++)
+		{
+			stack.push(item);
+		}
+		Object last = null;
+		while (!stack.isEmpty())
+		{
+			last = stack.pop();
+		}
+		return last;
+	}
+
+	/**
+	 * Looks at each level of the stack, as done to find a matching opening sign.
+	 */
+	@Benchmark
+	public int peekAt()
+	{
+		int count = 0;
+		for (int i = 0; i < depth; i++)
+		{
+			if (filled.peekAt(i) != null)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int iterate()
+	{
+		int count = 0;
+		for (Object o : filled)
+		{
+			if (o != null)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,104 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.parser.StringWalker;
+
+/**
+ * Walks the whole specification document with {@link StringWalker}, checking something at each character.
+ * Results are per character.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StringWalkerBenchmark
+{
+	static final String TEXT = Corpus.SPEC.getDocuments()[0];
+	/** Operations per invocation must be a constant: about the length of the document, which is cut to it. */
+	static final int LENGTH = 12_000;
+
+	private final String text = fitLength(TEXT);
+
+	@Benchmark
+	@OperationsPerInvocation(LENGTH)
+	public int forward()
+	{
+		StringWalker walker = new StringWalker(text);
+		int lines = 0;
+		while (walker.hasMore())
+		{
+			if (walker.atLineEnd())
+			{
+				lines++;
+			}
+			walker.forward();
+		}
+		return lines;
+	}
+
+	/**
+	 * Checks the code block sign at each character, as if each one could start a line.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LENGTH)
+	public int match()
+	{
+		StringWalker walker = new StringWalker(text);
+		int count = 0;
+		while (walker.hasMore())
+		{
+			if (walker.match("```"))
+			{
+				count++;
+			}
+			walker.forward();
+		}
+		return count;
+	}
+
+	/**
+	 * Checks the separator of URL schemes after the current character, with an offset.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LENGTH)
+	public int matchAt()
+	{
+		StringWalker walker = new StringWalker(text);
+		int count = 0;
+		while (walker.hasMore())
+		{
+			if (walker.matchAt(1, "://"))
+			{
+				count++;
+			}
+			walker.forward();
+		}
+		return count;
+	}
+
+	/**
+	 * Cuts or repeats the given text to get exactly {@link #LENGTH} characters, so the results per character are exact.
+	 */
+	static String fitLength(String text)
+	{
+		StringBuilder sb = new StringBuilder(LENGTH);
+		while (sb.length() < LENGTH)
+		{
+			sb.append(text, 0, Math.min(text.length(), LENGTH - sb.length()));
+		}
+		return sb.toString();
+	}
+}
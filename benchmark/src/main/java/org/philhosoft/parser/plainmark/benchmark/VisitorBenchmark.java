@@ -0,0 +1,75 @@
+package org.philhosoft.parser.plainmark.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.format.ContextWithStringBuilder;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+/**
+ * Renders trees parsed beforehand, to measure the visitors alone. Each operation renders one document of the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class VisitorBenchmark
+{
+	@Param({ "CHAT", "LINKS", "CODE", "SPEC" })
+	public Corpus corpus;
+
+	private final HTMLVisitor htmlVisitor = new HTMLVisitor();
+	private final PlainTextVisitor plainTextVisitor = new PlainTextVisitor();
+	private Block[] trees;
+	private int index;
+
+	@Setup
+	public void setUp()
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		String[] documents = corpus.getDocuments();
+		trees = new Block[documents.length];
+		for (int i = 0; i < documents.length; i++)
+		{
+			trees[i] = engine.parse(documents[i]);
+		}
+	}
+
+	private Block nextTree()
+	{
+		Block tree = trees[index];
+		index = index + 1 == trees.length ? 0 : index + 1;
+		return tree;
+	}
+
+	@Benchmark
+	public String renderHTML()
+	{
+		ContextWithStringBuilder context = new ContextWithStringBuilder();
+		nextTree().accept(htmlVisitor, context);
+		return context.asString();
+	}
+
+	@Benchmark
+	public String renderPlainText()
+	{
+		ContextWithStringBuilder context = new ContextWithStringBuilder();
+		nextTree().accept(plainTextVisitor, context);
+		return context.asString();
+	}
+}
@@ -72,6 +72,18 @@ public abstract class BaseVisitorContext implements VisitorContext
 		}
 	}
 
+	@Override
+	public String fit(String text)
+	{
+		return text;
+	}
+
+	@Override
+	public boolean isComplete()
+	{
+		return false;
+	}
+
 	@Override
 	public boolean isFirst()
 	{
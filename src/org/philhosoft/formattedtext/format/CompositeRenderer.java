@@ -0,0 +1,80 @@
+package org.philhosoft.formattedtext.format;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.MarkupVisitor;
+
+/**
+ * Renders a single tree of formatted text with several visitor / context pairs,
+ * collecting all the outputs together.
+ * <p>
+ * The tree is built once and shared by all the renderings. Each visitor drives its own walk
+ * (via {@link VisitorHelper}), stopping early if its context is complete (see {@link TruncatingContext}).
+ * <p>
+ * A renderer can render several trees: each rendering starts by clearing the contexts.
+ * Only contexts made with a StringBuilder (see {@link ContextWithStringBuilder}) can be cleared: with other contexts,
+ * the renderer can be used only once.
+ */
+public class CompositeRenderer
+{
+	private List<MarkupVisitor<VisitorContext>> visitors = new ArrayList<MarkupVisitor<VisitorContext>>();
+	private List<VisitorContext> contexts = new ArrayList<VisitorContext>();
+	private boolean rendered;
+
+	/**
+	 * Adds a rendering, made with the given visitor, and output in the given context.
+	 *
+	 * @return this, for chaining
+	 */
+	public CompositeRenderer add(MarkupVisitor<VisitorContext> visitor, VisitorContext context)
+	{
+		visitors.add(visitor);
+		contexts.add(context);
+		return this;
+	}
+
+	/**
+	 * Renders the given block with all the visitors, in the order they have been added.
+	 *
+	 * @param block  the tree to render
+	 * @return the outputs, in the order of the renderings
+	 * @throws IllegalStateException if the renderer has already rendered, with a context that cannot be cleared
+	 */
+	public List<String> render(Block block)
+	{
+		if (rendered)
+		{
+			clearContexts();
+		}
+		rendered = true;
+		List<String> outputs = new ArrayList<String>(contexts.size());
+		for (int i = 0; i < visitors.size(); i++)
+		{
+			VisitorContext context = contexts.get(i);
+			block.accept(visitors.get(i), context);
+			outputs.add(context.asString());
+		}
+		return outputs;
+	}
+
+	public int size()
+	{
+		return visitors.size();
+	}
+
+	private void clearContexts()
+	{
+		for (VisitorContext context : contexts)
+		{
+			if (!(context instanceof ContextWithStringBuilder))
+				throw new IllegalStateException("Cannot clear the context of a previous rendering: " +
+						context.getClass().getSimpleName());
+		}
+		for (VisitorContext context : contexts)
+		{
+			((ContextWithStringBuilder) context).clear();
+		}
+	}
+}
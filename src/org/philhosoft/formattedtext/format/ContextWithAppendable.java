@@ -0,0 +1,52 @@
+package org.philhosoft.formattedtext.format;
+
+import java.io.IOException;
+
+/**
+ * Context streaming the rendering to an Appendable (Writer, StringBuilder, PrintStream, etc.).
+ * <p>
+ * Write errors are rethrown as IllegalStateException, as the visitors don't handle checked exceptions.
+ */
+public class ContextWithAppendable extends BaseVisitorContext
+{
+	private Appendable appendable;
+
+	public ContextWithAppendable(Appendable appendable)
+	{
+		this.appendable = appendable;
+	}
+
+	@Override
+	public ContextWithAppendable append(String out)
+	{
+		try
+		{
+			appendable.append(out);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Cannot write the rendering", e);
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the string representation of the wrapped Appendable, ie. the rendering for StringBuilder and similar.
+	 */
+	@Override
+	public String asString()
+	{
+		return appendable.toString();
+	}
+
+	public Appendable getAppendable()
+	{
+		return appendable;
+	}
+
+	@Override
+	public String toString()
+	{
+		return appendable + " // " + firstLastList;
+	}
+}
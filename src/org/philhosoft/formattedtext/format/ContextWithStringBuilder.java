@@ -17,6 +17,15 @@ public class ContextWithStringBuilder extends BaseVisitorContext
 		return builder.toString();
 	}
 
+	/**
+	 * Empties the rendering, to reuse the buffer for another one.
+	 */
+	public void clear()
+	{
+		builder.setLength(0);
+		firstLastList.clear();
+	}
+
 	@Override
 	public String toString()
 	{
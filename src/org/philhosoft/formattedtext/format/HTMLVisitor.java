@@ -66,7 +66,7 @@ public class HTMLVisitor implements MarkupVisitor<VisitorContext>
 	@Override
 	public void visit(TextFragment fragment, VisitorContext context)
 	{
-		context.append(normalize(fragment.getText()));
+		context.append(normalize(context.fit(fragment.getText())));
 	}
 
 	@Override
@@ -114,7 +114,7 @@ public class HTMLVisitor implements MarkupVisitor<VisitorContext>
 
 		VisitorHelper.visitFragments(line.getFragments(), this, line, context);
 
-		if (!context.isLast())
+		if (!context.isLast() && !context.isComplete())
 		{
 			if (!context.isInOneOf(BlockType.CODE))
 			{
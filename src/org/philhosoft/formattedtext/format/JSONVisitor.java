@@ -0,0 +1,174 @@
+package org.philhosoft.formattedtext.format;
+
+import java.util.List;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.DecoratedFragment;
+import org.philhosoft.formattedtext.ast.Fragment;
+import org.philhosoft.formattedtext.ast.FragmentDecoration;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.LinkFragment;
+import org.philhosoft.formattedtext.ast.MarkupVisitor;
+import org.philhosoft.formattedtext.ast.TextFragment;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+
+/**
+ * Renders Fragments and Blocks to a compact JSON representation of the tree, eg. for native rendering by clients.
+ * <p>
+ * The encoding is array-based, each node being an array starting with a short type code:
+ * <ul>
+ * <li>a typed block is <code>[blockCode, children...]</code>, eg. <code>["p", ...]</code>;
+ * <li>a line is <code>["l", fragments...]</code>;
+ * <li>a text fragment is just a string;
+ * <li>a decorated fragment is <code>[decorationCode, fragments...]</code>, eg. <code>["s", "bold"]</code>;
+ * <li>a link is <code>["a", url, fragments...]</code>.
+ * </ul>
+ * Block and fragment codes can be the same, as they are not found at the same level.<br>
+ * Eg. <code>["d",["p",["l","Some ",["s","bold"]," text"]]]</code>.
+ * <p>
+ * The JSON is streamed to the context (see ContextWithAppendable to write to a Writer), without intermediate structures.
+ * It can be parsed back with org.philhosoft.parser.json.JSONTreeParser.
+ */
+public class JSONVisitor implements MarkupVisitor<VisitorContext>
+{
+	public static final String LINE_CODE = "l";
+
+	@Override
+	public void visit(DecoratedFragment fragment, VisitorContext context)
+	{
+		context.append("[\"").append(getCode(fragment.getDecoration())).append("\"");
+		appendFragments(fragment.getFragments(), context);
+		context.append("]");
+	}
+
+	@Override
+	public void visit(LinkFragment fragment, VisitorContext context)
+	{
+		context.append("[\"").append(getCode(FragmentDecoration.LINK)).append("\",");
+		appendString(fragment.getUrl(), context);
+		appendFragments(fragment.getFragments(), context);
+		context.append("]");
+	}
+
+	@Override
+	public void visit(TextFragment fragment, VisitorContext context)
+	{
+		appendString(fragment.getText(), context);
+	}
+
+	@Override
+	public void visit(TypedBlock block, VisitorContext context)
+	{
+		context.append("[\"").append(getCode(block.getType())).append("\"");
+		for (Block b : block.getBlocks())
+		{
+			context.append(",");
+			b.accept(this, context);
+		}
+		context.append("]");
+	}
+
+	@Override
+	public void visit(Line line, VisitorContext context)
+	{
+		context.append("[\"").append(LINE_CODE).append("\"");
+		appendFragments(line.getFragments(), context);
+		context.append("]");
+	}
+
+	private void appendFragments(List<Fragment> fragments, VisitorContext context)
+	{
+		for (Fragment f : fragments)
+		{
+			context.append(",");
+			f.accept(this, context);
+		}
+	}
+
+	private void appendString(String s, VisitorContext context)
+	{
+		context.append(quote(s));
+	}
+
+	/**
+	 * Returns the given string as a JSON string literal: quoted, with the special characters escaped.
+	 */
+	public static String quote(String s)
+	{
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				// Control characters, and line separators invalid in JavaScript strings
+				if (c < ' ' || c == 0x2028 || c == 0x2029)
+				{
+					String hex = Integer.toHexString(c);
+					sb.append("\\u0000", 0, 6 - hex.length()).append(hex);
+				}
+				else
+				{
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the code of the given block type in the JSON representation.
+	 */
+	public static String getCode(BlockType blockType)
+	{
+		switch (blockType)
+		{
+		case DOCUMENT: return "d";
+		case PARAGRAPH: return "p";
+		case TITLE1: return "t1";
+		case TITLE2: return "t2";
+		case TITLE3: return "t3";
+		case CODE: return "c";
+		case UNORDERED_LIST: return "u";
+		case ORDERED_LIST: return "o";
+		case LIST_ITEM_BULLET: return "b";
+		case LIST_ITEM_NUMBER: return "n";
+		}
+		throw new IllegalArgumentException("Unknown block type: " + blockType);
+	}
+
+	/**
+	 * Returns the code of the given fragment decoration in the JSON representation.
+	 */
+	public static String getCode(FragmentDecoration decoration)
+	{
+		switch (decoration)
+		{
+		case LINK: return "a";
+		case STRONG: return "s";
+		case EMPHASIS: return "e";
+		case DELETE: return "x";
+		case CODE: return "c";
+		}
+		throw new IllegalArgumentException("Unknown decoration: " + decoration);
+	}
+}
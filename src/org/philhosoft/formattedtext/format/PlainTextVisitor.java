@@ -21,14 +21,14 @@ public class PlainTextVisitor implements MarkupVisitor<VisitorContext>
 	@Override
 	public void visit(TextFragment fragment, VisitorContext context)
 	{
-		context.append(fragment.getText());
+		context.append(context.fit(fragment.getText()));
 	}
 
 	@Override
 	public void visit(LinkFragment fragment, VisitorContext context)
 	{
 		VisitorHelper.visitFragments(fragment.getFragments(), this, null, context);
-		context.append(" - ").append(fragment.getUrl());
+		context.append(context.fit(" - " + fragment.getUrl()));
 	}
 
 	@Override
@@ -41,6 +41,6 @@ public class PlainTextVisitor implements MarkupVisitor<VisitorContext>
 	public void visit(Line line, VisitorContext context)
 	{
 		VisitorHelper.visitFragments(line.getFragments(), this, line, context);
-		context.append("\n");
+		context.append(context.fit("\n"));
 	}
 }
@@ -0,0 +1,88 @@
+package org.philhosoft.formattedtext.format;
+
+/**
+ * Context accepting only a limited amount of visible text, eg. to make excerpts.
+ * <p>
+ * Once the budget is spent, the given texts are cut, and the context reports itself as complete,
+ * so the visitors stop walking the remainder of the tree.<br>
+ * Markup (eg. HTML tags) is not counted and is still accepted, so the visitors can close the blocks
+ * and fragments opened so far: the output remains balanced.
+ * <p>
+ * If an ellipsis is given, it is appended to the text where it is cut. If the budget is exactly
+ * spent at the end of a text, the ellipsis is appended only if more visible text is met.
+ */
+public class TruncatingContext extends ContextWithStringBuilder
+{
+	private int maxTextLength;
+	private int remaining;
+	private String ellipsis;
+	private boolean truncated;
+
+	/**
+	 * @param maxTextLength  maximum number of visible characters to accept
+	 */
+	public TruncatingContext(int maxTextLength)
+	{
+		this(maxTextLength, "");
+	}
+	/**
+	 * @param maxTextLength  maximum number of visible characters to accept
+	 * @param ellipsis  string to append where the text is truncated (not counted in maxTextLength)
+	 */
+	public TruncatingContext(int maxTextLength, String ellipsis)
+	{
+		this.maxTextLength = Math.max(0, maxTextLength);
+		this.remaining = this.maxTextLength;
+		this.ellipsis = ellipsis == null ? "" : ellipsis;
+	}
+
+	@Override
+	public String fit(String text)
+	{
+		if (truncated)
+			return "";
+		if (text.length() <= remaining)
+		{
+			remaining -= text.length();
+			return text;
+		}
+		String cut = text.substring(0, remaining) + ellipsis;
+		remaining = 0;
+		truncated = true;
+		return cut;
+	}
+
+	@Override
+	public boolean isComplete()
+	{
+		// Without ellipsis, no need to wait for more text to know if we have to add it
+		return truncated || remaining == 0 && ellipsis.isEmpty();
+	}
+
+	/**
+	 * Empties the rendering, and restores the full budget of visible text.
+	 */
+	@Override
+	public void clear()
+	{
+		super.clear();
+		remaining = maxTextLength;
+		truncated = false;
+	}
+
+	/**
+	 * True if some visible text has been cut.
+	 */
+	public boolean isTruncated()
+	{
+		return truncated;
+	}
+
+	/**
+	 * Returns the number of visible characters this context still accepts.
+	 */
+	public int getRemaining()
+	{
+		return remaining;
+	}
+}
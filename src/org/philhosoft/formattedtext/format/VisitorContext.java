@@ -14,6 +14,16 @@ public interface VisitorContext
 
 	String asString();
 
+	/**
+	 * Returns the part of the given visible text that this context still accepts.<br>
+	 * Unbounded contexts return the text unchanged, bounded ones may cut it (and return an empty string once full).
+	 */
+	String fit(String text);
+	/**
+	 * True when the context doesn't accept visible text anymore: visitors can stop walking the tree.
+	 */
+	boolean isComplete();
+
 	boolean isFirst();
 	boolean isLast();
 	boolean isInOneOf(BlockType... blockTypes);
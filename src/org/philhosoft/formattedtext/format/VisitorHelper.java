@@ -14,6 +14,7 @@ public class VisitorHelper
 
 	/**
 	 * Visits each fragment in the given list, properly setting up the context for each one.
+	 * Stops early if the context is complete.
 	 *
 	 * @param list  list of fragments to visit
 	 * @param which
@@ -24,7 +25,7 @@ public class VisitorHelper
 	{
 		context.push(parentBlock, true, list.size() < 2);
 		int last = list.size() - 1;
-		for (int i = 0; i <= last; i++)
+		for (int i = 0; i <= last && !context.isComplete(); i++)
 		{
 			context.setFirstLast(i == 0, i == last);
 			Fragment f = list.get(i);
@@ -35,6 +36,7 @@ public class VisitorHelper
 
 	/**
 	 * Visits each block in the given list, properly setting up the context for each one.
+	 * Stops early if the context is complete.
 	 *
 	 * @param list  list of blocks to visit
 	 * @param which
@@ -45,7 +47,7 @@ public class VisitorHelper
 	{
 		context.push(parentBlock, true, list.size() < 2);
 		int last = list.size() - 1;
-		for (int i = 0; i <= last; i++)
+		for (int i = 0; i <= last && !context.isComplete(); i++)
 		{
 			context.setFirstLast(i == 0, i == last);
 			Block f = list.get(i);
@@ -3,13 +3,15 @@
  * Made with visitors walking the tree of formatted text and exporting the result in
  * a context which can be rendered as a string.
  * <p>{@link ContextWithStringBuilder} is one implementation of such context, cumulating the
- * rendering in a StringBuilder.
- * <p>There are currently two renderers / formatters / visitors:
+ * rendering in a StringBuilder. {@link ContextWithAppendable} streams it to any Appendable,
+ * and {@link TruncatingContext} keeps only the start of the visible text.
+ * <p>There are currently three renderers / formatters / visitors:
  * <ul>
  * <li>{@link PlainTextVisitor} just outputs the textual content of the AST.
  * <li>{@link HTMLVisitor} renders the output to HTML. For added flexibility, one can define
  * BlockType.Visitor and FragmentDecoration.Visitor (or extend the default ones) to
  * render some styles to specific tags (eg. b instead of strong, etc.).
+ * <li>{@link JSONVisitor} exports the tree itself in a compact JSON form, to be rendered by clients.
  * </ul>
  */
 package org.philhosoft.formattedtext.format;
@@ -134,6 +134,16 @@ public class StringWalker
 	{
 		return next;
 	}
+	/**
+	 * Returns the index of the current character in the walked string
+	 * (of the carriage return, on a Windows line break), or its length at its end.
+	 */
+	public int position()
+	{
+		if (current == '\r' && cursor < walked.length() && walked.charAt(cursor) == '\n')
+			return cursor - 1; // The lookahead skipped the carriage return
+		return Math.min(cursor, walked.length());
+	}
 
 	/**
 	 * True if the current character is the given one.
@@ -0,0 +1,260 @@
+package org.philhosoft.parser.json;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.DecoratedFragment;
+import org.philhosoft.formattedtext.ast.Fragment;
+import org.philhosoft.formattedtext.ast.FragmentDecoration;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.LinkFragment;
+import org.philhosoft.formattedtext.ast.TextFragment;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+import org.philhosoft.formattedtext.format.JSONVisitor;
+
+/**
+ * Rebuilds a tree of formatted text from its JSON representation, as made by {@link JSONVisitor}.
+ * <p>
+ * Only this representation is accepted, not arbitrary JSON: the parser reads it in a single pass,
+ * creating the nodes directly, without intermediate maps or lists.
+ * Whitespace between the tokens is allowed.
+ * <p>
+ * Arrays of strings can be parsed too, eg. for batches of texts.
+ */
+public class JSONTreeParser
+{
+	private static final Map<String, BlockType> BLOCK_TYPES = new HashMap<String, BlockType>();
+	private static final Map<String, FragmentDecoration> DECORATIONS = new HashMap<String, FragmentDecoration>();
+	static
+	{
+		for (BlockType type : BlockType.values())
+		{
+			BLOCK_TYPES.put(JSONVisitor.getCode(type), type);
+		}
+		for (FragmentDecoration decoration : FragmentDecoration.values())
+		{
+			DECORATIONS.put(JSONVisitor.getCode(decoration), decoration);
+		}
+	}
+
+	private final String json;
+	private int position;
+
+	private JSONTreeParser(String json)
+	{
+		this.json = json;
+	}
+
+	/**
+	 * Parses the given JSON representation of a block (typed block or line).
+	 *
+	 * @throws IllegalArgumentException if the JSON is malformed or doesn't represent a block
+	 */
+	public static Block parse(String json)
+	{
+		JSONTreeParser parser = new JSONTreeParser(json);
+		Block block = parser.parseBlock();
+		parser.skipWhitespace();
+		if (parser.position < json.length())
+			throw parser.error("end of input");
+		return block;
+	}
+
+	/**
+	 * Parses a JSON array of strings, eg. <code>["*Some* text", "Other text"]</code>.
+	 *
+	 * @throws IllegalArgumentException if the JSON is malformed or isn't an array of strings
+	 */
+	public static List<String> parseStrings(String json)
+	{
+		JSONTreeParser parser = new JSONTreeParser(json);
+		List<String> strings = new ArrayList<String>();
+		parser.expect('[');
+		parser.skipWhitespace();
+		if (parser.peek() == ']')
+		{
+			parser.position++;
+		}
+		else
+		{
+			do
+			{
+				strings.add(parser.parseString());
+			} while (parser.hasMoreItems());
+		}
+		parser.skipWhitespace();
+		if (parser.position < json.length())
+			throw parser.error("end of input");
+		return strings;
+	}
+
+	private Block parseBlock()
+	{
+		expect('[');
+		String code = parseString();
+		if (JSONVisitor.LINE_CODE.equals(code))
+		{
+			Line line = new Line();
+			while (hasMoreItems())
+			{
+				line.add(parseFragment());
+			}
+			return line;
+		}
+		BlockType type = BLOCK_TYPES.get(code);
+		if (type == null)
+			throw error("block code");
+		TypedBlock block = new TypedBlock(type);
+		while (hasMoreItems())
+		{
+			block.add(parseBlock());
+		}
+		return block;
+	}
+
+	private Fragment parseFragment()
+	{
+		skipWhitespace();
+		if (peek() == '"')
+			return new TextFragment(parseString());
+
+		expect('[');
+		String code = parseString();
+		FragmentDecoration decoration = DECORATIONS.get(code);
+		if (decoration == null)
+			throw error("fragment code");
+		Fragment fragment;
+		if (decoration == FragmentDecoration.LINK)
+		{
+			if (!hasMoreItems())
+				throw error("link URL");
+			LinkFragment link = new LinkFragment();
+			link.setURL(parseString());
+			fragment = link;
+		}
+		else
+		{
+			fragment = new DecoratedFragment(decoration);
+		}
+		while (hasMoreItems())
+		{
+			fragment.add(parseFragment());
+		}
+		return fragment;
+	}
+
+	/**
+	 * Consumes the separator before the next item of an array, or the end of the array.
+	 *
+	 * @return true if there is another item
+	 */
+	private boolean hasMoreItems()
+	{
+		skipWhitespace();
+		char c = peek();
+		position++;
+		if (c == ',')
+			return true;
+		if (c == ']')
+			return false;
+		position--;
+		throw error("',' or ']'");
+	}
+
+	private String parseString()
+	{
+		expect('"');
+		int start = position;
+		// Fast path: no escape, the string can be taken as is
+		while (position < json.length())
+		{
+			char c = json.charAt(position);
+			if (c == '"')
+				return json.substring(start, position++);
+			if (c == '\\')
+				break;
+			position++;
+		}
+		StringBuilder sb = new StringBuilder(json.length() - start);
+		sb.append(json, start, position);
+		while (position < json.length())
+		{
+			char c = json.charAt(position++);
+			if (c == '"')
+				return sb.toString();
+			if (c != '\\')
+			{
+				sb.append(c);
+				continue;
+			}
+			if (position >= json.length())
+				break;
+			char escaped = json.charAt(position++);
+			switch (escaped)
+			{
+			case '"':
+			case '\\':
+			case '/':
+				sb.append(escaped);
+				break;
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'u':
+				if (position + 4 > json.length())
+					throw error("unicode escape");
+				// Exactly 4 ASCII hexadecimal digits, no sign as Integer.parseInt() would accept
+				int code = 0;
+				for (int end = position + 4; position < end; position++)
+				{
+					char hex = json.charAt(position);
+					int digit = hex < 128 ? Character.digit(hex, 16) : -1;
+					if (digit < 0)
+						throw error("unicode escape");
+					code = code * 16 + digit;
+				}
+				sb.append((char) code);
+				break;
+			default:
+				position--;
+				throw error("escape sequence");
+			}
+		}
+		throw error("'\"'");
+	}
+
+	private void expect(char expected)
+	{
+		skipWhitespace();
+		if (peek() != expected)
+			throw error("'" + expected + "'");
+		position++;
+	}
+
+	private char peek()
+	{
+		return position < json.length() ? json.charAt(position) : '\0';
+	}
+
+	private void skipWhitespace()
+	{
+		while (position < json.length())
+		{
+			char c = json.charAt(position);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+				return;
+			position++;
+		}
+	}
+
+	private IllegalArgumentException error(String expected)
+	{
+		return new IllegalArgumentException("Invalid formatted text JSON at position " + position + ": expected " + expected);
+	}
+}
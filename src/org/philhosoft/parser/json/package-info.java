@@ -0,0 +1,5 @@
+/**
+ * Parser of the JSON representation of formatted text, as produced by
+ * {@link org.philhosoft.formattedtext.format.JSONVisitor}.
+ */
+package org.philhosoft.parser.json;
@@ -3,7 +3,9 @@ package org.philhosoft.parser.plainmark;
 import org.philhosoft.collection.SimpleStack;
 import org.philhosoft.formattedtext.ast.Block;
 import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.Fragment;
 import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.TextFragment;
 import org.philhosoft.formattedtext.ast.TypedBlock;
 import org.philhosoft.parser.CharacterCheck;
 import org.philhosoft.parser.StringWalker;
@@ -16,60 +18,144 @@ public class BlockParser
 	private static final String ORDERED_LIST_DIGIT = "0";
 
 	private StringWalker walker;
-	private ParsingParameters parsingParameters;
+	private CompiledSyntax syntax;
 	private TypedBlock document = new TypedBlock(BlockType.DOCUMENT);
 	private SimpleStack<TypedBlock> stack = new SimpleStack<TypedBlock>();
 	private boolean inCodeBlock;
+	private int maxTextLength;
+	private int textLength;
+	/** If not null, receives the time spent parsing fragments. */
+	private ConversionStats stats;
 
-	private BlockParser(StringWalker walker, ParsingParameters parsingParameters)
+	private BlockParser(StringWalker walker, CompiledSyntax syntax, int maxTextLength)
 	{
 		this.walker = walker;
-		this.parsingParameters = parsingParameters;
+		this.syntax = syntax;
+		this.maxTextLength = maxTextLength;
 	}
 
 	public static Block parse(StringWalker walker)
 	{
-		return parse(walker, new ParsingParameters());
+		return parse(walker, CompiledSyntax.DEFAULT, -1);
 	}
+	/**
+	 * Compiles the given parameters on each call.
+	 *
+	 * @deprecated compile the parameters once with {@link ParsingParameters#compile()}, and parse with the compiled syntax
+	 */
+	@Deprecated
 	public static Block parse(StringWalker walker, ParsingParameters parsingParameters)
+	{
+		return parse(walker, parsingParameters.compile(), -1);
+	}
+	public static Block parse(StringWalker walker, CompiledSyntax syntax)
+	{
+		return parse(walker, syntax, -1);
+	}
+	/**
+	 * Compiles the given parameters on each call.
+	 *
+	 * @deprecated compile the parameters once with {@link ParsingParameters#compile()}, and parse with the compiled syntax
+	 */
+	@Deprecated
+	public static Block parse(StringWalker walker, ParsingParameters parsingParameters, int maxTextLength)
+	{
+		return parse(walker, parsingParameters.compile(), maxTextLength);
+	}
+	/**
+	 * Parses only the start of the text, stopping at the first line where the length of the text
+	 * found so far exceeds the given maximum.
+	 * <p>
+	 * Allows to render only the start of a long text (see TruncatingContext) without parsing all of it:
+	 * as the renderings have at least the length of the text in the tree, they will be truncated too.
+	 *
+	 * @param maxTextLength  length of text after which we can stop. If negative, the whole text is parsed.
+	 */
+	public static Block parse(StringWalker walker, CompiledSyntax syntax, int maxTextLength)
+	{
+		return parse(walker, syntax, maxTextLength, null);
+	}
+	static Block parse(StringWalker walker, CompiledSyntax syntax, int maxTextLength, ConversionStats stats)
 	{
 		if (walker == null || !walker.atLineStart())
 			throw new IllegalStateException("Parsing must start at the beginning of a line");
 
-		BlockParser parser = new BlockParser(walker, parsingParameters);
+		BlockParser parser = new BlockParser(walker, syntax, maxTextLength);
+		parser.stats = stats;
 		return parser.parse();
 	}
 
-	private Block parse()
+	/**
+	 * Starts an incremental parsing of the text: the top-level blocks are given one by one by {@link #nextBlock()},
+	 * each one being parsed only when requested.
+	 * <p>
+	 * Allows to render and send the start of a long text while the remainder is not parsed yet.
+	 */
+	public static BlockParser start(StringWalker walker, CompiledSyntax syntax)
 	{
-		while (walker.hasMore())
+		if (walker == null || !walker.atLineStart())
+			throw new IllegalStateException("Parsing must start at the beginning of a line");
+
+		return new BlockParser(walker, syntax, -1);
+	}
+
+	/**
+	 * Parses the text up to the end of the next top-level block, and returns this block.
+	 * The returned blocks are not kept by the parser.
+	 *
+	 * @return the next top-level block, or null at the end of the text
+	 */
+	public Block nextBlock()
+	{
+		while (document.getBlocks().isEmpty() && walker.hasMore())
 		{
-			if (walker.match(parsingParameters.getCodeBlockSign()))
-			{
-				handleCodeBlockSign();
-				continue;
-			}
-			if (inCodeBlock)
-			{
-				addCurrentLine();
-				continue;
-			}
+			parseLine();
+		}
+		if (document.getBlocks().isEmpty())
+		{
+			popStack();
+		}
+		if (document.getBlocks().isEmpty())
+			return null;
+		// Most often, only one block is closed at once
+		return document.getBlocks().remove(0);
+	}
 
-			walker.skipSpaces();
-			if (walker.atLineEnd())
-			{
-				handleEmptyLine();
-			}
-			else
-			{
-				handleLine();
-			}
+	private Block parse()
+	{
+		while (walker.hasMore() && !isTextLengthExceeded())
+		{
+			parseLine();
 		}
 		popStack();
 
 		return document;
 	}
 
+	private void parseLine()
+	{
+		if (walker.match(syntax.getCodeBlockSign()))
+		{
+			handleCodeBlockSign();
+			return;
+		}
+		if (inCodeBlock)
+		{
+			addCurrentLine();
+			return;
+		}
+
+		walker.skipSpaces();
+		if (walker.atLineEnd())
+		{
+			handleEmptyLine();
+		}
+		else
+		{
+			handleLine();
+		}
+	}
+
 	private void handleCodeBlockSign()
 	{
 		inCodeBlock = !inCodeBlock;
@@ -99,8 +185,19 @@ public class BlockParser
 
 	private void handleLine()
 	{
-		BlockType blockType = checkBlockSignWithEscape();
-		Line line = FragmentParser.parse(walker, parsingParameters);
+		BlockType blockType = checkBlockSignWithEscape(walker, syntax);
+		Line line;
+		if (stats == null)
+		{
+			line = FragmentParser.parse(walker, syntax);
+		}
+		else
+		{
+			long start = System.nanoTime();
+			line = FragmentParser.parse(walker, syntax);
+			stats.addFragmentParsing(System.nanoTime() - start);
+		}
+		countText(line);
 		if (blockType == null)
 		{
 			// Plain line
@@ -133,12 +230,17 @@ public class BlockParser
 		}
 	}
 
-	private BlockType checkBlockSignWithEscape()
+	/**
+	 * Skips the block sign at the start of the line, if any, or the escape sign escaping one.
+	 *
+	 * @return the type of the block, null if there is no block sign
+	 */
+	static BlockType checkBlockSignWithEscape(StringWalker walker, CompiledSyntax syntax)
 	{
-		if (walker.current() == parsingParameters.getEscapeSign())
+		if (walker.current() == syntax.getEscapeSign())
 		{
-			String blockSign = checkBlockSign(1);
-			if (blockSign != null || walker.next() == parsingParameters.getEscapeSign())
+			String blockSign = checkBlockSign(walker, syntax, 1);
+			if (blockSign != null || walker.next() == syntax.getEscapeSign())
 			{
 				// Skip this escape (really escaping something)
 				walker.forward();
@@ -148,25 +250,20 @@ public class BlockParser
 			return null;
 		}
 
-		String blockSign = checkBlockSign(0);
-		BlockType blockType = processBlockSign(blockSign);
+		String blockSign = checkBlockSign(walker, syntax, 0);
+		BlockType blockType = processBlockSign(walker, syntax, blockSign);
 		return blockType;
 	}
 
-	private String checkBlockSign(int offset)
+	private static String checkBlockSign(StringWalker walker, CompiledSyntax syntax, int offset)
 	{
-		for (String blockSign : parsingParameters.getBlockTypeSigns())
-		{
-			if (walker.matchAt(offset, blockSign))
-			{
-				if (CharacterCheck.isWhitespace(walker.charAt(offset + blockSign.length())))
-					return blockSign;
-			}
-		}
-		return checkNumberedListItem(offset);
+		String blockSign = syntax.matchBlockSign(walker, offset);
+		if (blockSign != null)
+			return blockSign;
+		return checkNumberedListItem(walker, syntax, offset);
 	}
 
-	private String checkNumberedListItem(int offset)
+	private static String checkNumberedListItem(StringWalker walker, CompiledSyntax syntax, int offset)
 	{
 		if (!CharacterCheck.isDigit(walker.charAt(offset)))
 			return null;
@@ -179,19 +276,19 @@ public class BlockParser
 			digits.append(ORDERED_LIST_DIGIT);
 		}
 		digits.append(".");
-		if (parsingParameters.isOrderedListSuffix(walker.charAt(offset + dn)) &&
+		if (syntax.isOrderedListSuffix(walker.charAt(offset + dn)) &&
 				CharacterCheck.isWhitespace(walker.charAt(offset + dn + 1)))
 			return digits.toString();
 
 		return null;
 	}
 
-	private BlockType processBlockSign(String blockSign)
+	private static BlockType processBlockSign(StringWalker walker, CompiledSyntax syntax, String blockSign)
 	{
 		if (blockSign == null)
 			return null;
 		BlockType blockType = blockSign.startsWith(
-				ORDERED_LIST_DIGIT) ? BlockType.LIST_ITEM_NUMBER : parsingParameters.getBlockType(blockSign);
+				ORDERED_LIST_DIGIT) ? BlockType.LIST_ITEM_NUMBER : syntax.getBlockType(blockSign);
 		walker.forward(blockSign.length() + 1); // +1 for mandatory whitespace after the sign
 		walker.skipSpaces();
 		return blockType;
@@ -300,6 +397,7 @@ public class BlockParser
 			walker.forward();
 		} while (!walker.atLineStart() && walker.hasMore());
 		Line line = new Line(sb.toString());
+		countText(line);
 		addLine(line);
 	}
 
@@ -312,6 +410,26 @@ public class BlockParser
 		return isTitleBlock(blockType) && isTitleBlock(previousType) && blockType == previousType;
 	}
 
+	private boolean isTextLengthExceeded()
+	{
+		return maxTextLength >= 0 && textLength > maxTextLength;
+	}
+
+	private void countText(Fragment fragment)
+	{
+		if (maxTextLength < 0)
+			return;
+		if (fragment instanceof TextFragment)
+		{
+			textLength += ((TextFragment) fragment).getText().length();
+			return;
+		}
+		for (Fragment f : fragment.getFragments())
+		{
+			countText(f);
+		}
+	}
+
 	private void popStack()
 	{
 		while (stack.size() > 0)
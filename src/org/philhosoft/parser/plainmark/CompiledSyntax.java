@@ -0,0 +1,259 @@
+package org.philhosoft.parser.plainmark;
+
+import java.util.List;
+
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.FragmentDecoration;
+import org.philhosoft.parser.CharacterCheck;
+import org.philhosoft.parser.StringWalker;
+import org.philhosoft.parser.plainmark.ParsingParameters.LinkEllipsisPlacement;
+
+/**
+ * Immutable form of {@link ParsingParameters}, made of lookup tables fast to query by the parsers.
+ * <p>
+ * Made by {@link ParsingParameters#compile()}. As it cannot change, it can be shared freely, eg. between threads
+ * or between the engines of several users having the same parameters.
+ * <p>
+ * All the signs and URL characters are ASCII ones, so the character tables are limited to the 128 first characters.
+ */
+public final class CompiledSyntax
+{
+	/** The syntax of the default parameters. */
+	static final CompiledSyntax DEFAULT = new ParsingParameters().compile();
+
+	private static final int TABLE_SIZE = 128;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * Node of a trie of strings. Children are few (a handful of signs or URL schemes), so they are just scanned.
+	 */
+	private static final class Node
+	{
+		private char[] chars = new char[0];
+		private Node[] children = new Node[0];
+		/** If not null, a string ends at this node. */
+		private String value;
+		/** Index of the string in the original list, to keep its priority. */
+		private int index;
+
+		Node child(char c)
+		{
+			for (int i = 0; i < chars.length; i++)
+			{
+				if (chars[i] == c)
+					return children[i];
+			}
+			return null;
+		}
+
+		Node add(char c)
+		{
+			Node child = child(c);
+			if (child != null)
+				return child;
+			child = new Node();
+			char[] newChars = new char[chars.length + 1];
+			Node[] newChildren = new Node[chars.length + 1];
+			System.arraycopy(chars, 0, newChars, 0, chars.length);
+			System.arraycopy(children, 0, newChildren, 0, chars.length);
+			newChars[chars.length] = c;
+			newChildren[chars.length] = child;
+			chars = newChars;
+			children = newChildren;
+			return child;
+		}
+	}
+
+	private final char escapeSign;
+	private final String codeBlockSign;
+	private final int maxLinkLength;
+	private final String ellipsis;
+	private final LinkEllipsisPlacement linkEllipsisPlacement;
+	private final long fingerprint;
+
+	private final FragmentDecoration[] decorations = new FragmentDecoration[TABLE_SIZE];
+	private final BlockType[] blockTypes;
+	private final Node blockSigns = new Node();
+	private final Node urlPrefixes = new Node();
+	private final long[] urlChars = new long[TABLE_SIZE / 64];
+	private final long[] orderedListSuffixes = new long[TABLE_SIZE / 64];
+
+	CompiledSyntax(ParsingParameters parameters)
+	{
+		escapeSign = parameters.getEscapeSign();
+		codeBlockSign = parameters.getCodeBlockSign();
+		maxLinkLength = parameters.getMaxLinkLength();
+		ellipsis = parameters.getEllipsis();
+		linkEllipsisPlacement = parameters.getLinkEllipsisPlacement();
+
+		for (char c = 0; c < TABLE_SIZE; c++)
+		{
+			decorations[c] = parameters.getFragmentDecoration(c);
+			if (parameters.isValidURLChar(c))
+			{
+				setBit(urlChars, c);
+			}
+			if (parameters.isOrderedListSuffix(c))
+			{
+				setBit(orderedListSuffixes, c);
+			}
+		}
+
+		blockTypes = new BlockType[parameters.getBlockTypeSigns().size()];
+		int index = 0;
+		for (String sign : parameters.getBlockTypeSigns())
+		{
+			blockTypes[index] = parameters.getBlockType(sign);
+			addToTrie(blockSigns, sign, index++);
+		}
+		List<String> prefixes = parameters.getUrlPrefixes();
+		StringBuilder description = new StringBuilder();
+		description.append(escapeSign).append('\n').append(codeBlockSign).append('\n').append(maxLinkLength)
+				.append('\n').append(ellipsis).append('\n').append(linkEllipsisPlacement);
+		for (int i = 0; i < prefixes.size(); i++)
+		{
+			addToTrie(urlPrefixes, prefixes.get(i), i);
+			description.append('\n').append(prefixes.get(i));
+		}
+		fingerprint = fingerprint(FNV_OFFSET_BASIS, description.toString());
+	}
+
+	public char getEscapeSign()
+	{
+		return escapeSign;
+	}
+	public String getCodeBlockSign()
+	{
+		return codeBlockSign;
+	}
+	public int getMaxLinkLength()
+	{
+		return maxLinkLength;
+	}
+	public String getEllipsis()
+	{
+		return ellipsis;
+	}
+	public LinkEllipsisPlacement getLinkEllipsisPlacement()
+	{
+		return linkEllipsisPlacement;
+	}
+
+	/**
+	 * Returns a hash of the parameters this syntax has been compiled from: two syntaxes with same fingerprint
+	 * parse texts the same way. Allows to identify the syntax in caches.
+	 */
+	public long getFingerprint()
+	{
+		return fingerprint;
+	}
+
+	public FragmentDecoration getFragmentDecoration(char sign)
+	{
+		return sign < TABLE_SIZE ? decorations[sign] : null;
+	}
+	public boolean isValidURLChar(char c)
+	{
+		return hasBit(urlChars, c);
+	}
+	public boolean isOrderedListSuffix(char c)
+	{
+		return hasBit(orderedListSuffixes, c);
+	}
+
+	/**
+	 * Finds the block sign, followed by a whitespace, at the given offset of the walker.
+	 *
+	 * @return the sign, or null if there is none there
+	 */
+	public String matchBlockSign(StringWalker walker, int offset)
+	{
+		Node node = blockSigns;
+		for (int i = offset; node != null; i++)
+		{
+			if (node.value != null && CharacterCheck.isWhitespace(walker.charAt(i)))
+				return node.value;
+			node = node.child(walker.charAt(i));
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the block type corresponding to the given block sign, or null if it is not one.
+	 */
+	public BlockType getBlockType(String blockSign)
+	{
+		Node node = blockSigns;
+		for (int i = 0; i < blockSign.length() && node != null; i++)
+		{
+			node = node.child(blockSign.charAt(i));
+		}
+		return node == null || node.value == null ? null : blockTypes[node.index];
+	}
+
+	/**
+	 * Finds the URL prefix at the current position of the walker.
+	 * If several prefixes match, returns the first one in the list of the parameters.
+	 *
+	 * @return the prefix, or null if there is none there
+	 */
+	public String matchURLPrefix(StringWalker walker)
+	{
+		String prefix = null;
+		int index = Integer.MAX_VALUE;
+		Node node = urlPrefixes.child(walker.current());
+		for (int i = 1; node != null; i++)
+		{
+			if (node.value != null && node.index < index)
+			{
+				prefix = node.value;
+				index = node.index;
+			}
+			// Same characters than StringWalker.match()
+			node = node.child(i == 1 ? walker.next() : walker.charAt(i));
+		}
+		return prefix;
+	}
+
+	/**
+	 * Updates the given hash (FNV-1a) with the given string.
+	 */
+	static long fingerprint(long hash, String s)
+	{
+		long h = hash;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			h = (h ^ (c & 0xFF)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return h;
+	}
+
+	private static void addToTrie(Node root, String s, int index)
+	{
+		if (s == null || s.isEmpty())
+			return; // Never matched
+		Node node = root;
+		for (int i = 0; i < s.length(); i++)
+		{
+			node = node.add(s.charAt(i));
+		}
+		if (node.value == null)
+		{
+			node.value = s;
+			node.index = index;
+		}
+	}
+
+	private static void setBit(long[] bitmap, char c)
+	{
+		bitmap[c >> 6] |= 1L << c;
+	}
+
+	private static boolean hasBit(long[] bitmap, char c)
+	{
+		return c < TABLE_SIZE && (bitmap[c >> 6] & 1L << c) != 0;
+	}
+}
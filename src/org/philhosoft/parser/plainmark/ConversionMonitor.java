@@ -0,0 +1,37 @@
+package org.philhosoft.parser.plainmark;
+
+/**
+ * Receives the measurements of the conversions of an engine, eg. to aggregate them in metrics.
+ * <p>
+ * Set with {@link PlainMarkEngine.Builder#setMonitor(ConversionMonitor)}. Without monitor, or while it is not enabled,
+ * the engine takes no measurement at all.<br>
+ * Called from the converting threads: implementations shared by several threads must be thread-safe.
+ */
+public interface ConversionMonitor
+{
+	/**
+	 * Checked once at the start of each conversion: if false, the conversion is not measured,
+	 * and the methods below are not called for it.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Called at the start of each conversion, with the measurements to be filled.
+	 */
+	void conversionStarted(ConversionStats stats);
+
+	/**
+	 * Called when the text has been parsed, before rendering it. The parsing measurements are filled.
+	 */
+	void parsingDone(ConversionStats stats);
+
+	/**
+	 * Called at the end of each conversion, with its measurements.
+	 */
+	void conversionDone(ConversionStats stats);
+
+	/**
+	 * Called by the caches of renderings on each lookup.
+	 */
+	void cacheLookup(boolean hit);
+}
@@ -0,0 +1,182 @@
+package org.philhosoft.parser.plainmark;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.Fragment;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+
+/**
+ * Measurements of a single conversion, given to the {@link ConversionMonitor} of the engine.
+ * <p>
+ * The phase timings don't overlap: block parsing excludes the time spent parsing the fragments of the lines,
+ * so the three phases add up to the time of the conversion.
+ * <p>
+ * The counts of the tree are computed on the first call of their getters, after the parsing:
+ * monitors not reading them don't pay for walking the tree.
+ */
+public class ConversionStats
+{
+	private final String markupText;
+	private final long engineFingerprint;
+	private int outputLength;
+	private long blockParsingNanos;
+	private long fragmentParsingNanos;
+	private long renderingNanos;
+	private int blockCount;
+	private int lineCount;
+	private int fragmentCount;
+	private int maxFragmentDepth;
+	/** The parsed tree, until its nodes are counted. */
+	private Block tree;
+	private Object attachment;
+
+	ConversionStats(String markupText, long engineFingerprint)
+	{
+		this.markupText = markupText;
+		this.engineFingerprint = engineFingerprint;
+	}
+
+	/** The converted text. */
+	public String getMarkupText()
+	{
+		return markupText;
+	}
+	/** Length of the converted text, in characters. */
+	public int getInputLength()
+	{
+		return markupText.length();
+	}
+	/** Fingerprint of the engine doing the conversion, identifying its parameters. */
+	public long getEngineFingerprint()
+	{
+		return engineFingerprint;
+	}
+	/** Length of the rendering, in characters. */
+	public int getOutputLength()
+	{
+		return outputLength;
+	}
+	/** Time spent finding the blocks of the text, excluding the parsing of the fragments. */
+	public long getBlockParsingNanos()
+	{
+		return blockParsingNanos;
+	}
+	/** Time spent parsing the fragments of all the lines. */
+	public long getFragmentParsingNanos()
+	{
+		return fragmentParsingNanos;
+	}
+	/** Time spent by the visitor rendering the tree. */
+	public long getRenderingNanos()
+	{
+		return renderingNanos;
+	}
+	public long getTotalNanos()
+	{
+		return blockParsingNanos + fragmentParsingNanos + renderingNanos;
+	}
+	/** Number of typed blocks in the tree, including the document. */
+	public int getBlockCount()
+	{
+		countIfNeeded();
+		return blockCount;
+	}
+	public int getLineCount()
+	{
+		countIfNeeded();
+		return lineCount;
+	}
+	/** Number of fragments in the tree, at all levels. */
+	public int getFragmentCount()
+	{
+		countIfNeeded();
+		return fragmentCount;
+	}
+	/** Maximum nesting of the fragments in a line: 1 for plain text, 2 for a decorated text, etc. */
+	public int getMaxFragmentDepth()
+	{
+		countIfNeeded();
+		return maxFragmentDepth;
+	}
+
+	/**
+	 * Returns the object attached by the monitor, eg. to keep data between its calls for this conversion.
+	 */
+	public Object getAttachment()
+	{
+		return attachment;
+	}
+	public void setAttachment(Object attachment)
+	{
+		this.attachment = attachment;
+	}
+
+	void addFragmentParsing(long nanos)
+	{
+		fragmentParsingNanos += nanos;
+	}
+
+	/**
+	 * Records the parsing, of the given duration, of the given tree.
+	 */
+	void parsed(long nanos, Block tree)
+	{
+		blockParsingNanos = nanos - fragmentParsingNanos;
+		this.tree = tree;
+	}
+
+	void rendered(long nanos, int outputLength)
+	{
+		this.renderingNanos = nanos;
+		this.outputLength = outputLength;
+	}
+
+	private void countIfNeeded()
+	{
+		if (tree != null)
+		{
+			Block block = tree;
+			tree = null;
+			count(block);
+		}
+	}
+
+	private void count(Block block)
+	{
+		if (block instanceof TypedBlock)
+		{
+			blockCount++;
+			for (Block child : ((TypedBlock) block).getBlocks())
+			{
+				count(child);
+			}
+		}
+		else if (block instanceof Line)
+		{
+			lineCount++;
+			for (Fragment fragment : ((Line) block).getFragments())
+			{
+				count(fragment, 1);
+			}
+		}
+	}
+
+	private void count(Fragment fragment, int depth)
+	{
+		fragmentCount++;
+		maxFragmentDepth = Math.max(maxFragmentDepth, depth);
+		for (Fragment child : fragment.getFragments())
+		{
+			count(child, depth + 1);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ConversionStats{input=" + markupText.length() + ", output=" + outputLength +
+				", blockParsing=" + blockParsingNanos + " ns, fragmentParsing=" + fragmentParsingNanos +
+				" ns, rendering=" + renderingNanos + " ns, blocks=" + getBlockCount() + ", lines=" + getLineCount() +
+				", fragments=" + getFragmentCount() + ", maxFragmentDepth=" + getMaxFragmentDepth() + "}";
+	}
+}
@@ -0,0 +1,88 @@
+package org.philhosoft.parser.plainmark;
+
+/**
+ * A link found in a PlainMark text by the {@link LinkExtractor}, with its position in the text.
+ * <p>
+ * Offsets are indexes in the text (Windows line breaks count for two characters), ends are excluded.
+ */
+public class ExtractedLink
+{
+	private final String url;
+	private final int start;
+	private final int end;
+	private final int urlStart;
+	private final boolean explicit;
+
+	public ExtractedLink(String url, int start, int end, int urlStart, boolean explicit)
+	{
+		this.url = url;
+		this.start = start;
+		this.end = end;
+		this.urlStart = urlStart;
+		this.explicit = explicit;
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+	/**
+	 * Returns the offset of the link: of its opening bracket for an explicit link, of its URL for an autolinked one.
+	 */
+	public int getStart()
+	{
+		return start;
+	}
+	/**
+	 * Returns the offset after the link: after its closing parenthesis for an explicit link, after its URL otherwise.
+	 */
+	public int getEnd()
+	{
+		return end;
+	}
+	/**
+	 * Returns the offset of the URL.
+	 */
+	public int getUrlStart()
+	{
+		return urlStart;
+	}
+	/**
+	 * Returns the offset after the URL.
+	 */
+	public int getUrlEnd()
+	{
+		return urlStart + url.length();
+	}
+	/**
+	 * True for a link written [text](url), false for an autolinked URL.
+	 */
+	public boolean isExplicit()
+	{
+		return explicit;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ExtractedLink))
+			return false;
+		ExtractedLink other = (ExtractedLink) obj;
+		return url.equals(other.url) && start == other.start && end == other.end && urlStart == other.urlStart &&
+				explicit == other.explicit;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return ((url.hashCode() * 31 + start) * 31 + end) * 31 + urlStart;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ExtractedLink[" + url + " at " + start + "-" + end + (explicit ? ", explicit]" : "]");
+	}
+}
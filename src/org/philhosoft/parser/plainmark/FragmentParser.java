@@ -19,17 +19,17 @@ import org.philhosoft.parser.StringWalker;
 public class FragmentParser
 {
 	private StringWalker walker;
-	private ParsingParameters parsingParameters;
+	private CompiledSyntax syntax;
 	private Line line = new Line();
 	private SimpleStack<Fragment> stack = new SimpleStack<Fragment>();
 	private StringBuilder outputString = new StringBuilder();
 	private RestoreFragmentVisitor fragmentRestore = new RestoreFragmentVisitor();
 	private boolean inCodeFragment;
 
-	private FragmentParser(StringWalker walker, ParsingParameters parsingParameters)
+	private FragmentParser(StringWalker walker, CompiledSyntax syntax)
 	{
 		this.walker = walker;
-		this.parsingParameters = parsingParameters;
+		this.syntax = syntax;
 	}
 
 	/**
@@ -40,7 +40,7 @@ public class FragmentParser
 	 */
 	public static Line parse(StringWalker walker)
 	{
-		FragmentParser parser = new FragmentParser(walker, new ParsingParameters());
+		FragmentParser parser = new FragmentParser(walker, CompiledSyntax.DEFAULT);
 		return parser.parse();
 	}
 
@@ -50,12 +50,20 @@ public class FragmentParser
 	 * the link text length will be limited (with ellipsis). Default is 30 chars, this methods allows to change this
 	 * limit.
 	 *
+	 * The parameters are compiled on each call.
+	 *
 	 * @param walker  the walker at the position where we want to start parsing
 	 * @param maxLinkLength  maximum length (without ellipsis) of the link text. If set to zero or lower, there is no limit.
+	 * @deprecated compile the parameters once with {@link ParsingParameters#compile()}, and parse with the compiled syntax
 	 */
+	@Deprecated
 	public static Line parse(StringWalker walker, ParsingParameters parsingParameters)
 	{
-		FragmentParser parser = new FragmentParser(walker, parsingParameters);
+		return parse(walker, parsingParameters.compile());
+	}
+	public static Line parse(StringWalker walker, CompiledSyntax syntax)
+	{
+		FragmentParser parser = new FragmentParser(walker, syntax);
 		return parser.parse();
 	}
 
@@ -71,7 +79,7 @@ public class FragmentParser
 			if (handleEscapeSign())
 				continue;
 
-			String urlPrefix = findURLPrefix();
+			String urlPrefix = syntax.matchURLPrefix(walker);
 			if (urlPrefix != null)
 			{
 				handleURL(urlPrefix);
@@ -90,10 +98,10 @@ public class FragmentParser
 
 	private boolean isStillInsideCodeFragment()
 	{
-		if (walker.current() == parsingParameters.getEscapeSign())
+		if (walker.current() == syntax.getEscapeSign())
 		{
 			char next = walker.next();
-			if (next == parsingParameters.getEscapeSign() || next == ParsingParameters.CODE_FRAGMENT_SIGN)
+			if (next == syntax.getEscapeSign() || next == ParsingParameters.CODE_FRAGMENT_SIGN)
 			{
 				// Skip it
 				walker.forward();
@@ -116,13 +124,13 @@ public class FragmentParser
 
 	private boolean handleEscapeSign()
 	{
-		if (walker.current() != parsingParameters.getEscapeSign())
+		if (walker.current() != syntax.getEscapeSign())
 			return false;
 		char next = walker.next();
-		if (parsingParameters.getFragmentDecoration(next) != null ||
+		if (syntax.getFragmentDecoration(next) != null ||
 				next == ParsingParameters.LINK_START_SIGN ||
 				next == ParsingParameters.LINK_END_SIGN ||
-				next == parsingParameters.getEscapeSign())
+				next == syntax.getEscapeSign())
 		{
 			// Skip it
 			walker.forward();
@@ -144,7 +152,7 @@ public class FragmentParser
 
 	private void handleMarkup()
 	{
-		FragmentDecoration decoration = parsingParameters.getFragmentDecoration(walker.current());
+		FragmentDecoration decoration = syntax.getFragmentDecoration(walker.current());
 		boolean processed = false;
 		if (decoration != null)
 		{
@@ -184,7 +192,7 @@ public class FragmentParser
 	private boolean handleDecorationSign(FragmentDecoration foundDecoration)
 	{
 		Fragment currentFragment = stack.peek(); // null if stack is empty
-		if (!isCurrentAMarkupSign(foundDecoration, currentFragment))
+		if (!isCurrentAMarkupSign(walker, foundDecoration, currentFragment == null ? null : currentFragment.getDecoration()))
 			return false; // No special treatment, regular char
 		if (currentFragment == null)
 		{
@@ -272,16 +280,16 @@ public class FragmentParser
 	 * Assumes we know already that walker.current() is one of the markup signs.
 	 *
 	 * @param foundDecoration  the decoration corresponding to walker.current()
-	 * @param currentFragment  the context where the sign is found
+	 * @param currentDecoration  the decoration of the context where the sign is found, null if not in a fragment
 	 * @return true if it is OK, false if it is a plain character
 	 */
-	private boolean isCurrentAMarkupSign(FragmentDecoration foundDecoration, Fragment currentFragment)
+	static boolean isCurrentAMarkupSign(StringWalker walker, FragmentDecoration foundDecoration,
+			FragmentDecoration currentDecoration)
 	{
 		// We know current is a markup sign, but context can tell otherwise
 		char previous = walker.previous();
 		char next = walker.next();
-		boolean starting = currentFragment == null || // Not in a decoration
-				currentFragment.getDecoration() != foundDecoration; // Different decoration
+		boolean starting = currentDecoration != foundDecoration; // Not in a decoration, or a different one
 
 		// Is this a starting sign?
 		if (starting &&
@@ -408,16 +416,6 @@ public class FragmentParser
 		}
 	}
 
-	private String findURLPrefix()
-	{
-		for (String p : parsingParameters.getUrlPrefixes())
-		{
-			if (walker.match(p))
-				return p;
-		}
-		return null;
-	}
-
 	private void handleURL(String urlPrefix)
 	{
 		walker.forward(urlPrefix.length());
@@ -428,7 +426,7 @@ public class FragmentParser
 			return;
 		}
 		addOutputStringToCurrentFragment();
-		walkTheURL();
+		walkTheURL(walker, syntax, outputString);
 		LinkFragment lf = makeLinkFragmentFromURL(urlPrefix, outputString.toString());
 		addFragment(lf);
 		outputString.setLength(0);
@@ -436,7 +434,7 @@ public class FragmentParser
 
 	private boolean addURLUpToClosingParenthesis(LinkFragment parent)
 	{
-		boolean valid = walkTheURL();
+		boolean valid = walkTheURL(walker, syntax, outputString);
 		if (valid)
 		{
 			walker.forward(); // Skip closing parenthesis
@@ -456,37 +454,54 @@ public class FragmentParser
 	}
 
 	private LinkFragment makeLinkFragmentFromURL(String urlPrefix, String url)
+	{
+		String text = makeLinkText(url, syntax);
+		LinkFragment lf = new LinkFragment(text, urlPrefix + outputString.toString());
+		return lf;
+	}
+
+	/**
+	 * Makes the text of an autolinked URL, shortened according to the given parameters.
+	 *
+	 * @param url  the URL, without its prefix
+	 */
+	static String makeLinkText(String url, CompiledSyntax syntax)
 	{
 		String text = url;
-		int maxLinkLength = parsingParameters.getMaxLinkLength();
+		int maxLinkLength = syntax.getMaxLinkLength();
 		int textLength = text.length();
 		if (maxLinkLength > 0 && textLength > maxLinkLength)
 		{
-			switch (parsingParameters.getLinkEllipsisPlacement())
+			switch (syntax.getLinkEllipsisPlacement())
 			{
 			case END:
-				text = text.substring(0, maxLinkLength) + parsingParameters.getEllipsis();
+				text = text.substring(0, maxLinkLength) + syntax.getEllipsis();
 				break;
 			case START:
-				text = parsingParameters.getEllipsis() + text.substring(textLength - maxLinkLength, textLength);
+				text = syntax.getEllipsis() + text.substring(textLength - maxLinkLength, textLength);
 				break;
 			case MIDDLE:
-				text = text.substring(0, maxLinkLength / 2) + parsingParameters.getEllipsis() +
+				text = text.substring(0, maxLinkLength / 2) + syntax.getEllipsis() +
 					text.substring(textLength - maxLinkLength + maxLinkLength / 2, textLength);
 				break;
 			}
 		}
-		LinkFragment lf = new LinkFragment(text, urlPrefix + outputString.toString());
-		return lf;
+		return text;
 	}
 
 	/**
+	 * Walks the URL starting at the current character, up to the first character invalid in URLs,
+	 * or to a closing parenthesis without opening one.
+	 * <p>
+	 * Shared with the {@link LinkExtractor}, so both find the same URLs.
+	 *
+	 * @param output  receives the characters of the URL, if not null
 	 * @return false if the parentheses are not balanced
 	 */
-	private boolean walkTheURL()
+	static boolean walkTheURL(StringWalker walker, CompiledSyntax syntax, StringBuilder output)
 	{
 		int openedParentheses = 0;
-		while (parsingParameters.isValidURLChar(walker.current()))
+		while (syntax.isValidURLChar(walker.current()))
 		{
 			if (walker.current() == ParsingParameters.URL_START_SIGN)
 			{
@@ -499,7 +514,10 @@ public class FragmentParser
 
 				openedParentheses--;
 			}
-			outputString.append(walker.current());
+			if (output != null)
+			{
+				output.append(walker.current());
+			}
 			walker.forward();
 		}
 		return false;
@@ -0,0 +1,296 @@
+package org.philhosoft.parser.plainmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.philhosoft.formattedtext.ast.FragmentDecoration;
+import org.philhosoft.parser.CharacterCheck;
+import org.philhosoft.parser.StringWalker;
+
+/**
+ * Finds the links of a PlainMark text, explicit ([text](url)) and autolinked, without parsing it to a tree.
+ * <p>
+ * Walks the text like the BlockParser and the FragmentParser, sharing their code for the block signs, the markup signs
+ * and the URLs, so it finds exactly the links of the parsed tree, in the same order (depth-first).
+ * But it only tracks the kind of the unterminated fragments, without building fragments nor strings (except the URLs),
+ * which makes it many times faster than a parsing.
+ */
+public class LinkExtractor
+{
+	private final String text;
+	private final StringWalker walker;
+	private final CompiledSyntax syntax;
+	private final List<ExtractedLink> links = new ArrayList<ExtractedLink>();
+	/** Decorations of the unterminated fragments, LINK for the links. */
+	private FragmentDecoration[] stack = new FragmentDecoration[8];
+	/** Offset of the opening bracket of the links in the stack. */
+	private int[] linkStarts = new int[8];
+	private int depth;
+	private boolean inCodeFragment;
+
+	private LinkExtractor(String text, CompiledSyntax syntax)
+	{
+		this.text = text;
+		this.walker = new StringWalker(text);
+		this.syntax = syntax;
+	}
+
+	public static List<ExtractedLink> extract(String markupText)
+	{
+		return extract(markupText, CompiledSyntax.DEFAULT);
+	}
+	/**
+	 * Returns the links of the given text, in the order of a depth-first walk of its parsed tree:
+	 * an explicit link comes before the links found in its text.
+	 */
+	public static List<ExtractedLink> extract(String markupText, CompiledSyntax syntax)
+	{
+		LinkExtractor extractor = new LinkExtractor(markupText, syntax);
+		extractor.extract();
+		return extractor.links;
+	}
+
+	private void extract()
+	{
+		// Same walk than BlockParser.parseLine()
+		boolean inCodeBlock = false;
+		while (walker.hasMore())
+		{
+			if (walker.match(syntax.getCodeBlockSign()))
+			{
+				inCodeBlock = !inCodeBlock;
+				walker.goToNextLine();
+			}
+			else if (inCodeBlock)
+			{
+				walker.goToNextLine();
+			}
+			else
+			{
+				walker.skipSpaces();
+				if (walker.atLineEnd())
+				{
+					walker.forward();
+				}
+				else
+				{
+					BlockParser.checkBlockSignWithEscape(walker, syntax);
+					extractFromLine();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same walk than FragmentParser.parse().
+	 */
+	private void extractFromLine()
+	{
+		depth = 0;
+		inCodeFragment = false;
+		while (!walker.atLineEnd())
+		{
+			if (inCodeFragment && isStillInsideCodeFragment())
+				continue;
+
+			if (skipEscapeSign())
+				continue;
+
+			String urlPrefix = syntax.matchURLPrefix(walker);
+			if (urlPrefix != null)
+			{
+				handleURL(urlPrefix);
+				continue;
+			}
+
+			handleMarkup();
+		}
+		// The unterminated fragments become text, but the links they contain are kept
+		walker.forward();
+	}
+
+	private boolean isStillInsideCodeFragment()
+	{
+		if (walker.current() == syntax.getEscapeSign())
+		{
+			char next = walker.next();
+			if (next == syntax.getEscapeSign() || next == ParsingParameters.CODE_FRAGMENT_SIGN)
+			{
+				walker.forward();
+				skipCurrent();
+				return true;
+			}
+		}
+		if (walker.current() == ParsingParameters.CODE_FRAGMENT_SIGN)
+		{
+			inCodeFragment = false;
+			return false;
+		}
+
+		skipCurrent();
+		return true;
+	}
+
+	private boolean skipEscapeSign()
+	{
+		if (walker.current() != syntax.getEscapeSign())
+			return false;
+		char next = walker.next();
+		if (syntax.getFragmentDecoration(next) != null ||
+				next == ParsingParameters.LINK_START_SIGN ||
+				next == ParsingParameters.LINK_END_SIGN ||
+				next == syntax.getEscapeSign())
+		{
+			walker.forward();
+			skipCurrent();
+			return true;
+		}
+		return false;
+	}
+
+	private void skipCurrent()
+	{
+		if (!walker.atLineEnd())
+		{
+			walker.forward();
+		}
+	}
+
+	private void handleMarkup()
+	{
+		FragmentDecoration decoration = syntax.getFragmentDecoration(walker.current());
+		boolean processed = false;
+		if (decoration != null)
+		{
+			processed = handleDecorationSign(decoration);
+		}
+		if (!processed)
+		{
+			processed = handleLinkMarkup();
+		}
+		if (!processed)
+		{
+			skipCurrent();
+		}
+	}
+
+	private boolean handleDecorationSign(FragmentDecoration foundDecoration)
+	{
+		FragmentDecoration currentDecoration = depth == 0 ? null : stack[depth - 1];
+		if (!FragmentParser.isCurrentAMarkupSign(walker, foundDecoration, currentDecoration))
+			return false;
+		if (currentDecoration == foundDecoration)
+		{
+			// End of the decorated part
+			depth--;
+			flagCodeFragment(foundDecoration, false);
+		}
+		else
+		{
+			push(foundDecoration, -1);
+			flagCodeFragment(foundDecoration, true);
+		}
+		walker.forward();
+		return true;
+	}
+
+	private void flagCodeFragment(FragmentDecoration foundDecoration, boolean start)
+	{
+		if (foundDecoration == FragmentDecoration.CODE)
+		{
+			inCodeFragment = start;
+		}
+	}
+
+	private boolean handleLinkMarkup()
+	{
+		if (walker.current() == ParsingParameters.LINK_START_SIGN)
+		{
+			push(FragmentDecoration.LINK, walker.position());
+			walker.forward();
+			return true;
+		}
+		if (walker.current() == ParsingParameters.LINK_END_SIGN)
+		{
+			return handleLinkEnd();
+		}
+
+		return false;
+	}
+
+	private boolean handleLinkEnd()
+	{
+		if (walker.next() == ParsingParameters.URL_START_SIGN && handleURLStart())
+			return true;
+
+		// Nested brackets deactivate the current link
+		if (depth > 0 && stack[depth - 1] == FragmentDecoration.LINK)
+		{
+			depth--;
+		}
+		return false;
+	}
+
+	private boolean handleURLStart()
+	{
+		int linkIndex = depth - 1;
+		while (linkIndex >= 0 && stack[linkIndex] != FragmentDecoration.LINK)
+		{
+			linkIndex--;
+		}
+		if (linkIndex < 0)
+			return false;
+
+		// The unterminated fragments after the link are restored as text, and the link surfaces
+		depth = linkIndex;
+		walker.forward(2); // Skip ](
+		int urlStart = walker.position();
+		if (FragmentParser.walkTheURL(walker, syntax, null))
+		{
+			int urlEnd = walker.position();
+			walker.forward(); // Skip closing parenthesis
+			addExplicitLink(new ExtractedLink(text.substring(urlStart, urlEnd),
+					linkStarts[linkIndex], urlEnd + 1, urlStart, true));
+		}
+		// Otherwise, the walked URL is plain text
+		return true;
+	}
+
+	private void handleURL(String urlPrefix)
+	{
+		int start = walker.position();
+		walker.forward(urlPrefix.length());
+		if (!CharacterCheck.isAlphaNumerical(walker.current()))
+			return; // Probably just mentioning a raw schema
+
+		FragmentParser.walkTheURL(walker, syntax, null);
+		int end = walker.position();
+		links.add(new ExtractedLink(text.substring(start, end), start, end, start, false));
+	}
+
+	/**
+	 * Adds the link before the links found in its text, which have been added already.
+	 */
+	private void addExplicitLink(ExtractedLink link)
+	{
+		int index = links.size();
+		while (index > 0 && links.get(index - 1).getStart() > link.getStart())
+		{
+			index--;
+		}
+		links.add(index, link);
+	}
+
+	private void push(FragmentDecoration decoration, int linkStart)
+	{
+		if (depth == stack.length)
+		{
+			stack = Arrays.copyOf(stack, depth * 2);
+			linkStarts = Arrays.copyOf(linkStarts, depth * 2);
+		}
+		stack[depth] = decoration;
+		linkStarts[depth] = linkStart;
+		depth++;
+	}
+}
@@ -38,6 +38,7 @@ public class ParsingParameters
 		"%"; // escape
 
 	private static final Map<Character, FragmentDecoration> DECORATIONS = new HashMap<Character, FragmentDecoration>();
+	static
 	{
 		DECORATIONS.put(STRONG_SIGN, FragmentDecoration.STRONG);
 		DECORATIONS.put(EMPHASIS_SIGN, FragmentDecoration.EMPHASIS);
@@ -45,6 +46,7 @@ public class ParsingParameters
 		DECORATIONS.put(CODE_FRAGMENT_SIGN, FragmentDecoration.CODE);
 	}
 	private static final Map<String, BlockType> BLOCK_TYPES_PER_SIGN = new HashMap<String, BlockType>();
+	static
 	{
 		BLOCK_TYPES_PER_SIGN.put("#", BlockType.TITLE1);
 		BLOCK_TYPES_PER_SIGN.put("##", BlockType.TITLE2);
@@ -69,6 +71,23 @@ public class ParsingParameters
 		}
 	}
 
+	public ParsingParameters()
+	{
+	}
+
+	/**
+	 * Copy constructor, to take a snapshot of the given parameters.
+	 */
+	public ParsingParameters(ParsingParameters parameters)
+	{
+		this.escapeSign = parameters.escapeSign;
+		this.codeBlockSign = parameters.codeBlockSign;
+		this.maxLinkLength = parameters.maxLinkLength;
+		this.ellipsis = parameters.ellipsis;
+		this.linkEllipsisPlacement = parameters.linkEllipsisPlacement;
+		this.urlPrefixes = new ArrayList<String>(parameters.urlPrefixes);
+	}
+
 	public char getEscapeSign()
 	{
 		return escapeSign;
@@ -140,6 +159,16 @@ public class ParsingParameters
 		return codeBlockSign;
 	}
 
+	/**
+	 * Makes the immutable, fast to query form of these parameters, used by the parsers.
+	 * <p>
+	 * Later changes to these parameters don't affect the result.
+	 */
+	public CompiledSyntax compile()
+	{
+		return new CompiledSyntax(this);
+	}
+
 	// Do some checks to avoid exposing internal structures
 
 	public boolean isOrderedListSuffix(char c)
@@ -1,18 +1,34 @@
 package org.philhosoft.parser.plainmark;
 
+import java.util.List;
+
 import org.philhosoft.formattedtext.ast.Block;
 import org.philhosoft.formattedtext.ast.MarkupVisitor;
-import org.philhosoft.formattedtext.format.ContextWithStringBuilder;
+import org.philhosoft.formattedtext.format.CompositeRenderer;
 import org.philhosoft.formattedtext.format.HTMLVisitor;
 import org.philhosoft.formattedtext.format.PlainTextVisitor;
 import org.philhosoft.formattedtext.format.VisitorContext;
-import org.philhosoft.parser.StringWalker;
 
 
+/**
+ * Mutable, single-thread facade for PlainMark conversions.
+ * <p>
+ * To share a converter between threads, use a {@link PlainMarkEngine} instead.
+ * To convert asynchronously, eg. in virtual threads, give the engine to an org.philhosoft.parser.plainmark.concurrent.AsyncConverter.
+ */
 public class PlainMark
 {
-	private ParsingParameters parsingParameters = new ParsingParameters();
+	// The visitors of the shortcuts are stateless, so their engines can be shared
+	private static final PlainMarkEngine HTML_ENGINE = new PlainMarkEngine(CompiledSyntax.DEFAULT, new HTMLVisitor());
+	private static final PlainMarkEngine PLAIN_TEXT_ENGINE =
+			new PlainMarkEngine(CompiledSyntax.DEFAULT, new PlainTextVisitor());
+	private static final PlainMarkEngine PLAIN_MARK_ENGINE =
+			new PlainMarkEngine(CompiledSyntax.DEFAULT, new PlainMarkVisitor());
+
+	private ParsingParameters parsingParameters;
 	private MarkupVisitor<VisitorContext> visitor;
+	/** Made on first use, dropped when the parameters or the visitor change. */
+	private PlainMarkEngine engine;
 
 	public PlainMark()
 	{
@@ -23,7 +39,7 @@ public class PlainMark
 	 */
 	public static String convertToHTML(String markupText)
 	{
-		return new PlainMark().setVisitor(new HTMLVisitor()).convert(markupText);
+		return HTML_ENGINE.convert(markupText);
 	}
 
 	/**
@@ -31,29 +47,86 @@ public class PlainMark
 	 */
 	public static String convertToPlainText(String markupText)
 	{
-		return new PlainMark().setVisitor(new PlainTextVisitor()).convert(markupText);
+		return PLAIN_TEXT_ENGINE.convert(markupText);
+	}
+
+	/**
+	 * Convenience shortcut for normalizing a text to canonical PlainMark markup.
+	 */
+	public static String convertToPlainMark(String markupText)
+	{
+		return PLAIN_MARK_ENGINE.convert(markupText);
 	}
 
 	public PlainMark setVisitor(MarkupVisitor<VisitorContext> visitor)
 	{
 		this.visitor = visitor;
+		engine = null;
 		return this;
 	}
+	/**
+	 * Sets the parsing parameters, compiled on the next conversion.
+	 * <p>
+	 * Later changes to the given parameters are ignored: call this method again to apply them.
+	 */
 	public PlainMark setParsingParameters(ParsingParameters parsingParameters)
 	{
 		this.parsingParameters = parsingParameters;
+		engine = null;
 		return this;
 	}
 
+	/**
+	 * Parses the given text to a tree of formatted text, that can be rendered several times.
+	 */
+	public Block parse(String markupText)
+	{
+		return engine().parse(markupText);
+	}
+
 	public String convert(String markupText)
 	{
-		StringWalker walker = new StringWalker(markupText);
+		return engine().convert(markupText);
+	}
 
-		Block block = BlockParser.parse(walker, parsingParameters);
+	/**
+	 * Converts only the start of the given text, up to the given number of visible characters.
+	 * <p>
+	 * Parsing and rendering stop as soon as this budget is spent, the opened blocks and fragments are properly closed,
+	 * and the ellipsis of the parsing parameters is appended where the text is cut.
+	 *
+	 * @param maxTextLength  maximum number of visible characters of the output (markup and ellipsis excluded)
+	 */
+	public String convert(String markupText, int maxTextLength)
+	{
+		return engine().convert(markupText, maxTextLength);
+	}
 
-		ContextWithStringBuilder context = new ContextWithStringBuilder();
-		block.accept(visitor, context);
+	/**
+	 * Parses the given text once, and renders it with all the renderings of the given renderer.
+	 * <p>
+	 * Eg. to get HTML, plain text and a plain text excerpt of a given text at once:
+	 * <pre>
+	 * renderer.add(new HTMLVisitor(), new ContextWithStringBuilder())
+	 *     .add(new PlainTextVisitor(), new ContextWithStringBuilder())
+	 *     .add(new PlainTextVisitor(), new TruncatingContext(200));
+	 * </pre>
+	 * The visitor set with {@link #setVisitor(MarkupVisitor)} is not used here.
+	 *
+	 * @return the outputs, in the order of the renderings
+	 */
+	public List<String> render(String markupText, CompositeRenderer renderer)
+	{
+		return renderer.render(parse(markupText));
+	}
 
-		return context.asString();
+	private PlainMarkEngine engine()
+	{
+		if (engine == null)
+		{
+			engine = new PlainMarkEngine(parsingParameters == null ? CompiledSyntax.DEFAULT : parsingParameters.compile(),
+					visitor);
+		}
+		return engine;
 	}
 }
@@ -0,0 +1,239 @@
+package org.philhosoft.parser.plainmark;
+
+import java.util.List;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.MarkupVisitor;
+import org.philhosoft.formattedtext.format.ContextWithStringBuilder;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.TruncatingContext;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.StringWalker;
+
+/**
+ * Immutable PlainMark converter, configured once with a {@link Builder}.
+ * <p>
+ * It can be shared (eg. as a singleton) by any number of threads without locking:
+ * it keeps its own compiled snapshot of the parsing parameters, and each conversion uses its own walker, parsers and context.<br>
+ * The visitor is shared too, so it must not be altered once the engine is built.
+ * The visitors of this project are stateless, and thus fit.
+ * <p>
+ * Eg.:
+ * <pre>
+ * PlainMarkEngine engine = new PlainMarkEngine.Builder()
+ *     .setParsingParameters(parameters)
+ *     .setVisitor(new HTMLVisitor())
+ *     .build();
+ * </pre>
+ */
+public final class PlainMarkEngine
+{
+	private final CompiledSyntax syntax;
+	private final MarkupVisitor<VisitorContext> visitor;
+	private final long fingerprint;
+	private final ConversionMonitor monitor;
+
+	/**
+	 * Builder of engines. Not thread-safe, but the engines it builds are.
+	 */
+	public static class Builder
+	{
+		private ParsingParameters parsingParameters = new ParsingParameters();
+		private CompiledSyntax syntax;
+		private MarkupVisitor<VisitorContext> visitor = new HTMLVisitor();
+		private String visitorConfiguration = "";
+		private ConversionMonitor monitor;
+
+		/**
+		 * Sets the parsing parameters. They are compiled on build, so they can be changed afterwards without effect on the engine.
+		 */
+		public Builder setParsingParameters(ParsingParameters parsingParameters)
+		{
+			this.parsingParameters = parsingParameters;
+			this.syntax = null;
+			return this;
+		}
+
+		/**
+		 * Sets an already compiled syntax, eg. shared by several engines. Replaces the parsing parameters.
+		 */
+		public Builder setSyntax(CompiledSyntax syntax)
+		{
+			this.syntax = syntax;
+			return this;
+		}
+
+		/**
+		 * Sets the visitor rendering the parsed text. Default to an {@link HTMLVisitor}.
+		 */
+		public Builder setVisitor(MarkupVisitor<VisitorContext> visitor)
+		{
+			this.visitor = visitor;
+			return this;
+		}
+
+		/**
+		 * Describes how the visitor has been configured, if visitors of the same class can render differently
+		 * (eg. HTMLVisitor with custom tag visitors). Used only in the fingerprint of the engine.
+		 */
+		public Builder setVisitorConfiguration(String visitorConfiguration)
+		{
+			this.visitorConfiguration = visitorConfiguration == null ? "" : visitorConfiguration;
+			return this;
+		}
+
+		/**
+		 * Sets the monitor receiving the measurements of each conversion. By default, there is none,
+		 * and nothing is measured.
+		 */
+		public Builder setMonitor(ConversionMonitor monitor)
+		{
+			this.monitor = monitor;
+			return this;
+		}
+
+		public PlainMarkEngine build()
+		{
+			if (visitor == null)
+				throw new IllegalStateException("A visitor is needed");
+			return new PlainMarkEngine(syntax != null ? syntax : parsingParameters.compile(), visitor, visitorConfiguration,
+					monitor);
+		}
+	}
+
+	/**
+	 * Uses the given visitor as is: only for engines not shared (eg. created by {@link PlainMark}) or made by the builder.
+	 */
+	PlainMarkEngine(CompiledSyntax syntax, MarkupVisitor<VisitorContext> visitor)
+	{
+		this(syntax, visitor, "", null);
+	}
+	private PlainMarkEngine(CompiledSyntax syntax, MarkupVisitor<VisitorContext> visitor, String visitorConfiguration,
+			ConversionMonitor monitor)
+	{
+		this.syntax = syntax;
+		this.visitor = visitor;
+		this.monitor = monitor;
+		long hash = CompiledSyntax.fingerprint(syntax.getFingerprint(),
+				visitor == null ? "" : visitor.getClass().getName());
+		this.fingerprint = CompiledSyntax.fingerprint(hash, "\n" + visitorConfiguration);
+	}
+
+	/**
+	 * Parses the given text to a tree of formatted text, that can be rendered several times.
+	 */
+	public Block parse(String markupText)
+	{
+		StringWalker walker = new StringWalker(markupText);
+		return BlockParser.parse(walker, syntax);
+	}
+
+	public String convert(String markupText)
+	{
+		return convert(markupText, new ContextWithStringBuilder());
+	}
+
+	/**
+	 * Same as {@link #convert(String)}, rendering in the given context, eg. reused by the caller for a batch of texts.
+	 * The context must be empty: it is left with the rendering, to be cleared before its next use.
+	 */
+	public String convert(String markupText, ContextWithStringBuilder context)
+	{
+		if (monitor != null && monitor.isEnabled())
+			return convertMonitored(markupText, -1, context);
+
+		Block block = parse(markupText);
+		block.accept(visitor, context);
+
+		return context.asString();
+	}
+
+	/**
+	 * Converts only the start of the given text, up to the given number of visible characters.
+	 *
+	 * @see PlainMark#convert(String, int)
+	 */
+	public String convert(String markupText, int maxTextLength)
+	{
+		if (monitor != null && monitor.isEnabled())
+			return convertMonitored(markupText, Math.max(0, maxTextLength),
+					new TruncatingContext(maxTextLength, syntax.getEllipsis()));
+
+		StringWalker walker = new StringWalker(markupText);
+		Block block = BlockParser.parse(walker, syntax, Math.max(0, maxTextLength));
+
+		TruncatingContext context = new TruncatingContext(maxTextLength, syntax.getEllipsis());
+		block.accept(visitor, context);
+
+		return context.asString();
+	}
+
+	/**
+	 * Starts parsing the given text block by block.
+	 *
+	 * @see BlockParser#nextBlock()
+	 */
+	public BlockParser startParsing(String markupText)
+	{
+		return BlockParser.start(new StringWalker(markupText), syntax);
+	}
+
+	/**
+	 * Returns the links of the given text, the same than the ones of its parsed tree, without parsing it.
+	 *
+	 * @see LinkExtractor
+	 */
+	public List<ExtractedLink> extractLinks(String markupText)
+	{
+		return LinkExtractor.extract(markupText, syntax);
+	}
+
+	public CompiledSyntax getSyntax()
+	{
+		return syntax;
+	}
+
+	public MarkupVisitor<VisitorContext> getVisitor()
+	{
+		return visitor;
+	}
+
+	/**
+	 * Returns the monitor of the conversions, or null if they are not monitored.
+	 * The conversions are measured only while it is enabled.
+	 */
+	public ConversionMonitor getMonitor()
+	{
+		return monitor;
+	}
+
+	/**
+	 * Same conversion, measuring each phase for the monitor. Kept apart so the usual path has no measurement at all.
+	 */
+	private String convertMonitored(String markupText, int maxTextLength, VisitorContext context)
+	{
+		ConversionStats stats = new ConversionStats(markupText, fingerprint);
+		monitor.conversionStarted(stats);
+		long start = System.nanoTime();
+		Block block = BlockParser.parse(new StringWalker(markupText), syntax, maxTextLength, stats);
+		long parsed = System.nanoTime();
+		stats.parsed(parsed - start, block);
+		monitor.parsingDone(stats);
+
+		parsed = System.nanoTime();
+		block.accept(visitor, context);
+		String output = context.asString();
+		stats.rendered(System.nanoTime() - parsed, output.length());
+		monitor.conversionDone(stats);
+		return output;
+	}
+
+	/**
+	 * Returns a hash of the configuration of the engine (syntax, visitor class and configuration):
+	 * engines with the same fingerprint give the same output for a given text.
+	 */
+	public long getFingerprint()
+	{
+		return fingerprint;
+	}
+}
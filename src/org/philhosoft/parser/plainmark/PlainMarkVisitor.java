@@ -0,0 +1,613 @@
+package org.philhosoft.parser.plainmark;
+
+import java.util.List;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.DecoratedFragment;
+import org.philhosoft.formattedtext.ast.Fragment;
+import org.philhosoft.formattedtext.ast.FragmentDecoration;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.LinkFragment;
+import org.philhosoft.formattedtext.ast.MarkupVisitor;
+import org.philhosoft.formattedtext.ast.TextFragment;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.CharacterCheck;
+import org.philhosoft.parser.StringWalker;
+
+/**
+ * Renders Fragments and Blocks back to PlainMark markup, in a canonical form.
+ * <p>
+ * A tree made by the parser, once rendered, is parsed back to the same tree. The output is canonical:
+ * lines are not indented, blocks are separated by an empty line only when needed, bullet lists use the dash sign,
+ * numbered lists use "1.", special characters are escaped only where they would be taken as markup,
+ * and links are written as raw URLs when autolinking them gives the same link.
+ * <p>
+ * Lines are rendered one at a time, so the rendering is linear with the size of the tree,
+ * and it can be streamed to an Appendable (see ContextWithAppendable).
+ * <p>
+ * Some hand-made trees cannot be written in PlainMark (eg. text with URLs out of an invalid link, indented lines,
+ * empty fragments), they will be parsed back to a slightly different tree.
+ */
+public class PlainMarkVisitor implements MarkupVisitor<VisitorContext>
+{
+	private static final char NO_CHAR = '\0';
+	/** Marks of the characters of the invalid links written as is, see findInvalidLinks(). */
+	private static final byte LINK_START_MARK = 1;
+	private static final byte URL_START_MARK = 2;
+	private static final byte URL_MARK = 3;
+	private static final String URL_START = new String(new char[] { ParsingParameters.LINK_END_SIGN, ParsingParameters.URL_START_SIGN });
+
+	private CompiledSyntax syntax;
+	private RestoreFragmentVisitor fragmentRestore = new RestoreFragmentVisitor();
+	private RestoreBlockVisitor blockRestore = new RestoreBlockVisitor();
+
+	public PlainMarkVisitor()
+	{
+		this(CompiledSyntax.DEFAULT);
+	}
+	/**
+	 * @param parsingParameters  the parameters that will be used to parse back the output (escape sign, URL prefixes, etc.)
+	 */
+	public PlainMarkVisitor(ParsingParameters parsingParameters)
+	{
+		this(parsingParameters.compile());
+	}
+	/**
+	 * @param syntax  the syntax that will be used to parse back the output
+	 */
+	public PlainMarkVisitor(CompiledSyntax syntax)
+	{
+		this.syntax = syntax;
+	}
+
+	@Override
+	public void visit(DecoratedFragment fragment, VisitorContext context)
+	{
+		appendFragmentAlone(fragment, context);
+	}
+
+	@Override
+	public void visit(LinkFragment fragment, VisitorContext context)
+	{
+		appendFragmentAlone(fragment, context);
+	}
+
+	@Override
+	public void visit(TextFragment fragment, VisitorContext context)
+	{
+		appendFragmentAlone(fragment, context);
+	}
+
+	@Override
+	public void visit(TypedBlock block, VisitorContext context)
+	{
+		if (block.getType() == BlockType.CODE)
+		{
+			appendCodeBlock(block, context);
+			return;
+		}
+
+		StringBuilder sign = new StringBuilder();
+		block.getType().accept(blockRestore, sign);
+		String lineStart = sign.toString();
+
+		Block previous = null;
+		for (Block current : block.getBlocks())
+		{
+			if (context.isComplete())
+				break;
+			if (needsSeparation(previous, current))
+			{
+				// An empty line ends the previous block
+				context.append("\n");
+			}
+			if (current instanceof Line)
+			{
+				appendLine((Line) current, lineStart, context);
+			}
+			else
+			{
+				current.accept(this, context);
+			}
+			previous = current;
+		}
+	}
+
+	@Override
+	public void visit(Line line, VisitorContext context)
+	{
+		appendLine(line, "", context);
+	}
+
+	/**
+	 * Tells if the two consecutive blocks would be merged if they are not separated by an empty line.
+	 */
+	private boolean needsSeparation(Block previous, Block current)
+	{
+		if (!(previous instanceof TypedBlock) || !(current instanceof TypedBlock))
+			return false;
+		BlockType previousType = ((TypedBlock) previous).getType();
+		BlockType currentType = ((TypedBlock) current).getType();
+		if (previousType != currentType)
+			return false;
+		return currentType == BlockType.PARAGRAPH ||
+				currentType == BlockType.TITLE1 || currentType == BlockType.TITLE2 || currentType == BlockType.TITLE3 ||
+				currentType == BlockType.UNORDERED_LIST || currentType == BlockType.ORDERED_LIST;
+	}
+
+	private void appendCodeBlock(TypedBlock block, VisitorContext context)
+	{
+		String codeBlockSign = syntax.getCodeBlockSign();
+		context.append(codeBlockSign).append("\n");
+		for (Block line : block.getBlocks())
+		{
+			// Lines of code are kept literally
+			StringBuilder sb = new StringBuilder();
+			appendRawText((Fragment) line, sb);
+			context.append(sb.toString()).append("\n");
+		}
+		context.append(codeBlockSign).append("\n");
+	}
+
+	private void appendRawText(Fragment fragment, StringBuilder sb)
+	{
+		if (fragment instanceof TextFragment)
+		{
+			sb.append(((TextFragment) fragment).getText());
+			return;
+		}
+		for (Fragment f : fragment.getFragments())
+		{
+			appendRawText(f, sb);
+		}
+	}
+
+	/**
+	 * Appends a line of fragments.
+	 *
+	 * @param lineStart  the sign of the block the line is in. If empty, the line is protected against being taken as a block.
+	 */
+	private void appendLine(Line line, String lineStart, VisitorContext context)
+	{
+		StringBuilder sb = new StringBuilder();
+		appendFragments(line.getFragments(), true, sb);
+		if (lineStart.isEmpty() && isTakenAsBlockStart(sb))
+		{
+			sb.insert(0, syntax.getEscapeSign());
+		}
+		context.append(lineStart).append(sb.toString()).append("\n");
+	}
+
+	/**
+	 * Checks if the block parser would see a block sign, or would skip the escape sign, at the start of the line.
+	 */
+	private boolean isTakenAsBlockStart(StringBuilder line)
+	{
+		String start = line.toString();
+		if (start.startsWith(syntax.getCodeBlockSign()))
+			return true;
+		int offset = 0;
+		if (start.length() > 0 && start.charAt(0) == syntax.getEscapeSign())
+		{
+			// The block parser skips an escape sign followed by another one, or by a block sign.
+			// If followed by a special character, it was escaping it: skipping it is harmless,
+			// as the block sign is followed by a space, so it is taken literally.
+			if (start.length() > 1 && isSpecialChar(start.charAt(1)))
+				return start.charAt(1) == syntax.getEscapeSign();
+			offset = 1;
+		}
+		if (syntax.matchBlockSign(new StringWalker(start), offset) != null)
+			return true;
+		int position = offset;
+		while (position < start.length() && CharacterCheck.isDigit(start.charAt(position)))
+		{
+			position++;
+		}
+		return position > offset && position < start.length() &&
+				syntax.isOrderedListSuffix(start.charAt(position)) && isWhitespaceAt(start, position + 1);
+	}
+
+	private boolean isWhitespaceAt(String s, int position)
+	{
+		return position < s.length() && CharacterCheck.isWhitespace(s.charAt(position));
+	}
+
+	private void appendFragmentAlone(Fragment fragment, VisitorContext context)
+	{
+		StringBuilder sb = new StringBuilder();
+		appendFragment(fragment, null, false, sb);
+		context.append(sb.toString());
+	}
+
+	/**
+	 * @param atLineLevel  true if the fragments are directly in a line (not in a decorated fragment or a link)
+	 */
+	private void appendFragments(List<Fragment> fragments, boolean atLineLevel, StringBuilder sb)
+	{
+		byte[][] rawMarks = findInvalidLinks(fragments, atLineLevel);
+		for (int i = 0; i < fragments.size(); i++)
+		{
+			if (rawMarks != null && rawMarks[i] != null)
+			{
+				appendText(((TextFragment) fragments.get(i)).getText(), rawMarks[i], sb);
+			}
+			else
+			{
+				appendFragment(fragments.get(i), findNext(fragments, i), atLineLevel, sb);
+			}
+		}
+	}
+
+	/**
+	 * Finds the invalid links (eg. <code>[text](http://unclosed</code>), kept as text by the parser, whose walked URL
+	 * would be autolinked if written with escaped brackets. For these, an opening bracket and the "](" are written
+	 * unescaped, and the URL raw: the parser walks it again as the URL of an invalid link, so it stays text.
+	 *
+	 * @return for each text fragment having such characters, their marks (LINK_START_MARK, URL_START_MARK, URL_MARK,
+	 * 0 for the characters to write normally). Null if there is no such link.
+	 */
+	private byte[][] findInvalidLinks(List<Fragment> fragments, boolean atLineLevel)
+	{
+		byte[][] rawMarks = null;
+		for (int i = 0; i < fragments.size(); i++)
+		{
+			if (!(fragments.get(i) instanceof TextFragment))
+				continue;
+			String text = ((TextFragment) fragments.get(i)).getText();
+			for (int p = text.indexOf(URL_START); p >= 0; p = text.indexOf(URL_START, p + 1))
+			{
+				if (rawMarks != null && rawMarks[i] != null && (rawMarks[i][p] != 0 || rawMarks[i][p + 1] != 0))
+					continue; // In a walked URL
+				// The URL follows, in this text or at the start of the next one
+				int urlIndex = i;
+				int urlStart = p + URL_START.length();
+				if (urlStart == text.length())
+				{
+					urlIndex = i + 1;
+					urlStart = 0;
+					if (urlIndex == fragments.size() || !(fragments.get(urlIndex) instanceof TextFragment))
+						continue;
+				}
+				String url = ((TextFragment) fragments.get(urlIndex)).getText();
+				int urlEnd = walkInvalidURL(url, urlStart, atLineLevel && urlIndex == fragments.size() - 1);
+				if (urlEnd < 0 || !containsAutoLink(url, urlStart, urlEnd))
+					continue;
+				if (rawMarks == null)
+				{
+					rawMarks = new byte[fragments.size()][];
+				}
+				if (!markLinkStart(fragments, i, p, rawMarks))
+					continue;
+				byte[] marks = getMarks(fragments, i, rawMarks);
+				marks[p] = URL_START_MARK;
+				marks[p + 1] = URL_START_MARK;
+				marks = getMarks(fragments, urlIndex, rawMarks);
+				for (int c = urlStart; c < urlEnd; c++)
+				{
+					marks[c] = URL_MARK;
+				}
+			}
+		}
+		return rawMarks;
+	}
+
+	private static byte[] getMarks(List<Fragment> fragments, int index, byte[][] rawMarks)
+	{
+		if (rawMarks[index] == null)
+		{
+			rawMarks[index] = new byte[((TextFragment) fragments.get(index)).getText().length()];
+		}
+		return rawMarks[index];
+	}
+
+	/**
+	 * Returns the end of the text walked as URL by the parser from the given start, or -1 if the walk would end
+	 * on a closing parenthesis, making a valid link.
+	 *
+	 * @param atLineEnd  true if the text ends the line, so the walk ends with it
+	 */
+	private int walkInvalidURL(String text, int start, boolean atLineEnd)
+	{
+		int openedParentheses = 0;
+		for (int i = start; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (!syntax.isValidURLChar(c))
+				return i;
+			if (c == ParsingParameters.URL_START_SIGN)
+			{
+				openedParentheses++;
+			}
+			else if (c == ParsingParameters.URL_END_SIGN)
+			{
+				if (openedParentheses == 0)
+					return -1;
+				openedParentheses--;
+			}
+		}
+		return atLineEnd ? text.length() : -1;
+	}
+
+	/**
+	 * Tells if the parser would autolink a URL in the given part of the text.
+	 */
+	private boolean containsAutoLink(String text, int start, int end)
+	{
+		StringWalker walker = new StringWalker(text.substring(start, end));
+		while (walker.hasMore())
+		{
+			String urlPrefix = syntax.matchURLPrefix(walker);
+			if (urlPrefix != null && CharacterCheck.isAlphaNumerical(walker.charAt(urlPrefix.length())))
+				return true;
+			walker.forward();
+		}
+		return false;
+	}
+
+	/**
+	 * Marks an opening bracket before the given "](", to write it unescaped: any one makes the parser see a link,
+	 * skipping the ones of the other invalid links written unescaped.
+	 *
+	 * @return false if there is none
+	 */
+	private static boolean markLinkStart(List<Fragment> fragments, int index, int position, byte[][] rawMarks)
+	{
+		int depth = 0;
+		for (int i = index; i >= 0; i--)
+		{
+			if (!(fragments.get(i) instanceof TextFragment))
+				continue; // Written whole
+			String text = ((TextFragment) fragments.get(i)).getText();
+			byte[] marks = rawMarks[i];
+			for (int c = i == index ? position - 1 : text.length() - 1; c >= 0; c--)
+			{
+				int mark = marks == null ? 0 : marks[c];
+				if (mark == URL_START_MARK)
+				{
+					depth++;
+					c--; // Both characters are marked
+				}
+				else if (mark == LINK_START_MARK)
+				{
+					depth--;
+				}
+				else if (mark == 0 && depth == 0 && text.charAt(c) == ParsingParameters.LINK_START_SIGN)
+				{
+					getMarks(fragments, i, rawMarks)[c] = LINK_START_MARK;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the next fragment, skipping the empty texts (they output nothing).
+	 */
+	private Fragment findNext(List<Fragment> fragments, int position)
+	{
+		for (int i = position + 1; i < fragments.size(); i++)
+		{
+			Fragment fragment = fragments.get(i);
+			if (!(fragment instanceof TextFragment) || !((TextFragment) fragment).getText().isEmpty())
+				return fragment;
+		}
+		return null;
+	}
+
+	private void appendFragment(Fragment fragment, Fragment next, boolean atLineLevel, StringBuilder sb)
+	{
+		if (fragment instanceof TextFragment)
+		{
+			appendText(((TextFragment) fragment).getText(), sb);
+		}
+		else if (fragment instanceof LinkFragment)
+		{
+			LinkFragment link = (LinkFragment) fragment;
+			// A URL that can't be written between parentheses is kept raw, the parser has autolinked it
+			if (isAutoLink(link, next, atLineLevel) || countOpenedParentheses(link.getUrl()) != 0)
+			{
+				sb.append(link.getUrl());
+			}
+			else
+			{
+				appendLink(link, sb);
+			}
+		}
+		else if (fragment.getDecoration() != null)
+		{
+			appendDecoratedFragment(fragment, sb);
+		}
+		else
+		{
+			appendFragments(fragment.getFragments(), atLineLevel, sb);
+		}
+	}
+
+	private void appendDecoratedFragment(Fragment fragment, StringBuilder sb)
+	{
+		if (fragment.getFragments().isEmpty())
+			return; // Would be kept literally by the parser
+
+		FragmentDecoration decoration = fragment.getDecoration();
+		decoration.accept(fragmentRestore, sb);
+		if (decoration == FragmentDecoration.CODE)
+		{
+			for (Fragment f : fragment.getFragments())
+			{
+				if (f instanceof TextFragment)
+				{
+					appendCodeText(((TextFragment) f).getText(), sb);
+				}
+				else
+				{
+					appendFragment(f, null, false, sb);
+				}
+			}
+		}
+		else
+		{
+			appendFragments(fragment.getFragments(), false, sb);
+		}
+		decoration.accept(fragmentRestore, sb);
+	}
+
+	private void appendLink(LinkFragment link, StringBuilder sb)
+	{
+		sb.append(ParsingParameters.LINK_START_SIGN);
+		appendFragments(link.getFragments(), false, sb);
+		sb.append(ParsingParameters.LINK_END_SIGN).append(ParsingParameters.URL_START_SIGN);
+		sb.append(link.getUrl());
+		sb.append(ParsingParameters.URL_END_SIGN);
+	}
+
+	/**
+	 * Tells if the link can be written as a raw URL, ie. if the parser would autolink it to the same link.
+	 */
+	private boolean isAutoLink(LinkFragment link, Fragment next, boolean atLineLevel)
+	{
+		List<Fragment> fragments = link.getFragments();
+		if (fragments.size() != 1 || !(fragments.get(0) instanceof TextFragment))
+			return false;
+		String urlPrefix = findURLPrefix(link.getUrl());
+		if (urlPrefix == null)
+			return false;
+		String url = link.getUrl().substring(urlPrefix.length());
+		if (!isWalkableURL(url))
+			return false;
+		String text = ((TextFragment) fragments.get(0)).getText();
+		if (!text.equals(FragmentParser.makeLinkText(url, syntax)))
+			return false;
+
+		// The following characters must not be taken as part of the URL
+		if (next == null)
+			return atLineLevel; // Otherwise, followed by an ending sign
+		if (!(next instanceof TextFragment))
+			return false;
+		String nextText = ((TextFragment) next).getText();
+		if (nextText.isEmpty())
+			return false;
+		// An unmatched closing parenthesis ends the URL too
+		char nextChar = nextText.charAt(0);
+		return !syntax.isValidURLChar(nextChar) ||
+				nextChar == ParsingParameters.URL_END_SIGN && countOpenedParentheses(url) == 0;
+	}
+
+	private String findURLPrefix(String url)
+	{
+		return syntax.matchURLPrefix(new StringWalker(url));
+	}
+
+	/**
+	 * Checks if the URL (without prefix) would be entirely taken by the parser when autolinking.
+	 */
+	private boolean isWalkableURL(String url)
+	{
+		if (url.isEmpty() || !CharacterCheck.isAlphaNumerical(url.charAt(0)))
+			return false;
+		return countOpenedParentheses(url) >= 0;
+	}
+
+	/**
+	 * Returns the number of parentheses left open at the end of the URL, or -1 if the parser would stop walking it
+	 * before its end (invalid character or unmatched closing parenthesis).
+	 * Only the URLs with all their parentheses closed can be written in an explicit link.
+	 */
+	private int countOpenedParentheses(String url)
+	{
+		int openedParentheses = 0;
+		for (int i = 0; i < url.length(); i++)
+		{
+			char c = url.charAt(i);
+			if (!syntax.isValidURLChar(c))
+				return -1;
+			if (c == ParsingParameters.URL_START_SIGN)
+			{
+				openedParentheses++;
+			}
+			else if (c == ParsingParameters.URL_END_SIGN)
+			{
+				if (openedParentheses == 0)
+					return -1;
+				openedParentheses--;
+			}
+		}
+		return openedParentheses;
+	}
+
+	private void appendText(String text, StringBuilder sb)
+	{
+		appendText(text, null, sb);
+	}
+
+	/**
+	 * @param rawMarks  the marks of the characters to write as is, can be null
+	 */
+	private void appendText(String text, byte[] rawMarks, StringBuilder sb)
+	{
+		int last = text.length() - 1;
+		for (int i = 0; i <= last; i++)
+		{
+			char c = text.charAt(i);
+			// Outside of this text, we don't know what the characters will be: assume the worst
+			char previous = i > 0 ? text.charAt(i - 1) : NO_CHAR;
+			char next = i < last ? text.charAt(i + 1) : NO_CHAR;
+			if ((rawMarks == null || rawMarks[i] == 0) && needsEscape(c, previous, next))
+			{
+				sb.append(syntax.getEscapeSign());
+			}
+			sb.append(c);
+		}
+	}
+
+	private boolean needsEscape(char c, char previous, char next)
+	{
+		if (c == ParsingParameters.LINK_START_SIGN || c == ParsingParameters.LINK_END_SIGN)
+			return true;
+		if (c == syntax.getEscapeSign())
+			return next == NO_CHAR || isSpecialChar(next);
+		if (syntax.getFragmentDecoration(c) != null)
+			return !isInactiveSign(previous, next);
+		return false;
+	}
+
+	private boolean isSpecialChar(char c)
+	{
+		return syntax.getFragmentDecoration(c) != null ||
+				c == ParsingParameters.LINK_START_SIGN || c == ParsingParameters.LINK_END_SIGN ||
+				c == syntax.getEscapeSign();
+	}
+
+	/**
+	 * A decoration sign is kept literally by the parser, whether it is seen as starting or ending sign,
+	 * if it is between two letters or digits, or between two spaces.
+	 */
+	private boolean isInactiveSign(char previous, char next)
+	{
+		return Character.isLetterOrDigit(previous) && Character.isLetterOrDigit(next) ||
+				CharacterCheck.isWhitespace(previous) && CharacterCheck.isWhitespace(next);
+	}
+
+	/**
+	 * In code fragments, only the escape sign and the code sign can be escaped.
+	 */
+	private void appendCodeText(String text, StringBuilder sb)
+	{
+		int last = text.length() - 1;
+		for (int i = 0; i <= last; i++)
+		{
+			char c = text.charAt(i);
+			char next = i < last ? text.charAt(i + 1) : NO_CHAR;
+			boolean escape = c == ParsingParameters.CODE_FRAGMENT_SIGN ||
+					c == syntax.getEscapeSign() &&
+						(next == NO_CHAR || next == ParsingParameters.CODE_FRAGMENT_SIGN || next == syntax.getEscapeSign());
+			if (escape)
+			{
+				sb.append(syntax.getEscapeSign());
+			}
+			sb.append(c);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.philhosoft.parser.plainmark;
+
+import org.philhosoft.formattedtext.ast.BlockType;
+
+// Same remark than RestoreFragmentVisitor: if ParsingParameters allows to change these signs, we will need to get them from there.
+/**
+ * Restores the sign (with its mandatory following space) starting each line of a block.<br>
+ * Blocks without sign per line (document, paragraph, code, lists) add nothing.
+ */
+public class RestoreBlockVisitor implements BlockType.Visitor<StringBuilder>
+{
+	@Override
+	public void visitDocument(StringBuilder sb)
+	{
+	}
+	@Override
+	public void visitParagraph(StringBuilder sb)
+	{
+	}
+	@Override
+	public void visitTitle1(StringBuilder sb)
+	{
+		sb.append("# ");
+	}
+	@Override
+	public void visitTitle2(StringBuilder sb)
+	{
+		sb.append("## ");
+	}
+	@Override
+	public void visitTitle3(StringBuilder sb)
+	{
+		sb.append("### ");
+	}
+	@Override
+	public void visitCode(StringBuilder sb)
+	{
+	}
+	@Override
+	public void visitUnorderedList(StringBuilder sb)
+	{
+	}
+	@Override
+	public void visitOrderedList(StringBuilder sb)
+	{
+	}
+	@Override
+	public void visitListItemBullet(StringBuilder sb)
+	{
+		sb.append("- ");
+	}
+	@Override
+	public void visitListItemNumber(StringBuilder sb)
+	{
+		sb.append("1. ");
+	}
+}
@@ -0,0 +1,310 @@
+package org.philhosoft.parser.plainmark.batch;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.format.ContextWithAppendable;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.batch.BatchReport.FileResult;
+import org.philhosoft.parser.plainmark.batch.BatchReport.Status;
+
+/**
+ * Converts a directory tree of PlainMark files (<code>.txt</code>) to a mirrored tree of HTML files (<code>.html</code>).
+ * <p>
+ * The files are converted in parallel by a pool of workers sharing the engine. Each source is memory-mapped,
+ * hashed and decoded from the mapping; the rendering is streamed to the target through a buffered channel writer.
+ * <p>
+ * A manifest of the hashes of the sources is kept in the target directory: the files unchanged since the last run
+ * (same content, same engine configuration) and whose target still exists are skipped.
+ * <p>
+ * Usage: <code>BatchConverter [-j workers] [-v] [--force] sourceDir targetDir</code>
+ */
+public class BatchConverter
+{
+	public static final String SOURCE_EXTENSION = ".txt";
+	public static final String TARGET_EXTENSION = ".html";
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final PlainMarkEngine engine;
+	private final int workerCount;
+	private boolean force;
+
+	/**
+	 * @param workerCount  number of files converted in parallel
+	 */
+	public BatchConverter(PlainMarkEngine engine, int workerCount)
+	{
+		if (workerCount < 1)
+			throw new IllegalArgumentException("At least one worker is needed, got " + workerCount);
+		this.engine = engine;
+		this.workerCount = workerCount;
+	}
+
+	/**
+	 * If true, converts all the files, even the unchanged ones.
+	 */
+	public BatchConverter setForce(boolean force)
+	{
+		this.force = force;
+		return this;
+	}
+
+	/**
+	 * Converts all the PlainMark files of the source tree to the target tree, and updates the manifest.
+	 * A file failing to convert doesn't stop the batch: it is reported, and retried on the next run.
+	 */
+	public BatchReport convert(Path sourceDirectory, Path targetDirectory) throws IOException
+	{
+		if (!Files.isDirectory(sourceDirectory))
+			throw new IOException("Not a directory: " + sourceDirectory);
+		Files.createDirectories(targetDirectory);
+		Path manifestFile = targetDirectory.resolve(ConversionManifest.FILE_NAME);
+		ConversionManifest manifest = ConversionManifest.read(manifestFile, engine.getFingerprint());
+
+		long start = System.nanoTime();
+		List<Path> sources = findSources(sourceDirectory, targetDirectory);
+		List<FileResult> results = new ArrayList<FileResult>(sources.size());
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		try
+		{
+			List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>(sources.size());
+			for (Path source : sources)
+			{
+				futures.add(executor.submit(new FileConversion(sourceDirectory, source, targetDirectory, manifest)));
+			}
+			for (Future<FileResult> future : futures)
+			{
+				results.add(future.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while converting", e);
+		}
+		catch (ExecutionException e)
+		{
+			// FileConversion catches the exceptions of the conversions
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		manifest.write(manifestFile);
+		return new BatchReport(results, System.nanoTime() - start, workerCount);
+	}
+
+	private static List<Path> findSources(Path sourceDirectory, final Path targetDirectory) throws IOException
+	{
+		final Path absoluteTarget = targetDirectory.toAbsolutePath().normalize();
+		final List<Path> sources = new ArrayList<Path>();
+		Files.walkFileTree(sourceDirectory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+			{
+				// The target can be inside the source
+				return directory.toAbsolutePath().normalize().equals(absoluteTarget) ?
+						FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+			{
+				if (attributes.isRegularFile() && file.getFileName().toString().endsWith(SOURCE_EXTENSION))
+				{
+					sources.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(sources);
+		return sources;
+	}
+
+	private class FileConversion implements Callable<FileResult>
+	{
+		private final Path sourceDirectory;
+		private final Path source;
+		private final Path targetDirectory;
+		private final ConversionManifest manifest;
+
+		public FileConversion(Path sourceDirectory, Path source, Path targetDirectory, ConversionManifest manifest)
+		{
+			this.sourceDirectory = sourceDirectory;
+			this.source = source;
+			this.targetDirectory = targetDirectory;
+			this.manifest = manifest;
+		}
+
+		@Override
+		public FileResult call()
+		{
+			long start = System.nanoTime();
+			String relativePath = sourceDirectory.relativize(source).toString().replace('\\', '/');
+			long size = 0;
+			try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ))
+			{
+				size = channel.size();
+				if (size > Integer.MAX_VALUE)
+					throw new IOException("File too big: " + size + " bytes");
+				MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				String hash = hash(content.duplicate());
+				String targetName = relativePath.substring(0, relativePath.length() - SOURCE_EXTENSION.length()) +
+						TARGET_EXTENSION;
+				Path target = targetDirectory.resolve(targetName);
+
+				if (!force && manifest.isUnchanged(relativePath, hash) && Files.exists(target))
+				{
+					manifest.record(relativePath, hash);
+					return new FileResult(relativePath, Status.SKIPPED, size, System.nanoTime() - start, null);
+				}
+
+				String markupText = StandardCharsets.UTF_8.decode(content).toString();
+				write(engine.parse(markupText), target);
+				manifest.record(relativePath, hash);
+				return new FileResult(relativePath, Status.CONVERTED, size, System.nanoTime() - start, null);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				return new FileResult(relativePath, Status.FAILED, size, System.nanoTime() - start, e);
+			}
+		}
+
+		private void write(Block block, Path target) throws IOException
+		{
+			Files.createDirectories(target.getParent());
+			try (FileChannel channel = FileChannel.open(target,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), OUTPUT_BUFFER_SIZE))
+			{
+				block.accept(engine.getVisitor(), new ContextWithAppendable(writer));
+			}
+		}
+	}
+
+	private static String hash(ByteBuffer content)
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is always available", e);
+		}
+		digest.update(content);
+		byte[] bytes = digest.digest();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+			hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	public static void main(String[] args)
+	{
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * Runs the command line.
+	 *
+	 * @return the exit code: 0 on success, 1 if some files failed, 2 on usage error
+	 */
+	static int run(String[] args, PrintStream out, PrintStream err)
+	{
+		int workerCount = Runtime.getRuntime().availableProcessors();
+		boolean verbose = false;
+		boolean force = false;
+		List<String> directories = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (arg.equals("-j") && i + 1 < args.length)
+			{
+				try
+				{
+					workerCount = Integer.parseInt(args[++i]);
+				}
+				catch (NumberFormatException e)
+				{
+					workerCount = 0;
+				}
+			}
+			else if (arg.equals("-v"))
+			{
+				verbose = true;
+			}
+			else if (arg.equals("--force"))
+			{
+				force = true;
+			}
+			else if (!arg.startsWith("-"))
+			{
+				directories.add(arg);
+			}
+			else
+			{
+				directories.clear();
+				break;
+			}
+		}
+		if (directories.size() != 2 || workerCount < 1)
+		{
+			err.println("Usage: BatchConverter [-j workers] [-v] [--force] sourceDir targetDir");
+			return 2;
+		}
+
+		BatchReport report;
+		try
+		{
+			PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+			report = new BatchConverter(engine, workerCount).setForce(force)
+					.convert(Paths.get(directories.get(0)), Paths.get(directories.get(1)));
+		}
+		catch (IOException e)
+		{
+			err.println("Cannot convert: " + e.getMessage());
+			return 2;
+		}
+		for (FileResult result : report.getFileResults())
+		{
+			if (verbose || result.getStatus() == Status.FAILED)
+			{
+				(result.getStatus() == Status.FAILED ? err : out).println(result);
+			}
+		}
+		out.println(report);
+		return report.getCount(Status.FAILED) == 0 ? 0 : 1;
+	}
+}
@@ -0,0 +1,158 @@
+package org.philhosoft.parser.plainmark.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of a batch conversion: the outcome of each file, and the aggregate throughput.
+ */
+public class BatchReport
+{
+	public enum Status
+	{
+		CONVERTED, SKIPPED, FAILED
+	}
+
+	/**
+	 * Outcome of the conversion of a file.
+	 */
+	public static class FileResult
+	{
+		private final String relativePath;
+		private final Status status;
+		private final long size;
+		private final long nanos;
+		private final Exception error;
+
+		public FileResult(String relativePath, Status status, long size, long nanos, Exception error)
+		{
+			this.relativePath = relativePath;
+			this.status = status;
+			this.size = size;
+			this.nanos = nanos;
+			this.error = error;
+		}
+
+		public String getRelativePath()
+		{
+			return relativePath;
+		}
+		public Status getStatus()
+		{
+			return status;
+		}
+		/** Size of the source file, in bytes. */
+		public long getSize()
+		{
+			return size;
+		}
+		/** Time spent on this file (reading, hashing, converting and writing), in nanoseconds. */
+		public long getNanos()
+		{
+			return nanos;
+		}
+		/** The exception making the conversion fail, if any. */
+		public Exception getError()
+		{
+			return error;
+		}
+
+		/**
+		 * Returns the throughput on this file, in megabytes (10^6 bytes) per second.
+		 */
+		public double getThroughput()
+		{
+			return throughput(size, nanos);
+		}
+
+		@Override
+		public String toString()
+		{
+			if (status == Status.FAILED)
+				return String.format("%-9s %s: %s", status, relativePath, error);
+			return String.format("%-9s %10d B %9.2f ms %8.1f MB/s  %s",
+					status, size, nanos / 1e6, getThroughput(), relativePath);
+		}
+	}
+
+	private final List<FileResult> fileResults;
+	private final long elapsedNanos;
+	private final int workerCount;
+
+	public BatchReport(List<FileResult> fileResults, long elapsedNanos, int workerCount)
+	{
+		this.fileResults = Collections.unmodifiableList(new ArrayList<FileResult>(fileResults));
+		this.elapsedNanos = elapsedNanos;
+		this.workerCount = workerCount;
+	}
+
+	/**
+	 * Returns the results of all the files, in the order of their paths.
+	 */
+	public List<FileResult> getFileResults()
+	{
+		return fileResults;
+	}
+
+	public int getCount(Status status)
+	{
+		int count = 0;
+		for (FileResult result : fileResults)
+		{
+			if (result.getStatus() == status)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the total size of the converted files, in bytes.
+	 */
+	public long getConvertedSize()
+	{
+		long size = 0;
+		for (FileResult result : fileResults)
+		{
+			if (result.getStatus() == Status.CONVERTED)
+			{
+				size += result.getSize();
+			}
+		}
+		return size;
+	}
+
+	/** Wall-clock time of the whole batch, in nanoseconds. */
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	public int getWorkerCount()
+	{
+		return workerCount;
+	}
+
+	/**
+	 * Returns the aggregate throughput of the converted files, in megabytes (10^6 bytes) per second of wall-clock time.
+	 */
+	public double getThroughput()
+	{
+		return throughput(getConvertedSize(), elapsedNanos);
+	}
+
+	private static double throughput(long size, long nanos)
+	{
+		return nanos == 0 ? 0 : size * 1e3 / nanos;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d converted, %d skipped, %d failed; %d B in %.1f ms with %d workers: %.1f MB/s",
+				getCount(Status.CONVERTED), getCount(Status.SKIPPED), getCount(Status.FAILED),
+				getConvertedSize(), elapsedNanos / 1e6, workerCount, getThroughput());
+	}
+}
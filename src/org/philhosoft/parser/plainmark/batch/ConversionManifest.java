@@ -0,0 +1,107 @@
+package org.philhosoft.parser.plainmark.batch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashes of the source files converted by the last run, to skip the unchanged ones.
+ * <p>
+ * Stored as a text file: a first line with the fingerprint of the engine (a change of configuration
+ * invalidates all the entries), then a line per file, with the hash of its content, a tab and its path
+ * relative to the source directory.
+ * <p>
+ * Thread-safe: the workers record their files concurrently.
+ */
+class ConversionManifest
+{
+	static final String FILE_NAME = ".plainmark-manifest";
+	private static final String HEADER = "# PlainMark manifest, engine ";
+
+	private final long engineFingerprint;
+	private final Map<String, String> previousHashes;
+	private final ConcurrentHashMap<String, String> currentHashes = new ConcurrentHashMap<String, String>();
+
+	private ConversionManifest(long engineFingerprint, Map<String, String> previousHashes)
+	{
+		this.engineFingerprint = engineFingerprint;
+		this.previousHashes = previousHashes;
+	}
+
+	/**
+	 * Reads the manifest of the given file, if it exists and has been made by an engine of same fingerprint.
+	 * Otherwise, starts an empty one.
+	 */
+	static ConversionManifest read(Path file, long engineFingerprint) throws IOException
+	{
+		Map<String, String> hashes = new TreeMap<String, String>();
+		List<String> lines;
+		try
+		{
+			lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		}
+		catch (NoSuchFileException e)
+		{
+			return new ConversionManifest(engineFingerprint, hashes);
+		}
+		if (lines.isEmpty() || !lines.get(0).equals(HEADER + Long.toHexString(engineFingerprint)))
+			return new ConversionManifest(engineFingerprint, hashes);
+
+		for (int i = 1; i < lines.size(); i++)
+		{
+			String line = lines.get(i);
+			int tab = line.indexOf('\t');
+			if (tab > 0)
+			{
+				hashes.put(line.substring(tab + 1), line.substring(0, tab));
+			}
+		}
+		return new ConversionManifest(engineFingerprint, hashes);
+	}
+
+	/**
+	 * True if the file of the given path had the given hash on the previous run.
+	 */
+	boolean isUnchanged(String relativePath, String hash)
+	{
+		return hash.equals(previousHashes.get(relativePath));
+	}
+
+	/**
+	 * Records the hash of a file converted (or skipped) by this run.
+	 */
+	void record(String relativePath, String hash)
+	{
+		currentHashes.put(relativePath, hash);
+	}
+
+	/**
+	 * Writes the files recorded by this run, replacing the given file only once fully written.
+	 * The files not recorded (removed, or failed) will be converted again on the next run.
+	 */
+	void write(Path file) throws IOException
+	{
+		Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8))
+		{
+			writer.write(HEADER + Long.toHexString(engineFingerprint));
+			writer.write('\n');
+			for (Map.Entry<String, String> entry : new TreeMap<String, String>(currentHashes).entrySet())
+			{
+				writer.write(entry.getValue());
+				writer.write('\t');
+				writer.write(entry.getKey());
+				writer.write('\n');
+			}
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
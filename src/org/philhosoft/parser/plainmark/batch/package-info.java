@@ -0,0 +1,4 @@
+/**
+ * Batch conversion of directory trees of PlainMark files, from the command line or from a build.
+ */
+package org.philhosoft.parser.plainmark.batch;
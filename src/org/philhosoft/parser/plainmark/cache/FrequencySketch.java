@@ -0,0 +1,122 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch estimating how often keys have been seen recently, in a small, fixed amount of memory.
+ * <p>
+ * Each key increments one 4-bit counter in each of the four rows of the sketch, and its frequency is the minimum
+ * of these counters: collisions can only overestimate it. Counters saturate at 15.<br>
+ * To favor recent popularity, all the counters are halved (aging) once a number of increments
+ * proportional to the size of the sketch has been made.
+ * <p>
+ * Thread-safe: counters are updated by compare-and-set, and a concurrent aging can just lose a few increments.
+ */
+public class FrequencySketch
+{
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long[] SEEDS =
+	{
+		0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L,
+	};
+	/** Number of increments, relative to the width, before aging. */
+	private static final int SAMPLE_FACTOR = 10;
+
+	private final AtomicLongArray table;
+	private final int width;
+	private final int widthMask;
+	private final int sampleSize;
+	private final AtomicInteger incrementCount = new AtomicInteger();
+
+	/**
+	 * @param expectedSize  number of distinct keys expected to be tracked (eg. the number of entries of a cache)
+	 */
+	public FrequencySketch(int expectedSize)
+	{
+		int w = 16;
+		while (w < expectedSize && w < 1 << 28)
+		{
+			w <<= 1;
+		}
+		width = w;
+		widthMask = w - 1;
+		sampleSize = SAMPLE_FACTOR * w;
+		// 16 counters per long
+		table = new AtomicLongArray(DEPTH * w / 16);
+	}
+
+	/**
+	 * Records an occurrence of the key with the given hash.
+	 */
+	public void increment(long hash)
+	{
+		boolean incremented = false;
+		for (int row = 0; row < DEPTH; row++)
+		{
+			incremented |= incrementAt(counterIndex(hash, row));
+		}
+		if (incremented && incrementCount.incrementAndGet() == sampleSize)
+		{
+			reset();
+		}
+	}
+
+	/**
+	 * Returns the estimated number of recent occurrences of the key with the given hash, up to 15.
+	 */
+	public int frequency(long hash)
+	{
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++)
+		{
+			frequency = Math.min(frequency, counterAt(counterIndex(hash, row)));
+		}
+		return frequency;
+	}
+
+	private int counterIndex(long hash, int row)
+	{
+		long h = (hash + SEEDS[row]) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 29;
+		return row * width + ((int) (h >>> 32) & widthMask);
+	}
+
+	private int counterAt(int index)
+	{
+		return (int) (table.get(index >>> 4) >>> ((index & 15) << 2)) & MAX_COUNT;
+	}
+
+	private boolean incrementAt(int index)
+	{
+		int slot = index >>> 4;
+		int shift = (index & 15) << 2;
+		while (true)
+		{
+			long value = table.get(slot);
+			if ((value >>> shift & MAX_COUNT) == MAX_COUNT)
+				return false;
+			if (table.compareAndSet(slot, value, value + (1L << shift)))
+				return true;
+		}
+	}
+
+	/**
+	 * Halves all the counters, so old popularity fades away.
+	 */
+	private void reset()
+	{
+		for (int i = 0; i < table.length(); i++)
+		{
+			while (true)
+			{
+				long value = table.get(i);
+				if (table.compareAndSet(i, value, value >>> 1 & RESET_MASK))
+					break;
+			}
+		}
+		incrementCount.addAndGet(-sampleSize / 2);
+	}
+}
@@ -0,0 +1,312 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Store of rendered outputs outside of the Java heap, to keep millions of them without weighing on the garbage collector.
+ * <p>
+ * The outputs are encoded in UTF-8 and appended to slabs of direct memory. Only a small location record per output
+ * stays on the heap, in an index keyed by {@link RenderKey}. An output is retrieved as a read-only slice of its slab,
+ * without copy, ready to be written to a channel (eg. a socket).
+ * <p>
+ * The regions of a slab are written once and never overwritten: the slices given remain valid even after their output
+ * has been removed. When all the slabs are used, the one with the least live data is reclaimed: if it is mostly dead,
+ * its live outputs are compacted into the new slab, otherwise they are evicted. The reclaimed slab is dropped before
+ * the new one is allocated, but its memory is freed only by the garbage collector, once no slice refers to it anymore.
+ * So the direct memory really used depends on the collections: see {@link #OffHeapRenderStore(int, long)}.
+ * <p>
+ * Reads don't lock; writes are serialized.
+ */
+public class OffHeapRenderStore
+{
+	/** Below this ratio of live data, the outputs of a reclaimed slab are moved instead of evicted. */
+	private static final double COMPACTION_THRESHOLD = 0.5;
+
+	private final int slabSize;
+	private final int maxSlabNb;
+	private final ConcurrentHashMap<RenderKey, Location> index = new ConcurrentHashMap<RenderKey, Location>();
+	private final ReentrantLock writeLock = new ReentrantLock();
+	/** Guarded by writeLock. */
+	private final List<Slab> slabs = new ArrayList<Slab>();
+	/** Guarded by writeLock. */
+	private Slab currentSlab;
+
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder compactionCount = new LongAdder();
+
+	private static final class Slab
+	{
+		private final ByteBuffer buffer;
+		/** Guarded by writeLock. */
+		private final List<RenderKey> keys = new ArrayList<RenderKey>();
+		/** Guarded by writeLock. */
+		private int used;
+		/** Guarded by writeLock. */
+		private int liveBytes;
+
+		Slab(int size)
+		{
+			buffer = ByteBuffer.allocateDirect(size);
+		}
+	}
+
+	private static final class Location
+	{
+		private final Slab slab;
+		private final int offset;
+		private final int length;
+
+		Location(Slab slab, int offset, int length)
+		{
+			this.slab = slab;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Creates a store keeping at most maxBytes / slabSize - 1 slabs: one slab of the budget is kept as headroom
+	 * for the allocation of a new slab while a reclaimed one is not freed yet.
+	 * <p>
+	 * Reclaimed slabs are freed only when the garbage collector runs and no slice given by {@link #get(RenderKey)}
+	 * refers to them anymore. With frequent reclaims, they can add up beyond the headroom between two collections:
+	 * leave room for them in <code>-XX:MaxDirectMemorySize</code>, otherwise the allocations of slabs wait for a
+	 * full collection (<code>System.gc()</code>) to free them.
+	 *
+	 * @param slabSize  size of each slab of direct memory, in bytes. Bigger outputs are not stored.
+	 * @param maxBytes  direct memory budget of the slabs in use, including one slab of headroom
+	 */
+	public OffHeapRenderStore(int slabSize, long maxBytes)
+	{
+		if (slabSize <= 0 || maxBytes / 2 < slabSize)
+			throw new IllegalArgumentException("At least two slabs are needed: one in use, and one of headroom");
+		this.slabSize = slabSize;
+		this.maxSlabNb = (int) Math.min(Integer.MAX_VALUE, maxBytes / slabSize - 1);
+	}
+
+	/**
+	 * Returns the UTF-8 encoded output of the given key, as a read-only buffer sharing the memory of the store,
+	 * or null if it is not stored.
+	 */
+	public ByteBuffer get(RenderKey key)
+	{
+		Location location = index.get(key);
+		if (location == null)
+			return null;
+		// Duplicate, as the position of the shared buffer must not move
+		ByteBuffer view = location.slab.buffer.duplicate();
+		view.limit(location.offset + location.length);
+		view.position(location.offset);
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns the output of the given key, decoded to a string, or null if it is not stored.
+	 */
+	public String getString(RenderKey key)
+	{
+		ByteBuffer buffer = get(key);
+		return buffer == null ? null : StandardCharsets.UTF_8.decode(buffer).toString();
+	}
+
+	/**
+	 * Stores the given output, unless it is bigger than a slab, or already stored.
+	 *
+	 * @return true if stored
+	 */
+	public boolean put(RenderKey key, String output)
+	{
+		if (index.containsKey(key))
+			return false;
+		byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > slabSize)
+			return false;
+
+		writeLock.lock();
+		try
+		{
+			if (index.containsKey(key))
+				return false;
+			Location location = append(key, bytes, 0, bytes.length);
+			index.put(key, location);
+			return true;
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the output of the given key. Its memory is reclaimed by the next compaction of its slab.
+	 */
+	public void remove(RenderKey key)
+	{
+		writeLock.lock();
+		try
+		{
+			Location location = index.remove(key);
+			if (location != null)
+			{
+				location.slab.liveBytes -= location.length;
+			}
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/** Guarded by writeLock. */
+	private Location append(RenderKey key, byte[] bytes, int offset, int length)
+	{
+		if (currentSlab == null || currentSlab.used + length > slabSize)
+		{
+			newSlab(length);
+		}
+		ByteBuffer target = currentSlab.buffer.duplicate();
+		target.position(currentSlab.used);
+		target.put(bytes, offset, length);
+		Location location = new Location(currentSlab, currentSlab.used, length);
+		currentSlab.used += length;
+		currentSlab.liveBytes += length;
+		currentSlab.keys.add(key);
+		return location;
+	}
+
+	/**
+	 * Makes a new current slab, with room for an output of the given length after the compacted ones.
+	 * Guarded by writeLock.
+	 */
+	private void newSlab(int length)
+	{
+		if (slabs.size() < maxSlabNb)
+		{
+			currentSlab = new Slab(slabSize);
+			slabs.add(currentSlab);
+			return;
+		}
+
+		Slab reclaimed = leastLiveSlab();
+		slabs.remove(reclaimed);
+		if (currentSlab == reclaimed)
+		{
+			currentSlab = null;
+		}
+		boolean compact = reclaimed.liveBytes <= slabSize * COMPACTION_THRESHOLD &&
+				reclaimed.liveBytes + length <= slabSize;
+		List<RenderKey> movedKeys = new ArrayList<RenderKey>();
+		List<Integer> movedLengths = new ArrayList<Integer>();
+		// Once copied, no reference to the reclaimed slab remains here:
+		// it can be freed if the allocation of the new one runs short of direct memory
+		byte[] moved = unindex(reclaimed, compact, movedKeys, movedLengths);
+
+		currentSlab = new Slab(slabSize);
+		slabs.add(currentSlab);
+		int offset = 0;
+		for (int i = 0; i < movedKeys.size(); i++)
+		{
+			int movedLength = movedLengths.get(i);
+			index.put(movedKeys.get(i), append(movedKeys.get(i), moved, offset, movedLength));
+			offset += movedLength;
+			compactionCount.increment();
+		}
+	}
+
+	/**
+	 * Removes the outputs of the given slab from the index, and copies them to the returned array if they are to be moved,
+	 * adding their keys and lengths to the given lists. Guarded by writeLock.
+	 */
+	private byte[] unindex(Slab slab, boolean compact, List<RenderKey> movedKeys, List<Integer> movedLengths)
+	{
+		byte[] moved = compact ? new byte[slab.liveBytes] : null;
+		int movedSize = 0;
+		for (RenderKey key : slab.keys)
+		{
+			Location location = index.get(key);
+			if (location == null || location.slab != slab)
+				continue; // Removed
+			index.remove(key);
+			if (compact)
+			{
+				ByteBuffer source = slab.buffer.duplicate();
+				source.position(location.offset);
+				source.get(moved, movedSize, location.length);
+				movedSize += location.length;
+				movedKeys.add(key);
+				movedLengths.add(location.length);
+			}
+			else
+			{
+				evictionCount.increment();
+			}
+		}
+		return moved;
+	}
+
+	/** Guarded by writeLock. */
+	private Slab leastLiveSlab()
+	{
+		Slab least = null;
+		for (Slab slab : slabs)
+		{
+			if (slab != currentSlab && (least == null || slab.liveBytes < least.liveBytes))
+			{
+				least = slab;
+			}
+		}
+		return least != null ? least : currentSlab;
+	}
+
+	public int size()
+	{
+		return index.size();
+	}
+	/** Number of slabs of direct memory currently allocated. */
+	public int getSlabCount()
+	{
+		writeLock.lock();
+		try
+		{
+			return slabs.size();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	/** Total size of the stored outputs, in bytes. */
+	public long getLiveBytes()
+	{
+		writeLock.lock();
+		try
+		{
+			long live = 0;
+			for (Slab slab : slabs)
+			{
+				live += slab.liveBytes;
+			}
+			return live;
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	/** Number of outputs dropped to reclaim a slab. */
+	public long getEvictionCount()
+	{
+		return evictionCount.sum();
+	}
+	/** Number of outputs moved to reclaim a slab. */
+	public long getCompactionCount()
+	{
+		return compactionCount.sum();
+	}
+}
@@ -0,0 +1,357 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Cache of rendered outputs persisted in a memory-mapped file, so a restarted process can serve them right away.
+ * <p>
+ * The file is an append-only log of records, each holding a {@link RenderKey}, a CRC32 and the UTF-8 output.
+ * When opening the file, only the record headers are read, to rebuild the index in memory;
+ * the outputs are read from the mapped file on demand, and checked against their CRC on first read:
+ * corrupted records are dropped.<br>
+ * The end of the log is marked after each record, so a partially written record (eg. on a crash) is ignored.
+ * <p>
+ * The configuration of the engine (see PlainMarkEngine.getFingerprint()) is part of the keys, so outputs made
+ * with other parameters are never served. An invalidation record can also drop all the outputs of a configuration,
+ * eg. when its visitor changes without changing its fingerprint.
+ * <p>
+ * The file has a fixed capacity. When full, the log is cleared and starts over.
+ * Reads don't lock; writes are serialized.
+ */
+public class PersistentRenderCache implements Closeable
+{
+	private static final int FILE_MAGIC = 0x504D5243; // PMRC
+	private static final int VERSION = 1;
+	private static final int FILE_HEADER_SIZE = 16;
+	private static final int ENTRY_MAGIC = 0x504D5245; // PMRE
+	private static final int INVALIDATION_MAGIC = 0x504D5249; // PMRI
+	private static final int END_MARK = 0;
+	/** magic, length, content high, content low, configuration, CRC. */
+	private static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer mapped;
+	private final int capacity;
+	private final ConcurrentHashMap<RenderKey, Location> index = new ConcurrentHashMap<RenderKey, Location>();
+	private final ReentrantLock writeLock = new ReentrantLock();
+	/** Guarded by writeLock. */
+	private int writePosition;
+
+	private final LongAdder corruptionCount = new LongAdder();
+
+	private static final class Location
+	{
+		private final int offset;
+		private final int length;
+		private final int crc;
+		private volatile boolean checked;
+
+		Location(int offset, int length, int crc)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.crc = crc;
+		}
+	}
+
+	private PersistentRenderCache(FileChannel channel, MappedByteBuffer mapped, int capacity)
+	{
+		this.channel = channel;
+		this.mapped = mapped;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Opens the cache stored in the given file, creating it if needed.
+	 *
+	 * @param capacity  size of the file, in bytes
+	 * @throws IOException  if the file cannot be mapped, or is not a cache file
+	 */
+	public static PersistentRenderCache open(Path file, int capacity) throws IOException
+	{
+		FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			boolean created = channel.size() == 0;
+			int size = created ? capacity : (int) Math.min(Integer.MAX_VALUE, channel.size());
+			if (size < FILE_HEADER_SIZE + RECORD_HEADER_SIZE)
+				throw new IOException("Cache file too small: " + file);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			PersistentRenderCache cache = new PersistentRenderCache(channel, mapped, size);
+			if (created)
+			{
+				cache.writeHeader();
+			}
+			else
+			{
+				cache.load(file);
+			}
+			return cache;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void writeHeader()
+	{
+		mapped.putInt(0, FILE_MAGIC);
+		mapped.putInt(4, VERSION);
+		mapped.putLong(8, 0);
+		mapped.putInt(FILE_HEADER_SIZE, END_MARK);
+		writePosition = FILE_HEADER_SIZE;
+	}
+
+	/**
+	 * Rebuilds the index from the record headers.
+	 */
+	private void load(Path file) throws IOException
+	{
+		if (mapped.getInt(0) != FILE_MAGIC || mapped.getInt(4) != VERSION)
+			throw new IOException("Not a render cache file (or of another version): " + file);
+		int position = FILE_HEADER_SIZE;
+		while (position + RECORD_HEADER_SIZE <= capacity)
+		{
+			int magic = mapped.getInt(position);
+			int length = mapped.getInt(position + 4);
+			if (magic != ENTRY_MAGIC && magic != INVALIDATION_MAGIC ||
+					length < 0 || length > capacity - position - RECORD_HEADER_SIZE)
+				break; // End of the log, or partially written record
+			long configuration = mapped.getLong(position + 24);
+			if (magic == ENTRY_MAGIC)
+			{
+				RenderKey key = new RenderKey(mapped.getLong(position + 8), mapped.getLong(position + 16), configuration);
+				index.put(key, new Location(position + RECORD_HEADER_SIZE, length, mapped.getInt(position + 32)));
+			}
+			else
+			{
+				removeConfiguration(configuration);
+			}
+			position += RECORD_HEADER_SIZE + length;
+		}
+		writePosition = position;
+	}
+
+	/**
+	 * Returns the UTF-8 encoded output of the given key, as a read-only buffer on the mapped file,
+	 * or null if it is not stored (or corrupted).
+	 * <p>
+	 * The buffer shares the memory of the file: it is valid only until the log starts over (see {@link #clear()}).
+	 * Use {@link #get(RenderKey)} to keep the output.
+	 */
+	public ByteBuffer getBytes(RenderKey key)
+	{
+		Location location = index.get(key);
+		if (location == null)
+			return null;
+		ByteBuffer output = view(location);
+		if (!location.checked)
+		{
+			if (!isValid(key, location, output.duplicate()))
+				return null;
+			location.checked = true;
+		}
+		return output;
+	}
+
+	/**
+	 * Returns the output of the given key, or null if it is not stored (or corrupted).
+	 * <p>
+	 * The output is copied and checked each time, so it is safe even if the log starts over meanwhile.
+	 */
+	public String get(RenderKey key)
+	{
+		Location location = index.get(key);
+		if (location == null)
+			return null;
+		byte[] bytes = new byte[location.length];
+		view(location).get(bytes);
+		if (!isValid(key, location, ByteBuffer.wrap(bytes)))
+			return null;
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private ByteBuffer view(Location location)
+	{
+		ByteBuffer view = mapped.duplicate();
+		view.limit(location.offset + location.length);
+		view.position(location.offset);
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	private boolean isValid(RenderKey key, Location location, ByteBuffer output)
+	{
+		if (computeCRC(key, output) == location.crc)
+			return true;
+		index.remove(key, location);
+		corruptionCount.increment();
+		return false;
+	}
+
+	/**
+	 * Appends the given output to the log, unless already stored or bigger than the file.
+	 *
+	 * @return true if stored
+	 */
+	public boolean put(RenderKey key, String output)
+	{
+		if (index.containsKey(key))
+			return false;
+		byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+		if (FILE_HEADER_SIZE + RECORD_HEADER_SIZE + bytes.length > capacity)
+			return false;
+
+		writeLock.lock();
+		try
+		{
+			if (index.containsKey(key))
+				return false;
+			int crc = computeCRC(key, ByteBuffer.wrap(bytes));
+			int position = reserve(bytes.length);
+			ByteBuffer target = mapped.duplicate();
+			target.position(position + 8);
+			target.putLong(key.getContentHigh()).putLong(key.getContentLow()).putLong(key.getConfiguration());
+			target.putInt(crc).put(bytes);
+			commit(position, ENTRY_MAGIC, bytes.length);
+			Location location = new Location(position + RECORD_HEADER_SIZE, bytes.length, crc);
+			location.checked = true;
+			index.put(key, location);
+			return true;
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Drops all the outputs made with the given configuration, now and when the file is opened again.
+	 */
+	public void invalidate(long configuration)
+	{
+		writeLock.lock();
+		try
+		{
+			int position = reserve(0);
+			ByteBuffer target = mapped.duplicate();
+			target.position(position + 8);
+			target.putLong(0).putLong(0).putLong(configuration).putInt(0);
+			commit(position, INVALIDATION_MAGIC, 0);
+			removeConfiguration(configuration);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Drops all the outputs, starting the log over.
+	 */
+	public void clear()
+	{
+		writeLock.lock();
+		try
+		{
+			index.clear();
+			writeHeader();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the position of a new record of the given length, starting the log over if the file is full.
+	 * Guarded by writeLock.
+	 */
+	private int reserve(int length)
+	{
+		if (writePosition + RECORD_HEADER_SIZE + length > capacity)
+		{
+			index.clear();
+			writeHeader();
+		}
+		return writePosition;
+	}
+
+	/**
+	 * Validates the record written at the given position: the end mark is moved after it, then its magic is set.
+	 * Guarded by writeLock.
+	 */
+	private void commit(int position, int magic, int length)
+	{
+		int end = position + RECORD_HEADER_SIZE + length;
+		if (end + 4 <= capacity)
+		{
+			mapped.putInt(end, END_MARK);
+		}
+		mapped.putInt(position + 4, length);
+		mapped.putInt(position, magic);
+		writePosition = end;
+	}
+
+	private void removeConfiguration(long configuration)
+	{
+		Iterator<RenderKey> keys = index.keySet().iterator();
+		while (keys.hasNext())
+		{
+			if (keys.next().getConfiguration() == configuration)
+			{
+				keys.remove();
+			}
+		}
+	}
+
+	private static int computeCRC(RenderKey key, ByteBuffer output)
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer header = ByteBuffer.allocate(24);
+		header.putLong(key.getContentHigh()).putLong(key.getContentLow()).putLong(key.getConfiguration());
+		header.flip();
+		crc.update(header);
+		crc.update(output);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Writes the changes to the storage device.
+	 */
+	public void flush()
+	{
+		mapped.force();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		flush();
+		channel.close();
+	}
+
+	public int size()
+	{
+		return index.size();
+	}
+	/** Number of records found corrupted when read. */
+	public long getCorruptionCount()
+	{
+		return corruptionCount.sum();
+	}
+}
@@ -0,0 +1,364 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.philhosoft.parser.plainmark.ConversionMonitor;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.concurrent.SingleFlight;
+
+/**
+ * Cache of rendered outputs, addressed by content: texts identical to already rendered ones, with the same engine
+ * configuration, are not rendered again.
+ * <p>
+ * The size of the cache is bounded by an estimation of the memory used by the outputs (their weight).
+ * When a new output makes it exceed this budget, the least recently used entries are evicted, down to a lower mark
+ * to avoid evicting on each addition.
+ * <p>
+ * By default, a new output is admitted only if its text has been requested more often recently than the entry
+ * it would evict (TinyLFU policy, with a {@link FrequencySketch} of the requests). Thus texts seen only once
+ * don't evict the popular ones, as they would with a plain LRU policy.
+ * <p>
+ * The order of eviction comes from a snapshot of the entries sorted by last access, consumed until exhausted.
+ * The entries accessed since the snapshot are skipped, and will be found in the next snapshot.
+ * <p>
+ * Reads don't lock: they just read a concurrent map and stamp the entry. Only evictions are serialized,
+ * by a single thread at a time, the others continuing without waiting.<br>
+ * Concurrent misses on the same key are coalesced: only one thread renders the text, the others wait for its output.
+ * <p>
+ * Optionally, the outputs are persisted in a {@link PersistentRenderCache}, searched on misses:
+ * a restarted process can then serve the outputs rendered before.
+ * <p>
+ * The lookups made by {@link #convert(PlainMarkEngine, String)} are reported to the monitor of the engine, if any.
+ */
+public class RenderCache
+{
+	/** Estimation of the memory used by an entry besides the characters of the output (key, entry, map node, string). */
+	public static final int ENTRY_OVERHEAD = 128;
+	/** Part of the budget kept after an eviction. */
+	private static final double LOW_WATER_MARK = 0.9;
+	/** Estimation of the average weight of an entry, to size the frequency sketch. */
+	private static final int AVERAGE_ENTRY_WEIGHT = 1024;
+
+	private final long maxWeight;
+	private final ConcurrentHashMap<RenderKey, Entry> entries = new ConcurrentHashMap<RenderKey, Entry>();
+	private final AtomicLong weight = new AtomicLong();
+	private final FrequencySketch sketch;
+	private final PersistentRenderCache persistentCache;
+	private final SingleFlight<RenderKey, String> renderings = new SingleFlight<RenderKey, String>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	/** Guarded by evictionLock. */
+	private final ArrayDeque<Candidate> evictionQueue = new ArrayDeque<Candidate>();
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder rejectionCount = new LongAdder();
+
+	private static final class Entry
+	{
+		private final String output;
+		private final int weight;
+		private volatile long lastAccess;
+
+		Entry(String output)
+		{
+			this.output = output;
+			this.weight = weigh(output);
+			this.lastAccess = System.nanoTime();
+		}
+	}
+
+	/**
+	 * @param maxWeight  budget of the cache, in bytes (estimated)
+	 */
+	public RenderCache(long maxWeight)
+	{
+		this(maxWeight, true);
+	}
+	/**
+	 * @param maxWeight  budget of the cache, in bytes (estimated)
+	 * @param frequencyAdmission  true to admit new entries only if more frequent than the evicted ones, false for plain LRU
+	 */
+	public RenderCache(long maxWeight, boolean frequencyAdmission)
+	{
+		this(maxWeight, frequencyAdmission, null);
+	}
+	/**
+	 * @param maxWeight  budget of the cache, in bytes (estimated)
+	 * @param frequencyAdmission  true to admit new entries only if more frequent than the evicted ones, false for plain LRU
+	 * @param persistentCache  second level cache, persisting the outputs. Can be null.
+	 */
+	public RenderCache(long maxWeight, boolean frequencyAdmission, PersistentRenderCache persistentCache)
+	{
+		this.maxWeight = maxWeight;
+		this.persistentCache = persistentCache;
+		this.sketch = frequencyAdmission ?
+				new FrequencySketch((int) Math.min(Integer.MAX_VALUE, Math.max(16, maxWeight / AVERAGE_ENTRY_WEIGHT))) : null;
+	}
+
+	/**
+	 * Returns the rendering of the given text by the given engine, from the cache if available.
+	 * Otherwise, converts it (or waits for the thread already converting it) and caches the result.
+	 */
+	public String convert(final PlainMarkEngine engine, final String markupText)
+	{
+		final RenderKey key = RenderKey.of(engine.getFingerprint(), markupText);
+		String output = get(key);
+		ConversionMonitor monitor = engine.getMonitor();
+		if (monitor != null && monitor.isEnabled())
+		{
+			monitor.cacheLookup(output != null);
+		}
+		if (output != null)
+			return output;
+
+		return renderings.execute(key, new Callable<String>()
+		{
+			@Override
+			public String call()
+			{
+				String rendered = persistentCache == null ? null : persistentCache.get(key);
+				if (rendered == null)
+				{
+					rendered = engine.convert(markupText);
+					if (persistentCache != null)
+					{
+						persistentCache.put(key, rendered);
+					}
+				}
+				put(key, rendered);
+				return rendered;
+			}
+		});
+	}
+
+	/**
+	 * Returns the cached output for the given key, or null if there is none.
+	 */
+	public String get(RenderKey key)
+	{
+		if (sketch != null)
+		{
+			sketch.increment(key.hash64());
+		}
+		Entry entry = entries.get(key);
+		if (entry == null)
+		{
+			missCount.increment();
+			return null;
+		}
+		entry.lastAccess = System.nanoTime();
+		hitCount.increment();
+		return entry.output;
+	}
+
+	/**
+	 * Caches the given output, unless it is bigger than the whole budget of the cache,
+	 * or it is not admitted in place of more popular entries.
+	 * If an output is already cached for this key, it is kept, as it is the same.
+	 */
+	public void put(RenderKey key, String output)
+	{
+		Entry entry = new Entry(output);
+		if (entry.weight > maxWeight)
+			return;
+		if (entries.putIfAbsent(key, entry) == null)
+		{
+			if (weight.addAndGet(entry.weight) > maxWeight)
+			{
+				evict(key, entry);
+			}
+		}
+	}
+
+	public void invalidate(RenderKey key)
+	{
+		Entry entry = entries.get(key);
+		if (entry != null)
+		{
+			remove(key, entry);
+		}
+	}
+
+	public void clear()
+	{
+		for (RenderKey key : entries.keySet())
+		{
+			invalidate(key);
+		}
+	}
+
+	/**
+	 * Evicts entries to make room for the given new one, or rejects it if it is less popular than the entries to evict.
+	 */
+	private void evict(RenderKey newKey, Entry newEntry)
+	{
+		// Two passes at most: the second one catches the additions made concurrently by threads not evicting
+		for (int pass = 0; pass < 2 && weight.get() > maxWeight; pass++)
+		{
+			if (!evictionLock.tryLock())
+				return; // Another thread is on it
+			try
+			{
+				evictLocked(newKey, newEntry);
+			}
+			finally
+			{
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	private void evictLocked(RenderKey newKey, Entry newEntry)
+	{
+		long target = (long) (maxWeight * LOW_WATER_MARK);
+		int newFrequency = sketch == null ? 0 : sketch.frequency(newKey.hash64());
+		boolean snapshotMade = false;
+		while (weight.get() > target)
+		{
+			Candidate victim = evictionQueue.peek();
+			if (victim == null)
+			{
+				if (snapshotMade)
+					break; // Nothing left to evict
+				snapshotEntries();
+				snapshotMade = true;
+				continue;
+			}
+			if (victim.entry == newEntry || victim.entry.lastAccess != victim.lastAccess)
+			{
+				// Recently used
+				evictionQueue.poll();
+				continue;
+			}
+			if (sketch != null && entries.get(newKey) == newEntry &&
+					sketch.frequency(victim.key.hash64()) >= newFrequency)
+			{
+				// The victim is more popular than the newcomer: don't admit the latter
+				if (remove(newKey, newEntry))
+				{
+					rejectionCount.increment();
+				}
+				break;
+			}
+			evictionQueue.poll();
+			if (remove(victim.key, victim.entry))
+			{
+				evictionCount.increment();
+			}
+		}
+	}
+
+	private void snapshotEntries()
+	{
+		// Snapshot the access stamps, they can change while sorting
+		List<Candidate> candidates = new ArrayList<Candidate>(entries.size());
+		for (Map.Entry<RenderKey, Entry> e : entries.entrySet())
+		{
+			candidates.add(new Candidate(e.getKey(), e.getValue()));
+		}
+		Collections.sort(candidates, new Comparator<Candidate>()
+		{
+			@Override
+			public int compare(Candidate c1, Candidate c2)
+			{
+				return Long.compare(c1.lastAccess, c2.lastAccess);
+			}
+		});
+		evictionQueue.clear();
+		evictionQueue.addAll(candidates);
+	}
+
+	private boolean remove(RenderKey key, Entry entry)
+	{
+		if (entries.remove(key, entry))
+		{
+			weight.addAndGet(-entry.weight);
+			return true;
+		}
+		return false;
+	}
+
+	private static final class Candidate
+	{
+		private final RenderKey key;
+		private final Entry entry;
+		private final long lastAccess;
+
+		Candidate(RenderKey key, Entry entry)
+		{
+			this.key = key;
+			this.entry = entry;
+			this.lastAccess = entry.lastAccess;
+		}
+	}
+
+	/**
+	 * Estimates the memory used by an entry holding the given output.
+	 */
+	static int weigh(String output)
+	{
+		return ENTRY_OVERHEAD + 2 * output.length();
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+	/** Estimated memory used by the cached outputs, in bytes. */
+	public long getWeight()
+	{
+		return weight.get();
+	}
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+	public long getHitCount()
+	{
+		return hitCount.sum();
+	}
+	public long getMissCount()
+	{
+		return missCount.sum();
+	}
+	public long getEvictionCount()
+	{
+		return evictionCount.sum();
+	}
+	/** Number of misses which waited for the rendering made by another thread. */
+	public long getCoalescedCount()
+	{
+		return renderings.getCoalescedCount();
+	}
+	/** Number of new outputs not admitted, being less popular than the entries they would evict. */
+	public long getRejectionCount()
+	{
+		return rejectionCount.sum();
+	}
+	/** Ratio of hits over all the requests, zero if there was none. */
+	public double getHitRate()
+	{
+		long hits = hitCount.sum();
+		long requests = hits + missCount.sum();
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "RenderCache[size=" + size() + ", weight=" + getWeight() + "/" + maxWeight +
+				", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() +
+				", rejections=" + getRejectionCount() + "]";
+	}
+}
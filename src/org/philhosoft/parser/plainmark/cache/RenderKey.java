@@ -0,0 +1,107 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies a rendering: a hash of the source text, and the fingerprint of the configuration used to render it.
+ * <p>
+ * The hash of the content is the first 128 bits of its SHA-256: collisions cannot be crafted by the authors of the texts
+ * to get the rendering of another text.
+ */
+public final class RenderKey
+{
+	private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>()
+	{
+		@Override
+		protected MessageDigest initialValue()
+		{
+			try
+			{
+				return MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException e)
+			{
+				throw new IllegalStateException("SHA-256 is mandatory in any JVM", e);
+			}
+		}
+	};
+
+	private final long contentHigh;
+	private final long contentLow;
+	private final long configuration;
+
+	public RenderKey(long contentHigh, long contentLow, long configuration)
+	{
+		this.contentHigh = contentHigh;
+		this.contentLow = contentLow;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Makes the key of the given text, rendered with the given configuration.
+	 *
+	 * @param configuration  fingerprint of the configuration, eg. from PlainMarkEngine.getFingerprint()
+	 */
+	public static RenderKey of(long configuration, String markupText)
+	{
+		byte[] digest = DIGESTS.get().digest(markupText.getBytes(StandardCharsets.UTF_8));
+		return new RenderKey(toLong(digest, 0), toLong(digest, 8), configuration);
+	}
+
+	private static long toLong(byte[] bytes, int offset)
+	{
+		long value = 0;
+		for (int i = offset; i < offset + 8; i++)
+		{
+			value = value << 8 | bytes[i] & 0xFF;
+		}
+		return value;
+	}
+
+	public long getContentHigh()
+	{
+		return contentHigh;
+	}
+	public long getContentLow()
+	{
+		return contentLow;
+	}
+	public long getConfiguration()
+	{
+		return configuration;
+	}
+
+	/**
+	 * 64 bits hash of the key, for frequency sketches.
+	 */
+	long hash64()
+	{
+		return contentLow ^ Long.rotateLeft(configuration, 31);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// Bits of a cryptographic hash are already well distributed
+		return (int) (contentLow ^ contentLow >>> 32 ^ configuration);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof RenderKey))
+			return false;
+		RenderKey other = (RenderKey) obj;
+		return contentHigh == other.contentHigh && contentLow == other.contentLow && configuration == other.configuration;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("RenderKey[%016x%016x, configuration=%016x]", contentHigh, contentLow, configuration);
+	}
+}
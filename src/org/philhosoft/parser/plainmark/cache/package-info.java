@@ -0,0 +1,5 @@
+/**
+ * Caches of rendered outputs, on server side, addressed by the content of the source text
+ * and the configuration of the engine rendering it.
+ */
+package org.philhosoft.parser.plainmark.cache;
@@ -0,0 +1,156 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+/**
+ * Converts texts asynchronously with a shared engine, for async pipelines (eg. chaining a conversion after a fetch).
+ * <p>
+ * By default, each conversion runs in its own virtual thread (Java 21+), found by reflection to remain buildable
+ * with older JDKs. Without virtual threads, a pool of daemon threads, one per processor, is used.
+ * Any other executor can be given.
+ * <p>
+ * The conversion path (engine, parsers, visitors, contexts) takes no lock and has no synchronized block,
+ * so a virtual thread never pins its carrier thread while converting.
+ */
+public class AsyncConverter
+{
+	private final PlainMarkEngine engine;
+	private final Executor executor;
+
+	/**
+	 * Created on first use, never shut down: a single executor is enough for all the converters.
+	 */
+	private static class DefaultExecutorHolder
+	{
+		private static final ExecutorService VIRTUAL_THREAD_EXECUTOR = createVirtualThreadExecutor();
+		private static final ExecutorService EXECUTOR = VIRTUAL_THREAD_EXECUTOR != null ? VIRTUAL_THREAD_EXECUTOR :
+				Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+				{
+					private final AtomicInteger threadNb = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "plainmark-async-" + threadNb.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Uses the default executor.
+	 *
+	 * @see #getDefaultExecutor()
+	 */
+	public AsyncConverter(PlainMarkEngine engine)
+	{
+		this(engine, getDefaultExecutor());
+	}
+	/**
+	 * @param executor  the executor running the conversions. Not shut down by this class.
+	 */
+	public AsyncConverter(PlainMarkEngine engine, Executor executor)
+	{
+		if (engine == null || executor == null)
+			throw new IllegalArgumentException("An engine and an executor are needed");
+		this.engine = engine;
+		this.executor = executor;
+	}
+
+	/**
+	 * Converts the given text with the engine, in the executor.
+	 *
+	 * @return a future completed with the converted text, or exceptionally with the exception thrown by the conversion
+	 */
+	public CompletableFuture<String> convertAsync(final String markupText)
+	{
+		return CompletableFuture.supplyAsync(new Supplier<String>()
+		{
+			@Override
+			public String get()
+			{
+				return engine.convert(markupText);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Converts only the start of the given text, up to the given number of visible characters, in the executor.
+	 *
+	 * @see PlainMarkEngine#convert(String, int)
+	 */
+	public CompletableFuture<String> convertAsync(final String markupText, final int maxTextLength)
+	{
+		return CompletableFuture.supplyAsync(new Supplier<String>()
+		{
+			@Override
+			public String get()
+			{
+				return engine.convert(markupText, maxTextLength);
+			}
+		}, executor);
+	}
+
+	public PlainMarkEngine getEngine()
+	{
+		return engine;
+	}
+
+	public Executor getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * Returns the executor used by default: a virtual thread per task executor if the JVM supports it,
+	 * otherwise a pool of daemon threads, one per processor.
+	 * <p>
+	 * The common fork-join pool is not used: it is much slower to accept tasks submitted from outside of it.
+	 */
+	public static Executor getDefaultExecutor()
+	{
+		return DefaultExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * True if the default executor runs the conversions in virtual threads.
+	 */
+	public static boolean hasVirtualThreads()
+	{
+		return DefaultExecutorHolder.VIRTUAL_THREAD_EXECUTOR != null;
+	}
+
+	/**
+	 * Creates a new virtual thread per task executor, or returns null if the JVM doesn't support virtual threads.
+	 * The caller is responsible for shutting it down.
+	 */
+	public static ExecutorService createVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (NoSuchMethodException e)
+		{
+			return null; // Before Java 21
+		}
+		catch (IllegalAccessException e)
+		{
+			return null;
+		}
+		catch (InvocationTargetException e)
+		{
+			return null; // Preview feature not enabled (Java 19, 20)
+		}
+	}
+}
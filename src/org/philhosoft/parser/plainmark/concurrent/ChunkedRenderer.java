@@ -0,0 +1,137 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.MarkupVisitor;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+import org.philhosoft.formattedtext.format.ContextWithStringBuilder;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.plainmark.BlockParser;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+/**
+ * Renders a text in chunks, one per top-level block, parsing each block only when its chunk is requested.
+ * The concatenation of the chunks is the rendering of the whole text.
+ * <p>
+ * The parser is one block ahead of the rendering, as the visitors need to know if a block is the last one:
+ * at most two blocks are in memory at once.
+ * <p>
+ * Only the visitors rendering the blocks of the document with VisitorHelper (eg. HTMLVisitor, PlainTextVisitor)
+ * can render them separately. Other visitors (eg. JSONVisitor) get the whole rendering in a single chunk.
+ * <p>
+ * Not thread-safe.
+ */
+public class ChunkedRenderer
+{
+	private final PlainMarkEngine engine;
+	private final String markupText;
+	private final MarkupVisitor<VisitorContext> visitor;
+	private final TypedBlock document = new TypedBlock(BlockType.DOCUMENT);
+	private final ContextWithStringBuilder context = new ContextWithStringBuilder();
+	private BlockParser parser;
+	private String prefix;
+	private String suffix;
+	private Block next;
+	private boolean first = true;
+	private boolean done;
+
+	/**
+	 * Finds the markup put by the visitor around the blocks of a document.
+	 */
+	private static class SplittingContext extends ContextWithStringBuilder
+	{
+		private final Block document;
+		private int documentDepth = -1;
+		private String prefix;
+		private int suffixStart = -1;
+
+		public SplittingContext(Block document)
+		{
+			this.document = document;
+		}
+
+		@Override
+		public void push(Block parentBlock, boolean first, boolean last)
+		{
+			if (parentBlock == document && prefix == null)
+			{
+				prefix = asString();
+				documentDepth = firstLastList.size();
+			}
+			super.push(parentBlock, first, last);
+		}
+
+		@Override
+		public void pop()
+		{
+			super.pop();
+			if (firstLastList.size() == documentDepth && suffixStart < 0)
+			{
+				suffixStart = asString().length();
+			}
+		}
+	}
+
+	public ChunkedRenderer(PlainMarkEngine engine, String markupText)
+	{
+		this.engine = engine;
+		this.markupText = markupText;
+		this.visitor = engine.getVisitor();
+
+		SplittingContext splitter = new SplittingContext(document);
+		document.accept(visitor, splitter);
+		if (splitter.suffixStart >= 0)
+		{
+			prefix = splitter.prefix;
+			suffix = splitter.asString().substring(splitter.suffixStart);
+			parser = engine.startParsing(markupText);
+		}
+	}
+
+	/**
+	 * Parses and renders the next top-level block.
+	 *
+	 * @return the rendering of the block, with the start of the document for the first one and its end for the last one;
+	 *         or null when all the text has been rendered
+	 */
+	public String nextChunk()
+	{
+		if (done)
+			return null;
+		if (parser == null)
+		{
+			done = true;
+			return engine.convert(markupText);
+		}
+
+		Block current = first ? parser.nextBlock() : next;
+		context.clear();
+		if (first)
+		{
+			context.append(prefix);
+		}
+		if (current != null)
+		{
+			next = parser.nextBlock();
+			context.push(document, first, next == null);
+			current.accept(visitor, context);
+			context.pop();
+		}
+		if (current == null || next == null)
+		{
+			context.append(suffix);
+			done = true;
+			parser = null;
+		}
+		first = false;
+		return context.asString();
+	}
+
+	/**
+	 * True if the text is rendered block by block, false if it is rendered in a single chunk.
+	 */
+	public boolean isIncremental()
+	{
+		return prefix != null;
+	}
+}
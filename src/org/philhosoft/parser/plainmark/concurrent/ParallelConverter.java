@@ -0,0 +1,166 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.philhosoft.formattedtext.format.ContextWithStringBuilder;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+/**
+ * Converts batches of texts (eg. all the comments of a thread) in parallel, with a shared engine.
+ * <p>
+ * The batch is split in contiguous slices, a few per thread to balance the load, each converted by a task
+ * of the given executor. Each task reuses its rendering buffer for all the texts of its slice.
+ * The conversions are reported to the monitor of the engine, if any, like single ones.
+ * The results are in the order of the given texts.
+ * <p>
+ * Any executor can be used: by default, the common fork-join pool; on Java 21+, a virtual thread per task executor
+ * can be given too.
+ */
+public class ParallelConverter
+{
+	private static final int TASKS_PER_THREAD = 4;
+
+	private final PlainMarkEngine engine;
+	private final ExecutorService executor;
+	private final int parallelism;
+
+	/**
+	 * Uses the common fork-join pool.
+	 */
+	public ParallelConverter(PlainMarkEngine engine)
+	{
+		this(engine, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+	}
+	/**
+	 * @param executor  the executor running the conversions. Not shut down by this class.
+	 * @param parallelism  the number of threads expected to run the conversions, to decide how to split the batches
+	 */
+	public ParallelConverter(PlainMarkEngine engine, ExecutorService executor, int parallelism)
+	{
+		this.engine = engine;
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Converts all the given texts with the engine.
+	 *
+	 * @return the converted texts, in the same order. The list is unmodifiable.
+	 * @throws RuntimeException  the first exception thrown by a conversion, if any
+	 */
+	public List<String> convertAll(List<? extends CharSequence> markupTexts)
+	{
+		int size = markupTexts.size();
+		String[] results = new String[size];
+		int taskNb = Math.min(size, parallelism * TASKS_PER_THREAD);
+		if (taskNb <= 1 || parallelism == 1)
+		{
+			// Not worth the hand-off
+			convertSlice(markupTexts, results, 0, size);
+			return Collections.unmodifiableList(Arrays.asList(results));
+		}
+
+		List<Future<?>> futures = new ArrayList<Future<?>>(taskNb);
+		for (int t = 0; t < taskNb; t++)
+		{
+			final int start = (int) ((long) size * t / taskNb);
+			final int end = (int) ((long) size * (t + 1) / taskNb);
+			futures.add(executor.submit(new SliceConversion(markupTexts, results, start, end)));
+		}
+		waitFor(futures);
+
+		return Collections.unmodifiableList(Arrays.asList(results));
+	}
+
+	/**
+	 * Converts all the texts of the given stream with the engine.
+	 *
+	 * @see #convertAll(List)
+	 */
+	public List<String> convertAll(Stream<? extends CharSequence> markupTexts)
+	{
+		List<CharSequence> texts = new ArrayList<CharSequence>();
+		Iterator<? extends CharSequence> iterator = markupTexts.iterator();
+		while (iterator.hasNext())
+		{
+			texts.add(iterator.next());
+		}
+		return convertAll(texts);
+	}
+
+	private void convertSlice(List<? extends CharSequence> markupTexts, String[] results, int start, int end)
+	{
+		ContextWithStringBuilder context = new ContextWithStringBuilder();
+		for (int i = start; i < end; i++)
+		{
+			results[i] = engine.convert(markupTexts.get(i).toString(), context);
+			context.clear();
+		}
+	}
+
+	private static void waitFor(List<Future<?>> futures)
+	{
+		try
+		{
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while converting", e);
+		}
+		catch (ExecutionException e)
+		{
+			cancel(futures);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private static void cancel(List<Future<?>> futures)
+	{
+		for (Future<?> future : futures)
+		{
+			future.cancel(false);
+		}
+	}
+
+	private class SliceConversion implements Runnable
+	{
+		private final List<? extends CharSequence> markupTexts;
+		private final String[] results;
+		private final int start;
+		private final int end;
+
+		public SliceConversion(List<? extends CharSequence> markupTexts, String[] results, int start, int end)
+		{
+			this.markupTexts = markupTexts;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run()
+		{
+			convertSlice(markupTexts, results, start, end);
+		}
+	}
+}
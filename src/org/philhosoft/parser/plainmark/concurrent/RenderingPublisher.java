@@ -0,0 +1,181 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+/**
+ * Publishes the rendering of a text as UTF-8 chunks, one per top-level block (see {@link ChunkedRenderer}),
+ * eg. to start sending a long document over HTTP before it is fully rendered.
+ * <p>
+ * Each block is parsed and rendered only when the subscriber requests a chunk: if it stops requesting,
+ * the parsing pauses, and at most two blocks are kept in memory.
+ * <p>
+ * Each subscriber gets its own rendering, from the start of the text. The chunks are produced and signalled
+ * in the given executor, one subscriber at a time never receiving concurrent signals.
+ */
+public class RenderingPublisher implements Flow.Publisher<ByteBuffer>
+{
+	private final PlainMarkEngine engine;
+	private final String markupText;
+	private final Executor executor;
+
+	/**
+	 * Uses the default executor of AsyncConverter.
+	 */
+	public RenderingPublisher(PlainMarkEngine engine, String markupText)
+	{
+		this(engine, markupText, AsyncConverter.getDefaultExecutor());
+	}
+	/**
+	 * @param executor  the executor rendering the chunks. Not shut down by this class.
+	 */
+	public RenderingPublisher(PlainMarkEngine engine, String markupText, Executor executor)
+	{
+		if (engine == null || markupText == null || executor == null)
+			throw new IllegalArgumentException("An engine, a text and an executor are needed");
+		this.engine = engine;
+		this.markupText = markupText;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber)
+	{
+		if (subscriber == null)
+			throw new NullPointerException("No subscriber");
+		subscriber.onSubscribe(new ChunkSubscription(subscriber));
+	}
+
+	/**
+	 * Renders the chunks while there is demand. A single drain loop runs at once: requests made meanwhile
+	 * (eg. from onNext) are handled by the running loop.
+	 */
+	private class ChunkSubscription implements Flow.Subscription, Runnable
+	{
+		private final Flow.Subscriber<? super ByteBuffer> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger pendingDrains = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile IllegalArgumentException invalidRequest;
+		/** Only used in the drain loop. */
+		private ChunkedRenderer renderer;
+		private boolean done;
+
+		public ChunkSubscription(Flow.Subscriber<? super ByteBuffer> subscriber)
+		{
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n)
+		{
+			if (n <= 0)
+			{
+				invalidRequest = new IllegalArgumentException("Non-positive request: " + n);
+			}
+			else
+			{
+				long current;
+				do
+				{
+					current = demand.get();
+				} while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+			}
+			scheduleDrain();
+		}
+
+		@Override
+		public void cancel()
+		{
+			cancelled = true;
+		}
+
+		private void scheduleDrain()
+		{
+			if (pendingDrains.getAndIncrement() != 0)
+				return; // The running loop will see the new demand
+			try
+			{
+				executor.execute(this);
+			}
+			catch (RejectedExecutionException e)
+			{
+				cancelled = true;
+				subscriber.onError(e);
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			int missed = 1;
+			do
+			{
+				drain();
+				missed = pendingDrains.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain()
+		{
+			while (!cancelled && !done)
+			{
+				if (invalidRequest != null)
+				{
+					finish();
+					subscriber.onError(invalidRequest);
+					return;
+				}
+				if (demand.get() == 0)
+					return;
+
+				String chunk;
+				try
+				{
+					if (renderer == null)
+					{
+						renderer = new ChunkedRenderer(engine, markupText);
+					}
+					chunk = renderer.nextChunk();
+				}
+				catch (RuntimeException e)
+				{
+					finish();
+					subscriber.onError(e);
+					return;
+				}
+				if (chunk == null)
+				{
+					finish();
+					subscriber.onComplete();
+					return;
+				}
+				if (chunk.isEmpty())
+					continue;
+
+				if (demand.get() != Long.MAX_VALUE)
+				{
+					demand.decrementAndGet();
+				}
+				subscriber.onNext(ByteBuffer.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+			}
+			if (cancelled)
+			{
+				renderer = null;
+			}
+		}
+
+		private void finish()
+		{
+			done = true;
+			renderer = null;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent computations of the same key: while one is running, the other callers with the same key
+ * wait for its result instead of computing it again (eg. hundreds of requests rendering a popular text just edited).
+ * <p>
+ * The first caller computes the value in its own thread. The others wait on a future, without holding any lock or monitor,
+ * so virtual threads are unmounted while waiting.
+ * If the computation fails, its exception is thrown to all the callers.
+ * <p>
+ * Only in-flight computations are shared: once done, the next call with the same key computes it again
+ * (see RenderCache to keep the results).
+ *
+ * @param <K> the type of the keys, with proper equals and hashCode
+ * @param <V> the type of the computed values
+ */
+public class SingleFlight<K, V>
+{
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+	private final LongAdder coalescedCount = new LongAdder();
+
+	/**
+	 * Runs the given computation, or waits for the one already running for this key.
+	 *
+	 * @return the computed value
+	 * @throws RuntimeException  the exception thrown by the computation, wrapped in an IllegalStateException if checked
+	 */
+	public V execute(K key, Callable<V> computation)
+	{
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+		if (running != null)
+		{
+			coalescedCount.increment();
+			return await(running);
+		}
+
+		try
+		{
+			V value = computation.call();
+			future.complete(value);
+			return value;
+		}
+		catch (RuntimeException | Error e)
+		{
+			future.completeExceptionally(e);
+			throw e;
+		}
+		catch (Exception e)
+		{
+			IllegalStateException wrapped = new IllegalStateException(e);
+			future.completeExceptionally(wrapped);
+			throw wrapped;
+		}
+		finally
+		{
+			inFlight.remove(key, future);
+		}
+	}
+
+	private V await(CompletableFuture<V> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a computation", e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/** Number of computations currently running. */
+	public int getInFlightCount()
+	{
+		return inFlight.size();
+	}
+	/** Number of calls which waited for the computation of another one, instead of computing the value. */
+	public long getCoalescedCount()
+	{
+		return coalescedCount.sum();
+	}
+}
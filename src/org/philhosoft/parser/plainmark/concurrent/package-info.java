@@ -0,0 +1,6 @@
+/**
+ * Concurrent use of the PlainMark engine, on server side.
+ * <p>
+ * Kept apart of the parser, which must remain compatible with GWT, thus without java.util.concurrent.
+ */
+package org.philhosoft.parser.plainmark.concurrent;
@@ -0,0 +1,555 @@
+package org.philhosoft.parser.plainmark.generator;
+
+import java.util.Random;
+
+import org.philhosoft.parser.plainmark.ParsingParameters;
+
+/**
+ * Generates PlainMark documents, eg. for benchmarks or fuzz tests, with tunable distributions of the markup.
+ * <p>
+ * The documents are random, but reproducible: a generator built with the same settings and seed generates the same
+ * sequence of documents. Configured with a {@link Builder}, eg.:
+ * <pre>
+ * DocumentGenerator generator = new DocumentGenerator.Builder()
+ *     .setSeed(42)
+ *     .setBlockWeights(6, 2, 1, 1)
+ *     .setDecorationDensity(0.2)
+ *     .build();
+ * String document = generator.generate(10000);
+ * </pre>
+ * Besides the usual documents, it can generate adversarial ones ({@link Shape}), made to stress specific paths of the parsers.
+ * <p>
+ * Not thread-safe: use a generator per thread.
+ */
+public class DocumentGenerator
+{
+	private static final char[] DECORATION_SIGNS =
+	{
+		ParsingParameters.STRONG_SIGN, ParsingParameters.EMPHASIS_SIGN, ParsingParameters.DELETE_SIGN,
+		ParsingParameters.CODE_FRAGMENT_SIGN,
+	};
+	/** Escape sign of the default parameters. */
+	private static final char ESCAPE_SIGN = '~';
+	private static final String ESCAPABLE_SIGNS = "*_-`[]()~";
+	private static final String[] BULLETS = { "-", "*", "+" };
+	private static final String[] TITLES = { "#", "##", "###" };
+	private static final String[] URL_PREFIXES = { "http://", "https://", "ftp://" };
+	private static final String LETTERS = "etaoinshrdlucmfwypvbgkjqxz";
+	private static final String URL_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789-._~/?#=&%+";
+	private static final String CODE_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789 *_-`[](){}=;<>&\"'";
+	private static final String[] NON_ASCII =
+	{
+		"é", "è", "à", "ç", "ü", "ö", "ß", "ñ", "ø", "œ", // Latin
+		"д", "ж", "щ", "λ", "Ω", // Cyrillic, Greek
+		"中", "文", "日", "本", "語", // CJK
+		"😀", "👍", // Emoji, out of the BMP (surrogate pairs)
+	};
+
+	/**
+	 * Shapes of adversarial documents.
+	 */
+	public enum Shape
+	{
+		/** Lines of deeply nested decorations, correctly closed. */
+		DEEP_NESTING,
+		/** Lines full of opening signs never closed. */
+		UNTERMINATED_NESTING,
+		/** Random sequences of brackets, parentheses and URL prefixes, mostly unbalanced. */
+		BRACKET_STORM,
+		/** Escape signs before signs, letters, other escapes, and at ends of lines. */
+		ESCAPE_STORM,
+		/** Bare URLs and links of thousands of characters. */
+		LONG_URLS,
+		/** Lines made only of block signs, with or without text, and code block signs. */
+		BLOCK_SIGN_STORM;
+	}
+
+	/**
+	 * Builder of generators. Each setting has a default giving documents similar to comments of a forum.
+	 */
+	public static class Builder
+	{
+		private long seed = 0;
+		private int minLineLength = 20;
+		private int maxLineLength = 120;
+		private int minBlockLines = 1;
+		private int maxBlockLines = 5;
+		private int[] blockWeights = { 6, 2, 1, 1 };
+		private double decorationDensity = 0.1;
+		private int maxNesting = 2;
+		private double urlFrequency = 0.03;
+		private int minUrlLength = 15;
+		private int maxUrlLength = 80;
+		private double escapeFrequency = 0.01;
+		private boolean crlf;
+		private double nonAsciiShare = 0.02;
+
+		public Builder setSeed(long seed)
+		{
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * Sets the range of lengths of the lines of text, in characters (approximately, as the words are not cut).
+		 */
+		public Builder setLineLength(int min, int max)
+		{
+			checkRange(min, max);
+			minLineLength = min;
+			maxLineLength = max;
+			return this;
+		}
+
+		/**
+		 * Sets the range of the number of lines of paragraphs, lists and code blocks.
+		 */
+		public Builder setBlockLines(int min, int max)
+		{
+			checkRange(Math.max(1, min), max);
+			minBlockLines = Math.max(1, min);
+			maxBlockLines = max;
+			return this;
+		}
+
+		/**
+		 * Sets the relative frequencies of the blocks. Eg. (1, 1, 0, 0) gives as many paragraphs as lists, and nothing else.
+		 */
+		public Builder setBlockWeights(int paragraphs, int lists, int titles, int codeBlocks)
+		{
+			if (paragraphs < 0 || lists < 0 || titles < 0 || codeBlocks < 0 || paragraphs + lists + titles + codeBlocks == 0)
+				throw new IllegalArgumentException("Block weights must be positive, and not all zero");
+			blockWeights = new int[] { paragraphs, lists, titles, codeBlocks };
+			return this;
+		}
+
+		/**
+		 * Sets the probability for a word to start a decorated fragment (bold, italic...), and the maximal nesting of the
+		 * decorations.
+		 */
+		public Builder setDecorations(double density, int maxNesting)
+		{
+			checkProbability(density);
+			if (maxNesting < 0)
+				throw new IllegalArgumentException("Negative nesting: " + maxNesting);
+			this.decorationDensity = density;
+			this.maxNesting = maxNesting;
+			return this;
+		}
+
+		/**
+		 * Sets the probability for a word to start a decorated fragment, keeping the maximal nesting.
+		 */
+		public Builder setDecorationDensity(double density)
+		{
+			return setDecorations(density, maxNesting);
+		}
+
+		/**
+		 * Sets the probability for a word to be a URL (half of them being explicit links), and the range of their lengths.
+		 */
+		public Builder setUrls(double frequency, int minLength, int maxLength)
+		{
+			checkProbability(frequency);
+			checkRange(minLength, maxLength);
+			this.urlFrequency = frequency;
+			this.minUrlLength = minLength;
+			this.maxUrlLength = maxLength;
+			return this;
+		}
+
+		/**
+		 * Sets the probability for a word to hold an escaped sign.
+		 */
+		public Builder setEscapeFrequency(double frequency)
+		{
+			checkProbability(frequency);
+			this.escapeFrequency = frequency;
+			return this;
+		}
+
+		/**
+		 * Sets if the lines end with Windows line breaks (CR+LF) instead of newlines.
+		 */
+		public Builder setCrlf(boolean crlf)
+		{
+			this.crlf = crlf;
+			return this;
+		}
+
+		/**
+		 * Sets the probability for a letter to be a non-ASCII character (accented, CJK, emoji...).
+		 */
+		public Builder setNonAsciiShare(double share)
+		{
+			checkProbability(share);
+			this.nonAsciiShare = share;
+			return this;
+		}
+
+		public DocumentGenerator build()
+		{
+			return new DocumentGenerator(this);
+		}
+
+		private static void checkRange(int min, int max)
+		{
+			if (min < 0 || max < min)
+				throw new IllegalArgumentException("Invalid range: " + min + " to " + max);
+		}
+
+		private static void checkProbability(double p)
+		{
+			if (p < 0 || p > 1)
+				throw new IllegalArgumentException("Probability out of [0, 1]: " + p);
+		}
+	}
+
+	private final Random random;
+	private final int minLineLength;
+	private final int maxLineLength;
+	private final int minBlockLines;
+	private final int maxBlockLines;
+	private final int[] blockWeights;
+	private final int totalBlockWeight;
+	private final double decorationDensity;
+	private final int maxNesting;
+	private final double urlFrequency;
+	private final int minUrlLength;
+	private final int maxUrlLength;
+	private final double escapeFrequency;
+	private final String newline;
+	private final double nonAsciiShare;
+
+	private DocumentGenerator(Builder builder)
+	{
+		random = new Random(builder.seed);
+		minLineLength = builder.minLineLength;
+		maxLineLength = builder.maxLineLength;
+		minBlockLines = builder.minBlockLines;
+		maxBlockLines = builder.maxBlockLines;
+		blockWeights = builder.blockWeights.clone();
+		int total = 0;
+		for (int weight : blockWeights)
+		{
+			total += weight;
+		}
+		totalBlockWeight = total;
+		decorationDensity = builder.decorationDensity;
+		maxNesting = builder.maxNesting;
+		urlFrequency = builder.urlFrequency;
+		minUrlLength = builder.minUrlLength;
+		maxUrlLength = builder.maxUrlLength;
+		escapeFrequency = builder.escapeFrequency;
+		newline = builder.crlf ? "\r\n" : "\n";
+		nonAsciiShare = builder.nonAsciiShare;
+	}
+
+	/**
+	 * Generates a document of about the given length (a bit more, as the last block is completed).
+	 */
+	public String generate(int length)
+	{
+		StringBuilder sb = new StringBuilder(length + maxLineLength * maxBlockLines);
+		while (sb.length() < length)
+		{
+			appendBlock(sb);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates an adversarial document of the given shape, of about the given length.
+	 */
+	public String generate(Shape shape, int length)
+	{
+		StringBuilder sb = new StringBuilder(length + 100);
+		while (sb.length() < length)
+		{
+			switch (shape)
+			{
+			case DEEP_NESTING:
+				appendDeepNesting(sb, 10 + random.nextInt(200));
+				break;
+			case UNTERMINATED_NESTING:
+				appendUnterminatedNesting(sb, 10 + random.nextInt(500));
+				break;
+			case BRACKET_STORM:
+				appendBracketStorm(sb, 50 + random.nextInt(1000));
+				break;
+			case ESCAPE_STORM:
+				appendEscapeStorm(sb, 50 + random.nextInt(500));
+				break;
+			case LONG_URLS:
+				appendLongUrl(sb, 1000 + random.nextInt(5000));
+				break;
+			case BLOCK_SIGN_STORM:
+				appendBlockSignStorm(sb, 10 + random.nextInt(200));
+				break;
+			}
+			sb.append(newline);
+		}
+		return sb.toString();
+	}
+
+	private void appendBlock(StringBuilder sb)
+	{
+		int pick = random.nextInt(totalBlockWeight);
+		int lineCount = between(minBlockLines, maxBlockLines);
+		if (pick < blockWeights[0])
+		{
+			for (int i = 0; i < lineCount; i++)
+			{
+				appendLine(sb);
+				sb.append(newline);
+			}
+		}
+		else if ((pick -= blockWeights[0]) < blockWeights[1])
+		{
+			boolean ordered = random.nextInt(3) == 0;
+			String bullet = BULLETS[random.nextInt(BULLETS.length)];
+			for (int i = 0; i < lineCount; i++)
+			{
+				sb.append(ordered ? (i + 1) + "." : bullet).append(' ');
+				appendLine(sb);
+				sb.append(newline);
+			}
+		}
+		else if ((pick -= blockWeights[1]) < blockWeights[2])
+		{
+			sb.append(TITLES[random.nextInt(TITLES.length)]).append(' ');
+			appendLine(sb);
+			sb.append(newline);
+		}
+		else
+		{
+			sb.append("```").append(newline);
+			for (int i = 0; i < lineCount; i++)
+			{
+				appendCodeLine(sb);
+				sb.append(newline);
+			}
+			sb.append("```").append(newline);
+		}
+		// Empty line between blocks
+		sb.append(newline);
+	}
+
+	/**
+	 * Appends a line of words, with decorations correctly nested and closed, URLs, links and escapes.
+	 */
+	private void appendLine(StringBuilder sb)
+	{
+		int end = sb.length() + between(minLineLength, maxLineLength);
+		char[] open = new char[maxNesting];
+		int depth = 0;
+		boolean first = true;
+		while (sb.length() < end || first)
+		{
+			if (!first)
+			{
+				sb.append(' ');
+			}
+			first = false;
+			if (random.nextDouble() < urlFrequency)
+			{
+				appendUrlOrLink(sb);
+				continue;
+			}
+			while (depth < maxNesting && random.nextDouble() < decorationDensity)
+			{
+				char sign = DECORATION_SIGNS[random.nextInt(DECORATION_SIGNS.length)];
+				if (depth > 0 && open[depth - 1] == ParsingParameters.CODE_FRAGMENT_SIGN)
+					break; // No markup inside code fragments
+				sb.append(sign);
+				open[depth++] = sign;
+			}
+			appendWord(sb);
+			while (depth > 0 && random.nextInt(3) == 0)
+			{
+				sb.append(open[--depth]);
+			}
+		}
+		while (depth > 0)
+		{
+			sb.append(open[--depth]);
+		}
+	}
+
+	private void appendWord(StringBuilder sb)
+	{
+		int length = 1 + random.nextInt(10);
+		int escapeAt = random.nextDouble() < escapeFrequency ? random.nextInt(length + 1) : -1;
+		for (int i = 0; i < length; i++)
+		{
+			if (i == escapeAt)
+			{
+				sb.append(ESCAPE_SIGN).append(ESCAPABLE_SIGNS.charAt(random.nextInt(ESCAPABLE_SIGNS.length())));
+			}
+			appendLetter(sb);
+		}
+		if (escapeAt == length)
+		{
+			sb.append(ESCAPE_SIGN).append(ESCAPABLE_SIGNS.charAt(random.nextInt(ESCAPABLE_SIGNS.length())));
+		}
+	}
+
+	private void appendLetter(StringBuilder sb)
+	{
+		if (nonAsciiShare > 0 && random.nextDouble() < nonAsciiShare)
+		{
+			sb.append(NON_ASCII[random.nextInt(NON_ASCII.length)]);
+		}
+		else
+		{
+			sb.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+		}
+	}
+
+	private void appendUrlOrLink(StringBuilder sb)
+	{
+		if (random.nextBoolean())
+		{
+			appendUrl(sb, between(minUrlLength, maxUrlLength));
+			return;
+		}
+		sb.append(ParsingParameters.LINK_START_SIGN);
+		int words = 1 + random.nextInt(4);
+		for (int i = 0; i < words; i++)
+		{
+			if (i > 0)
+			{
+				sb.append(' ');
+			}
+			appendWord(sb);
+		}
+		sb.append(ParsingParameters.LINK_END_SIGN).append(ParsingParameters.URL_START_SIGN);
+		appendUrl(sb, between(minUrlLength, maxUrlLength));
+		sb.append(ParsingParameters.URL_END_SIGN);
+	}
+
+	private void appendUrl(StringBuilder sb, int length)
+	{
+		String prefix = URL_PREFIXES[random.nextInt(URL_PREFIXES.length)];
+		sb.append(prefix).append("example.com/");
+		for (int i = prefix.length() + 12; i < length; i++)
+		{
+			sb.append(URL_CHARS.charAt(random.nextInt(URL_CHARS.length())));
+		}
+	}
+
+	private void appendCodeLine(StringBuilder sb)
+	{
+		int indentation = random.nextInt(4);
+		for (int i = 0; i < indentation; i++)
+		{
+			sb.append('\t');
+		}
+		int length = between(minLineLength, maxLineLength);
+		for (int i = 0; i < length; i++)
+		{
+			sb.append(CODE_CHARS.charAt(random.nextInt(CODE_CHARS.length())));
+		}
+	}
+
+	private void appendDeepNesting(StringBuilder sb, int depth)
+	{
+		char[] open = new char[depth];
+		for (int i = 0; i < depth; i++)
+		{
+			// Code signs would stop the nesting
+			open[i] = DECORATION_SIGNS[random.nextInt(DECORATION_SIGNS.length - 1)];
+			sb.append(open[i]);
+		}
+		appendWord(sb);
+		for (int i = depth - 1; i >= 0; i--)
+		{
+			sb.append(open[i]);
+		}
+	}
+
+	private void appendUnterminatedNesting(StringBuilder sb, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			sb.append(DECORATION_SIGNS[random.nextInt(DECORATION_SIGNS.length)]);
+			if (random.nextInt(4) == 0)
+			{
+				sb.append(ParsingParameters.LINK_START_SIGN);
+			}
+			appendWord(sb);
+			sb.append(' ');
+		}
+	}
+
+	private void appendBracketStorm(StringBuilder sb, int count)
+	{
+		String[] pieces = { "[", "]", "(", ")", "](", "[x](", "http://", "https://e.com/", "a", " " };
+		for (int i = 0; i < count; i++)
+		{
+			sb.append(pieces[random.nextInt(pieces.length)]);
+		}
+	}
+
+	private void appendEscapeStorm(StringBuilder sb, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			sb.append(ESCAPE_SIGN);
+			int pick = random.nextInt(4);
+			if (pick == 0)
+			{
+				appendLetter(sb);
+			}
+			else if (pick == 1)
+			{
+				sb.append(ESCAPE_SIGN);
+			}
+			else
+			{
+				sb.append(ESCAPABLE_SIGNS.charAt(random.nextInt(ESCAPABLE_SIGNS.length())));
+			}
+		}
+		// Escape at the end of the line
+		sb.append(ESCAPE_SIGN);
+	}
+
+	private void appendLongUrl(StringBuilder sb, int length)
+	{
+		if (random.nextBoolean())
+		{
+			appendUrl(sb, length);
+		}
+		else
+		{
+			sb.append("[link](");
+			appendUrl(sb, length);
+			sb.append(')');
+		}
+	}
+
+	private void appendBlockSignStorm(StringBuilder sb, int lineCount)
+	{
+		String[] signs = { "#", "##", "###", "-", "*", "+", "1.", "12345.", "```", "~#", "" };
+		for (int i = 0; i < lineCount; i++)
+		{
+			if (i > 0)
+			{
+				sb.append(newline);
+			}
+			for (int s = random.nextInt(3); s >= 0; s--)
+			{
+				sb.append(signs[random.nextInt(signs.length)]).append(random.nextBoolean() ? " " : "\t");
+			}
+			if (random.nextBoolean())
+			{
+				appendWord(sb);
+			}
+		}
+	}
+
+	private int between(int min, int max)
+	{
+		return min + random.nextInt(max - min + 1);
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * Generation of synthetic PlainMark documents, for benchmarks and stress tests.
+ */
+package org.philhosoft.parser.plainmark.generator;
@@ -0,0 +1,62 @@
+package org.philhosoft.parser.plainmark.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Conversion of a text, from the start of its parsing to the end of its rendering.
+ * <p>
+ * Recorded only for conversions longer than 10 ms by default, to spot the slow documents.
+ */
+@Name("org.philhosoft.plainmark.Conversion")
+@Label("PlainMark Conversion")
+@Category("PlainMark")
+@Description("Conversion of a PlainMark text")
+@Threshold("10 ms")
+public class ConversionEvent extends jdk.jfr.Event
+{
+	@Label("Input Length")
+	@Description("Length of the text, in characters")
+	int inputLength;
+
+	@Label("Output Length")
+	@Description("Length of the rendering, in characters")
+	int outputLength;
+
+	@Label("Text Hash")
+	@Description("Hash code of the text, to find the same document in several events")
+	int textHash;
+
+	@Label("Block Count")
+	int blockCount;
+
+	@Label("Line Count")
+	int lineCount;
+
+	@Label("Fragment Count")
+	int fragmentCount;
+
+	@Label("Max Fragment Depth")
+	@Description("Deepest nesting of fragments in a line")
+	int maxFragmentDepth;
+
+	@Label("Engine Fingerprint")
+	@Description("Hash of the parsing parameters and visitor of the engine")
+	long engineFingerprint;
+
+	@Label("Block Parsing")
+	@Timespan(Timespan.NANOSECONDS)
+	long blockParsingTime;
+
+	@Label("Fragment Parsing")
+	@Timespan(Timespan.NANOSECONDS)
+	long fragmentParsingTime;
+
+	@Label("Rendering")
+	@Timespan(Timespan.NANOSECONDS)
+	long renderingTime;
+}
@@ -0,0 +1,101 @@
+package org.philhosoft.parser.plainmark.jfr;
+
+import org.philhosoft.parser.plainmark.ConversionMonitor;
+import org.philhosoft.parser.plainmark.ConversionStats;
+
+/**
+ * Emits JDK Flight Recorder events for the conversions of the engine it monitors.
+ * <p>
+ * The events are committed only when a recording enables them: {@link ConversionEvent} by default for conversions
+ * longer than its threshold, {@link ParsingEvent} and {@link RenderingEvent} when enabled explicitly
+ * (eg. in a .jfc file). Out of a recording, none of them is enabled, and so is this monitor: the engine converts
+ * without measuring anything, the cost is a check of the events at the start of each conversion.
+ * When recording, the counts of the tree are computed only for the events to commit.
+ * <p>
+ * Thread-safe and stateless: the events of a conversion are kept in its stats.
+ */
+public class JFRConversionMonitor implements ConversionMonitor
+{
+	private static final class Events
+	{
+		private final ConversionEvent conversion = new ConversionEvent();
+		private final ParsingEvent parsing = new ParsingEvent();
+		private RenderingEvent rendering;
+	}
+
+	/**
+	 * True while a recording enables one of the events. The probe events are not committed, and their allocation
+	 * is usually eliminated by the JIT.
+	 */
+	@Override
+	public boolean isEnabled()
+	{
+		return new ConversionEvent().isEnabled() || new ParsingEvent().isEnabled() || new RenderingEvent().isEnabled();
+	}
+
+	@Override
+	public void conversionStarted(ConversionStats stats)
+	{
+		Events events = new Events();
+		events.conversion.begin();
+		events.parsing.begin();
+		stats.setAttachment(events);
+	}
+
+	@Override
+	public void parsingDone(ConversionStats stats)
+	{
+		Events events = (Events) stats.getAttachment();
+		ParsingEvent parsing = events.parsing;
+		parsing.end();
+		if (parsing.shouldCommit())
+		{
+			parsing.inputLength = stats.getInputLength();
+			parsing.blockCount = stats.getBlockCount();
+			parsing.lineCount = stats.getLineCount();
+			parsing.maxFragmentDepth = stats.getMaxFragmentDepth();
+			parsing.fragmentParsingTime = stats.getFragmentParsingNanos();
+			parsing.commit();
+		}
+		events.rendering = new RenderingEvent();
+		events.rendering.begin();
+	}
+
+	@Override
+	public void conversionDone(ConversionStats stats)
+	{
+		Events events = (Events) stats.getAttachment();
+		RenderingEvent rendering = events.rendering;
+		rendering.end();
+		if (rendering.shouldCommit())
+		{
+			rendering.outputLength = stats.getOutputLength();
+			rendering.engineFingerprint = stats.getEngineFingerprint();
+			rendering.commit();
+		}
+
+		ConversionEvent conversion = events.conversion;
+		conversion.end();
+		if (conversion.shouldCommit())
+		{
+			conversion.inputLength = stats.getInputLength();
+			conversion.outputLength = stats.getOutputLength();
+			conversion.textHash = stats.getMarkupText().hashCode();
+			conversion.blockCount = stats.getBlockCount();
+			conversion.lineCount = stats.getLineCount();
+			conversion.fragmentCount = stats.getFragmentCount();
+			conversion.maxFragmentDepth = stats.getMaxFragmentDepth();
+			conversion.engineFingerprint = stats.getEngineFingerprint();
+			conversion.blockParsingTime = stats.getBlockParsingNanos();
+			conversion.fragmentParsingTime = stats.getFragmentParsingNanos();
+			conversion.renderingTime = stats.getRenderingNanos();
+			conversion.commit();
+		}
+		stats.setAttachment(null);
+	}
+
+	@Override
+	public void cacheLookup(boolean hit)
+	{
+	}
+}
@@ -0,0 +1,38 @@
+package org.philhosoft.parser.plainmark.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Parsing of a text to a tree of blocks, during a conversion. Disabled by default, as there is one per conversion.
+ */
+@Name("org.philhosoft.plainmark.Parsing")
+@Label("PlainMark Parsing")
+@Category("PlainMark")
+@Description("Parsing of a PlainMark text, blocks and fragments")
+@Enabled(false)
+@StackTrace(false)
+public class ParsingEvent extends jdk.jfr.Event
+{
+	@Label("Input Length")
+	int inputLength;
+
+	@Label("Block Count")
+	int blockCount;
+
+	@Label("Line Count")
+	int lineCount;
+
+	@Label("Max Fragment Depth")
+	int maxFragmentDepth;
+
+	@Label("Fragment Parsing")
+	@Description("Part of the parsing spent in the fragments of the lines")
+	@Timespan(Timespan.NANOSECONDS)
+	long fragmentParsingTime;
+}
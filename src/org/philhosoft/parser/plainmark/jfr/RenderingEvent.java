@@ -0,0 +1,27 @@
+package org.philhosoft.parser.plainmark.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Rendering of a parsed text by the visitor, during a conversion. Disabled by default, as there is one per conversion.
+ */
+@Name("org.philhosoft.plainmark.Rendering")
+@Label("PlainMark Rendering")
+@Category("PlainMark")
+@Description("Rendering of a parsed PlainMark text")
+@Enabled(false)
+@StackTrace(false)
+public class RenderingEvent extends jdk.jfr.Event
+{
+	@Label("Output Length")
+	int outputLength;
+
+	@Label("Engine Fingerprint")
+	@Description("Hash of the parsing parameters and visitor of the engine")
+	long engineFingerprint;
+}
@@ -0,0 +1,7 @@
+/**
+ * JDK Flight Recorder events of the conversions, on server side.
+ * <p>
+ * Install a JFRConversionMonitor on the engine, then record as usual (eg. <code>-XX:StartFlightRecording</code>
+ * or <code>jcmd &lt;pid&gt; JFR.start</code>): the slow conversions appear in the recording, in the PlainMark category.
+ */
+package org.philhosoft.parser.plainmark.jfr;
@@ -0,0 +1,289 @@
+package org.philhosoft.parser.plainmark.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations (or any positive long values), in logarithmic buckets, to get percentiles of latencies
+ * with a bounded memory and a constant recording time, like the HdrHistogram.
+ * <p>
+ * Values below 128 have their own bucket. Above, each power of two is split in 64 buckets, so a value is known
+ * within 1.6 % (eg. within 16 µs for 1 ms), from 1 ns to about 292 years, with 3 776 counters (30 KB).<br>
+ * Percentiles are given as the highest value of their bucket, so they are never under-estimated; the minimum
+ * and the maximum are exact.
+ * <p>
+ * Recording is lock-free and thread-safe. Still, threads recording a lot at once contend on the counters
+ * of the most common values: give each thread its own histogram, and merge them with {@link #add(LatencyHistogram)}.
+ * Histograms can also be exported to a text, eg. to be merged in another process.
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+	/** Highest power of two of positive longs, minus the bits of the linear range. */
+	private static final int MAGNITUDES = 63 - SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAGNITUDES + 1) * SUB_BUCKET_HALF_COUNT;
+	private static final String EXPORT_HEADER = "LatencyHistogram 1";
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(-1);
+
+	/**
+	 * Records one occurrence of the given value. Negative values are recorded as 0.
+	 */
+	public void record(long value)
+	{
+		record(value, 1);
+	}
+
+	/**
+	 * Records the given number of occurrences of the given value. Negative values are recorded as 0.
+	 */
+	public void record(long value, long count)
+	{
+		if (count < 0)
+			throw new IllegalArgumentException("Negative count: " + count);
+		if (count == 0)
+			return;
+		long v = Math.max(0, value);
+		counts.addAndGet(indexOf(v), count);
+		totalCount.addAndGet(count);
+		updateMin(v);
+		updateMax(v);
+	}
+
+	/**
+	 * Adds the values recorded by the given histogram to this one.
+	 */
+	public void add(LatencyHistogram other)
+	{
+		long added = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			long count = other.counts.get(i);
+			if (count != 0)
+			{
+				counts.addAndGet(i, count);
+				added += count;
+			}
+		}
+		if (added == 0)
+			return;
+		totalCount.addAndGet(added);
+		updateMin(other.min.get());
+		updateMax(other.max.get());
+	}
+
+	/**
+	 * Returns a copy of this histogram. If values are recorded meanwhile, it might include only some of them.
+	 */
+	public LatencyHistogram copy()
+	{
+		LatencyHistogram copy = new LatencyHistogram();
+		copy.add(this);
+		return copy;
+	}
+
+	/**
+	 * Forgets all the recorded values. Values recorded meanwhile might be partially forgotten.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		min.set(Long.MAX_VALUE);
+		max.set(-1);
+	}
+
+	public long getCount()
+	{
+		return totalCount.get();
+	}
+
+	/**
+	 * Returns the lowest recorded value, or 0 if there is none.
+	 */
+	public long getMin()
+	{
+		return getCount() == 0 ? 0 : min.get();
+	}
+
+	/**
+	 * Returns the highest recorded value, or 0 if there is none.
+	 */
+	public long getMax()
+	{
+		return Math.max(0, max.get());
+	}
+
+	/**
+	 * Returns the mean of the recorded values, each one counted as the middle of its bucket, or 0 if there is none.
+	 */
+	public double getMean()
+	{
+		long total = 0;
+		double sum = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			long count = counts.get(i);
+			if (count != 0)
+			{
+				total += count;
+				sum += count * ((lowestValueAt(i) + (double) highestValueAt(i)) / 2);
+			}
+		}
+		return total == 0 ? 0 : sum / total;
+	}
+
+	/**
+	 * Returns the value below or at which the given percentage of the recorded values are, or 0 if there is none.
+	 *
+	 * @param percentile  between 0 and 100, eg. 99.9
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile out of [0, 100]: " + percentile);
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			total += counts.get(i);
+		}
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.max(getMin(), Math.min(highestValueAt(i), getMax()));
+		}
+		return getMax();
+	}
+
+	/**
+	 * Exports the recorded values to a text, one line per non-empty bucket, that can be read back by {@link #parse(String)}.
+	 */
+	public String export()
+	{
+		StringBuilder sb = new StringBuilder(EXPORT_HEADER);
+		sb.append('\n').append(getMin()).append(' ').append(getMax()).append('\n');
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			long count = counts.get(i);
+			if (count != 0)
+			{
+				sb.append(lowestValueAt(i)).append(' ').append(count).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reads a histogram exported by {@link #export()}.
+	 *
+	 * @throws IllegalArgumentException if the text is not an exported histogram
+	 */
+	public static LatencyHistogram parse(String exported)
+	{
+		String[] lines = exported.split("\n");
+		if (lines.length < 2 || !lines[0].trim().equals(EXPORT_HEADER))
+			throw new IllegalArgumentException("Not an exported histogram");
+		LatencyHistogram histogram = new LatencyHistogram();
+		try
+		{
+			long[] minMax = parsePair(lines[1]);
+			for (int i = 2; i < lines.length; i++)
+			{
+				if (!lines[i].trim().isEmpty())
+				{
+					long[] bucket = parsePair(lines[i]);
+					histogram.record(bucket[0], bucket[1]);
+				}
+			}
+			if (histogram.getCount() > 0)
+			{
+				histogram.min.set(minMax[0]);
+				histogram.max.set(minMax[1]);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid exported histogram", e);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the count, the mean and the main percentiles, in microseconds if the values are nanoseconds.
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format(Locale.ROOT, "count=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+				getCount(), getMean() / 1000, getValueAtPercentile(50) / 1000.0, getValueAtPercentile(90) / 1000.0,
+				getValueAtPercentile(99) / 1000.0, getValueAtPercentile(99.9) / 1000.0, getMax() / 1000.0);
+	}
+
+	static int indexOf(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+		// Position of the highest bit, at least SUB_BUCKET_BITS
+		int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		// Between SUB_BUCKET_HALF_COUNT and SUB_BUCKET_COUNT - 1
+		int subBucket = (int) (value >>> (magnitude + 1));
+		return SUB_BUCKET_COUNT + magnitude * SUB_BUCKET_HALF_COUNT + subBucket - SUB_BUCKET_HALF_COUNT;
+	}
+
+	static long lowestValueAt(int index)
+	{
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+		int magnitude = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT;
+		long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+		return subBucket << (magnitude + 1);
+	}
+
+	static long highestValueAt(int index)
+	{
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+		int magnitude = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT;
+		return lowestValueAt(index) + (1L << (magnitude + 1)) - 1;
+	}
+
+	private static long[] parsePair(String line)
+	{
+		String[] parts = line.trim().split(" ");
+		if (parts.length != 2)
+			throw new IllegalArgumentException("Invalid line of exported histogram: " + line);
+		return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+	}
+
+	private void updateMin(long value)
+	{
+		long current;
+		while (value < (current = min.get()) && !min.compareAndSet(current, value))
+		{
+			// Retry
+		}
+	}
+
+	private void updateMax(long value)
+	{
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+		{
+			// Retry
+		}
+	}
+}
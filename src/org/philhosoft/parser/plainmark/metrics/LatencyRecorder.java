@@ -0,0 +1,197 @@
+package org.philhosoft.parser.plainmark.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.philhosoft.parser.plainmark.ConversionMonitor;
+import org.philhosoft.parser.plainmark.ConversionStats;
+
+/**
+ * Records the latency of each conversion in a {@link LatencyHistogram} per size class of the input text,
+ * so the tail latencies of big documents are not hidden by the many short comments.
+ * <p>
+ * Eg.:
+ * <pre>
+ * LatencyRecorder latencies = new LatencyRecorder();
+ * PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(latencies).build();
+ * ...
+ * System.out.println(latencies.report());
+ * </pre>
+ * The latency is the time of parsing and rendering, as measured by the engine.
+ */
+public class LatencyRecorder implements ConversionMonitor
+{
+	/**
+	 * Classes of input lengths, in characters.
+	 */
+	public enum SizeClass
+	{
+		/** Below 256 characters: chat messages, short comments. */
+		TINY(256),
+		/** Below 4 K characters: usual posts. */
+		SMALL(4 * 1024),
+		/** Below 64 K characters: long documents. */
+		MEDIUM(64 * 1024),
+		/** Everything bigger. */
+		LARGE(Integer.MAX_VALUE);
+
+		private final int maxLength;
+
+		private SizeClass(int maxLength)
+		{
+			this.maxLength = maxLength;
+		}
+
+		/**
+		 * Returns the class of the given input length.
+		 */
+		public static SizeClass of(int length)
+		{
+			for (SizeClass sizeClass : values())
+			{
+				if (length < sizeClass.maxLength)
+					return sizeClass;
+			}
+			return LARGE;
+		}
+	}
+
+	private final Map<SizeClass, LatencyHistogram> histograms =
+			new EnumMap<SizeClass, LatencyHistogram>(SizeClass.class);
+
+	public LatencyRecorder()
+	{
+		// Filled once, only read afterwards, so shared safely
+		for (SizeClass sizeClass : SizeClass.values())
+		{
+			histograms.put(sizeClass, new LatencyHistogram());
+		}
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return true;
+	}
+
+	@Override
+	public void conversionStarted(ConversionStats stats)
+	{
+	}
+
+	@Override
+	public void parsingDone(ConversionStats stats)
+	{
+	}
+
+	@Override
+	public void conversionDone(ConversionStats stats)
+	{
+		record(stats.getInputLength(), stats.getTotalNanos());
+	}
+
+	@Override
+	public void cacheLookup(boolean hit)
+	{
+	}
+
+	/**
+	 * Records the latency of a conversion measured by other means, eg. including a cache or a network.
+	 */
+	public void record(int inputLength, long nanos)
+	{
+		histograms.get(SizeClass.of(inputLength)).record(nanos);
+	}
+
+	/**
+	 * Returns the histogram of the given size class, still recording.
+	 */
+	public LatencyHistogram getHistogram(SizeClass sizeClass)
+	{
+		return histograms.get(sizeClass);
+	}
+
+	/**
+	 * Returns a new histogram of all the conversions, whatever their size.
+	 */
+	public LatencyHistogram getTotal()
+	{
+		LatencyHistogram total = new LatencyHistogram();
+		for (LatencyHistogram histogram : histograms.values())
+		{
+			total.add(histogram);
+		}
+		return total;
+	}
+
+	/**
+	 * Adds the latencies recorded by the given recorder to this one, eg. to merge the recorders of several threads.
+	 */
+	public void add(LatencyRecorder other)
+	{
+		for (SizeClass sizeClass : SizeClass.values())
+		{
+			histograms.get(sizeClass).add(other.histograms.get(sizeClass));
+		}
+	}
+
+	public void reset()
+	{
+		for (LatencyHistogram histogram : histograms.values())
+		{
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Returns a table of the percentiles of each size class, and of all the conversions, in microseconds.
+	 */
+	public String report()
+	{
+		StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%-6s %10s %10s %10s %10s %10s %10s%n",
+				"size", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+		for (SizeClass sizeClass : SizeClass.values())
+		{
+			appendReportLine(sb, sizeClass.name(), histograms.get(sizeClass));
+		}
+		appendReportLine(sb, "ALL", getTotal());
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the percentiles of each size class in Prometheus text exposition format, as summaries in seconds.
+	 */
+	public String toPrometheus()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("# HELP plainmark_conversion_latency_seconds Latency of the conversions, per size class of the input\n");
+		sb.append("# TYPE plainmark_conversion_latency_seconds summary\n");
+		double[] quantiles = { 0.5, 0.9, 0.99, 0.999 };
+		for (SizeClass sizeClass : SizeClass.values())
+		{
+			LatencyHistogram histogram = histograms.get(sizeClass).copy();
+			String size = sizeClass.name().toLowerCase(Locale.ROOT);
+			for (double quantile : quantiles)
+			{
+				sb.append("plainmark_conversion_latency_seconds{size=\"").append(size).append("\",quantile=\"")
+						.append(quantile).append("\"} ").append(histogram.getValueAtPercentile(quantile * 100) / 1e9)
+						.append('\n');
+			}
+			// The sum is estimated from the buckets
+			sb.append("plainmark_conversion_latency_seconds_sum{size=\"").append(size).append("\"} ")
+					.append(histogram.getMean() * histogram.getCount() / 1e9).append('\n');
+			sb.append("plainmark_conversion_latency_seconds_count{size=\"").append(size).append("\"} ")
+					.append(histogram.getCount()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static void appendReportLine(StringBuilder sb, String name, LatencyHistogram histogram)
+	{
+		sb.append(String.format(Locale.ROOT, "%-6s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+				histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+				histogram.getMax() / 1000.0));
+	}
+}
@@ -0,0 +1,173 @@
+package org.philhosoft.parser.plainmark.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.philhosoft.parser.plainmark.ConversionMonitor;
+import org.philhosoft.parser.plainmark.ConversionStats;
+
+/**
+ * Aggregates the measurements of the conversions of one or several engines: time per phase, sizes, tree nodes
+ * and cache lookups.
+ * <p>
+ * The counters are striped (LongAdder), so the converting threads don't contend on them;
+ * reading them is slower, but rare (eg. on a metrics request).
+ * <p>
+ * Eg.:
+ * <pre>
+ * PhaseMetrics metrics = new PhaseMetrics();
+ * PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(metrics).build();
+ * </pre>
+ */
+public class PhaseMetrics implements ConversionMonitor
+{
+	private final LongAdder conversionCount = new LongAdder();
+	private final LongAdder blockParsingNanos = new LongAdder();
+	private final LongAdder fragmentParsingNanos = new LongAdder();
+	private final LongAdder renderingNanos = new LongAdder();
+	private final LongAdder inputChars = new LongAdder();
+	private final LongAdder outputChars = new LongAdder();
+	private final LongAdder blockCount = new LongAdder();
+	private final LongAdder lineCount = new LongAdder();
+	private final LongAdder fragmentCount = new LongAdder();
+	private final LongAdder cacheHitCount = new LongAdder();
+	private final LongAdder cacheMissCount = new LongAdder();
+
+	@Override
+	public boolean isEnabled()
+	{
+		return true;
+	}
+
+	@Override
+	public void conversionStarted(ConversionStats stats)
+	{
+	}
+
+	@Override
+	public void parsingDone(ConversionStats stats)
+	{
+	}
+
+	@Override
+	public void conversionDone(ConversionStats stats)
+	{
+		conversionCount.increment();
+		blockParsingNanos.add(stats.getBlockParsingNanos());
+		fragmentParsingNanos.add(stats.getFragmentParsingNanos());
+		renderingNanos.add(stats.getRenderingNanos());
+		inputChars.add(stats.getInputLength());
+		outputChars.add(stats.getOutputLength());
+		blockCount.add(stats.getBlockCount());
+		lineCount.add(stats.getLineCount());
+		fragmentCount.add(stats.getFragmentCount());
+	}
+
+	@Override
+	public void cacheLookup(boolean hit)
+	{
+		(hit ? cacheHitCount : cacheMissCount).increment();
+	}
+
+	public long getConversionCount()
+	{
+		return conversionCount.sum();
+	}
+	public long getBlockParsingNanos()
+	{
+		return blockParsingNanos.sum();
+	}
+	public long getFragmentParsingNanos()
+	{
+		return fragmentParsingNanos.sum();
+	}
+	public long getRenderingNanos()
+	{
+		return renderingNanos.sum();
+	}
+	public long getInputChars()
+	{
+		return inputChars.sum();
+	}
+	public long getOutputChars()
+	{
+		return outputChars.sum();
+	}
+	public long getBlockCount()
+	{
+		return blockCount.sum();
+	}
+	public long getLineCount()
+	{
+		return lineCount.sum();
+	}
+	public long getFragmentCount()
+	{
+		return fragmentCount.sum();
+	}
+	public long getCacheHitCount()
+	{
+		return cacheHitCount.sum();
+	}
+	public long getCacheMissCount()
+	{
+		return cacheMissCount.sum();
+	}
+
+	/**
+	 * Returns the share of the conversion time spent in each phase: block parsing, fragment parsing, rendering.
+	 */
+	public double[] getPhaseShares()
+	{
+		double block = getBlockParsingNanos();
+		double fragment = getFragmentParsingNanos();
+		double rendering = getRenderingNanos();
+		double total = block + fragment + rendering;
+		if (total == 0)
+			return new double[3];
+		return new double[] { block / total, fragment / total, rendering / total };
+	}
+
+	public void reset()
+	{
+		for (LongAdder adder : new LongAdder[] { conversionCount, blockParsingNanos, fragmentParsingNanos, renderingNanos,
+				inputChars, outputChars, blockCount, lineCount, fragmentCount, cacheHitCount, cacheMissCount })
+		{
+			adder.reset();
+		}
+	}
+
+	/**
+	 * Returns the counters in the Prometheus text format.
+	 */
+	public String toPrometheus()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("# TYPE plainmark_conversions_total counter\n");
+		sb.append("plainmark_conversions_total ").append(getConversionCount()).append('\n');
+		sb.append("# TYPE plainmark_phase_seconds_total counter\n");
+		sb.append("plainmark_phase_seconds_total{phase=\"block_parsing\"} ").append(getBlockParsingNanos() / 1e9).append('\n');
+		sb.append("plainmark_phase_seconds_total{phase=\"fragment_parsing\"} ").append(getFragmentParsingNanos() / 1e9).append('\n');
+		sb.append("plainmark_phase_seconds_total{phase=\"rendering\"} ").append(getRenderingNanos() / 1e9).append('\n');
+		sb.append("# TYPE plainmark_chars_total counter\n");
+		sb.append("plainmark_chars_total{direction=\"input\"} ").append(getInputChars()).append('\n');
+		sb.append("plainmark_chars_total{direction=\"output\"} ").append(getOutputChars()).append('\n');
+		sb.append("# TYPE plainmark_nodes_total counter\n");
+		sb.append("plainmark_nodes_total{type=\"block\"} ").append(getBlockCount()).append('\n');
+		sb.append("plainmark_nodes_total{type=\"line\"} ").append(getLineCount()).append('\n');
+		sb.append("plainmark_nodes_total{type=\"fragment\"} ").append(getFragmentCount()).append('\n');
+		sb.append("# TYPE plainmark_cache_lookups_total counter\n");
+		sb.append("plainmark_cache_lookups_total{result=\"hit\"} ").append(getCacheHitCount()).append('\n');
+		sb.append("plainmark_cache_lookups_total{result=\"miss\"} ").append(getCacheMissCount()).append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		double[] shares = getPhaseShares();
+		return String.format("%d conversions; block parsing %.1f %%, fragment parsing %.1f %%, rendering %.1f %%; " +
+				"%d chars in, %d chars out; cache hits %d, misses %d",
+				getConversionCount(), shares[0] * 100, shares[1] * 100, shares[2] * 100,
+				getInputChars(), getOutputChars(), getCacheHitCount(), getCacheMissCount());
+	}
+}
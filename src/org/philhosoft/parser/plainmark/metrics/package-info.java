@@ -0,0 +1,4 @@
+/**
+ * Metrics of the conversions, on server side: where the time goes, how big the texts and trees are.
+ */
+package org.philhosoft.parser.plainmark.metrics;
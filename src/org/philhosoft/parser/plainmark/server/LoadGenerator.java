@@ -0,0 +1,222 @@
+package org.philhosoft.parser.plainmark.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+/**
+ * Sends requests to a render service from a fixed number of concurrent clients, measuring throughput and latencies.
+ * <p>
+ * Usage: <code>LoadGenerator [-c clients] [-n requests] [-f textFile] [url]</code>.
+ * Without URL, a RenderServer is started in the process, on a free local port, and the /render endpoint is loaded.
+ */
+public class LoadGenerator
+{
+	private final HttpClient client = HttpClient.newHttpClient();
+	private final URI uri;
+	private final String body;
+	private final int clientCount;
+
+	/**
+	 * Results of a run.
+	 */
+	public static class Result
+	{
+		private final long[] latencies;
+		private final int errorCount;
+		private final long elapsedNanos;
+
+		Result(long[] latencies, int errorCount, long elapsedNanos)
+		{
+			this.latencies = latencies;
+			Arrays.sort(this.latencies);
+			this.errorCount = errorCount;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public int getRequestCount()
+		{
+			return latencies.length;
+		}
+		/** Number of requests failed, or answered with a non-200 status. */
+		public int getErrorCount()
+		{
+			return errorCount;
+		}
+		public long getElapsedNanos()
+		{
+			return elapsedNanos;
+		}
+		public double getRequestsPerSecond()
+		{
+			return elapsedNanos == 0 ? 0 : latencies.length * 1e9 / elapsedNanos;
+		}
+		/**
+		 * Returns the latency under which the given percentage of the requests have been answered, in nanoseconds.
+		 */
+		public long getLatencyPercentile(double percentile)
+		{
+			if (latencies.length == 0)
+				return 0;
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%d requests, %d errors in %.1f ms: %.0f req/s; latency p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+					latencies.length, errorCount, elapsedNanos / 1e6, getRequestsPerSecond(),
+					getLatencyPercentile(50) / 1e6, getLatencyPercentile(99) / 1e6, getLatencyPercentile(100) / 1e6);
+		}
+	}
+
+	/**
+	 * @param uri  the endpoint to POST to
+	 * @param body  the body of each request
+	 * @param clientCount  number of concurrent clients, each waiting for its response before sending the next request
+	 */
+	public LoadGenerator(URI uri, String body, int clientCount)
+	{
+		if (clientCount < 1)
+			throw new IllegalArgumentException("At least one client is needed, got " + clientCount);
+		this.uri = uri;
+		this.body = body;
+		this.clientCount = clientCount;
+	}
+
+	/**
+	 * Sends the given number of requests, spread on the clients.
+	 */
+	public Result run(final int requestCount) throws InterruptedException
+	{
+		final long[] latencies = new long[requestCount];
+		final AtomicInteger nextRequest = new AtomicInteger();
+		final AtomicInteger errorCount = new AtomicInteger();
+		final HttpRequest request = HttpRequest.newBuilder(uri)
+				.POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8)).build();
+
+		ExecutorService clients = Executors.newFixedThreadPool(clientCount);
+		long start = System.nanoTime();
+		try
+		{
+			Future<?>[] futures = new Future<?>[clientCount];
+			for (int c = 0; c < clientCount; c++)
+			{
+				futures[c] = clients.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						for (int i = nextRequest.getAndIncrement(); i < requestCount; i = nextRequest.getAndIncrement())
+						{
+							long requestStart = System.nanoTime();
+							if (!send(request))
+							{
+								errorCount.incrementAndGet();
+							}
+							latencies[i] = System.nanoTime() - requestStart;
+						}
+					}
+				});
+			}
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			clients.shutdownNow();
+		}
+		return new Result(latencies, errorCount.get(), System.nanoTime() - start);
+	}
+
+	private boolean send(HttpRequest request)
+	{
+		try
+		{
+			HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+			return response.statusCode() == 200;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int clientCount = 16;
+		int requestCount = 20000;
+		String body = "# Title\n\nSome *strong* text, _emphasis_ and http://example.com\n- One\n- Two\n";
+		String url = null;
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-c") && i + 1 < args.length)
+			{
+				clientCount = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-n") && i + 1 < args.length)
+			{
+				requestCount = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-f") && i + 1 < args.length)
+			{
+				body = new String(Files.readAllBytes(Paths.get(args[++i])), StandardCharsets.UTF_8);
+			}
+			else
+			{
+				url = args[i];
+			}
+		}
+
+		RenderServer server = null;
+		if (url == null)
+		{
+			// Else the delayed acknowledgements are measured, not the rendering
+			RenderServer.setNoDelayByDefault();
+			server = new RenderServer(new PlainMarkEngine.Builder().build(),
+					new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).start();
+			url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/render";
+		}
+		try
+		{
+			LoadGenerator generator = new LoadGenerator(URI.create(url), body, clientCount);
+			// Warm-up
+			generator.run(Math.min(requestCount, 2000));
+			System.out.println(clientCount + " clients on " + url + ": " + generator.run(requestCount));
+		}
+		finally
+		{
+			if (server != null)
+			{
+				server.close();
+			}
+		}
+	}
+}
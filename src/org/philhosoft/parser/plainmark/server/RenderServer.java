@@ -0,0 +1,437 @@
+package org.philhosoft.parser.plainmark.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.philhosoft.formattedtext.format.JSONVisitor;
+import org.philhosoft.parser.json.JSONTreeParser;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.concurrent.AsyncConverter;
+import org.philhosoft.parser.plainmark.concurrent.ChunkedRenderer;
+import org.philhosoft.parser.plainmark.metrics.PhaseMetrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Small HTTP service rendering PlainMark texts, for the processes that cannot use the library directly.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li><code>POST /render</code>: the body is the text (UTF-8), the response is its rendering;
+ * <li><code>POST /render/stream</code>: same, but the rendering is sent in chunks (one per top-level block)
+ * as soon as they are rendered;
+ * <li><code>POST /render/batch</code>: the body is a JSON array of texts, the response is the JSON array of their renderings;
+ * <li><code>GET /metrics</code>: counters of the service, and of the conversions if the engine is monitored
+ * by PhaseMetrics, in the Prometheus text format.
+ * </ul>
+ * Bodies bigger than the maximum request size are rejected with a 413 status, before being read if their length is known.
+ * <p>
+ * Each exchange is handled in its own virtual thread by default (see AsyncConverter), so slow clients don't hold
+ * platform threads.
+ * <p>
+ * Failures of the conversions are logged, and answered with a generic 500 status. If the streamed response has started
+ * already, the connection is aborted instead, so the client sees a truncated response rather than a complete one.
+ * <p>
+ * Small responses wait for the delayed acknowledgement of their headers (about 40 ms) unless the system property
+ * <code>sun.net.httpserver.nodelay</code> is true when the first server of the JVM is created: {@link #main(String[])}
+ * sets it, applications embedding the server may set it too.
+ * <p>
+ * Usage: <code>RenderServer [--port port] [--max-size bytes]</code>. The server listens on the loopback address only.
+ */
+public class RenderServer implements Closeable
+{
+	public static final int DEFAULT_PORT = 8089;
+	public static final int DEFAULT_MAX_REQUEST_SIZE = 1024 * 1024;
+	private static final String HTML_TYPE = "text/html; charset=utf-8";
+	private static final String JSON_TYPE = "application/json; charset=utf-8";
+	private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+	private static final Logger LOGGER = Logger.getLogger(RenderServer.class.getName());
+
+	private final HttpServer server;
+	private final PlainMarkEngine engine;
+	private final int maxRequestSize;
+	private final Map<String, EndpointMetrics> endpointMetrics = new LinkedHashMap<String, EndpointMetrics>();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final LongAdder receivedBytes = new LongAdder();
+	private final LongAdder sentBytes = new LongAdder();
+	private final LongAdder inFlight = new LongAdder();
+
+	/**
+	 * Counters of an endpoint.
+	 */
+	private static class EndpointMetrics
+	{
+		private final LongAdder requestCount = new LongAdder();
+		private final LongAdder errorCount = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+	}
+
+	/**
+	 * Thrown when a request body is bigger than allowed.
+	 */
+	private static class RequestTooLargeException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public RequestTooLargeException(long maxSize)
+		{
+			super("Request bigger than " + maxSize + " bytes");
+		}
+	}
+
+	/**
+	 * Handles an endpoint: checks the method, counts the request and maps the exceptions to error statuses.
+	 */
+	private abstract class Endpoint implements HttpHandler
+	{
+		private final String method;
+		private final EndpointMetrics metrics = new EndpointMetrics();
+
+		public Endpoint(String name, String method)
+		{
+			this.method = method;
+			endpointMetrics.put(name, metrics);
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			long start = System.nanoTime();
+			metrics.requestCount.increment();
+			inFlight.increment();
+			boolean sent = true;
+			try
+			{
+				if (!exchange.getRequestMethod().equals(method))
+				{
+					exchange.getResponseHeaders().set("Allow", method);
+					metrics.errorCount.increment();
+					send(exchange, 405, TEXT_TYPE, "Method not allowed, use " + method);
+					return;
+				}
+				process(exchange);
+			}
+			catch (RequestTooLargeException e)
+			{
+				rejectedCount.increment();
+				metrics.errorCount.increment();
+				sent = sendError(exchange, 413, e.getMessage());
+			}
+			catch (IllegalArgumentException e)
+			{
+				metrics.errorCount.increment();
+				sent = sendError(exchange, 400, e.getMessage());
+			}
+			catch (RuntimeException e)
+			{
+				metrics.errorCount.increment();
+				LOGGER.log(Level.WARNING, "Cannot render a request to " + exchange.getRequestURI(), e);
+				sent = sendError(exchange, 500, "Cannot render the request");
+			}
+			finally
+			{
+				// Closing would terminate a chunked response properly
+				if (sent)
+				{
+					exchange.close();
+				}
+				inFlight.decrement();
+				metrics.nanos.add(System.nanoTime() - start);
+			}
+			if (!sent)
+				throw new IOException("Response aborted after its start"); // The HTTP server closes the connection
+		}
+
+		protected abstract void process(HttpExchange exchange) throws IOException;
+	}
+
+	/**
+	 * Uses the default request size limit, and the default executor of AsyncConverter
+	 * (a virtual thread per exchange on Java 21+).
+	 */
+	public RenderServer(PlainMarkEngine engine, InetSocketAddress address) throws IOException
+	{
+		this(engine, address, DEFAULT_MAX_REQUEST_SIZE, AsyncConverter.getDefaultExecutor());
+	}
+	/**
+	 * @param address  the address to bind to; port 0 picks a free port
+	 * @param maxRequestSize  maximum size of the request bodies, in bytes
+	 * @param executor  the executor handling the exchanges. Not shut down by this class.
+	 */
+	public RenderServer(PlainMarkEngine engine, InetSocketAddress address, int maxRequestSize, Executor executor)
+			throws IOException
+	{
+		if (maxRequestSize < 1)
+			throw new IllegalArgumentException("Invalid maximum request size: " + maxRequestSize);
+		this.engine = engine;
+		this.maxRequestSize = maxRequestSize;
+		server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+		// The contexts are matched by longest prefix
+		server.createContext("/render", new Endpoint("render", "POST")
+		{
+			@Override
+			protected void process(HttpExchange exchange) throws IOException
+			{
+				send(exchange, 200, HTML_TYPE, RenderServer.this.engine.convert(readBody(exchange)));
+			}
+		});
+		server.createContext("/render/stream", new Endpoint("stream", "POST")
+		{
+			@Override
+			protected void process(HttpExchange exchange) throws IOException
+			{
+				stream(exchange, new ChunkedRenderer(RenderServer.this.engine, readBody(exchange)));
+			}
+		});
+		server.createContext("/render/batch", new Endpoint("batch", "POST")
+		{
+			@Override
+			protected void process(HttpExchange exchange) throws IOException
+			{
+				send(exchange, 200, JSON_TYPE, convertBatch(JSONTreeParser.parseStrings(readBody(exchange))));
+			}
+		});
+		server.createContext("/metrics", new Endpoint("metrics", "GET")
+		{
+			@Override
+			protected void process(HttpExchange exchange) throws IOException
+			{
+				send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", getMetrics());
+			}
+		});
+	}
+
+	public RenderServer start()
+	{
+		server.start();
+		return this;
+	}
+
+	/**
+	 * Stops the server, waiting at most the given delay for the exchanges in progress to finish.
+	 */
+	public void stop(int delaySeconds)
+	{
+		server.stop(delaySeconds);
+	}
+
+	/**
+	 * Stops the server immediately.
+	 */
+	@Override
+	public void close()
+	{
+		server.stop(0);
+	}
+
+	public InetSocketAddress getAddress()
+	{
+		return server.getAddress();
+	}
+
+	/**
+	 * Returns the counters of the service, in the Prometheus text format.
+	 * If the engine is monitored by PhaseMetrics, its counters are included.
+	 */
+	public String getMetrics()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("# TYPE plainmark_requests_total counter\n");
+		for (Map.Entry<String, EndpointMetrics> entry : endpointMetrics.entrySet())
+		{
+			appendMetric(sb, "plainmark_requests_total", entry.getKey(), entry.getValue().requestCount.sum());
+		}
+		sb.append("# TYPE plainmark_errors_total counter\n");
+		for (Map.Entry<String, EndpointMetrics> entry : endpointMetrics.entrySet())
+		{
+			appendMetric(sb, "plainmark_errors_total", entry.getKey(), entry.getValue().errorCount.sum());
+		}
+		sb.append("# TYPE plainmark_request_seconds_total counter\n");
+		for (Map.Entry<String, EndpointMetrics> entry : endpointMetrics.entrySet())
+		{
+			appendMetric(sb, "plainmark_request_seconds_total", entry.getKey(), entry.getValue().nanos.sum() / 1e9);
+		}
+		sb.append("# TYPE plainmark_rejected_total counter\n");
+		sb.append("plainmark_rejected_total ").append(rejectedCount.sum()).append('\n');
+		sb.append("# TYPE plainmark_received_bytes_total counter\n");
+		sb.append("plainmark_received_bytes_total ").append(receivedBytes.sum()).append('\n');
+		sb.append("# TYPE plainmark_sent_bytes_total counter\n");
+		sb.append("plainmark_sent_bytes_total ").append(sentBytes.sum()).append('\n');
+		sb.append("# TYPE plainmark_in_flight gauge\n");
+		sb.append("plainmark_in_flight ").append(inFlight.sum()).append('\n');
+		sb.append("# TYPE plainmark_virtual_threads gauge\n");
+		sb.append("plainmark_virtual_threads ").append(AsyncConverter.hasVirtualThreads() ? 1 : 0).append('\n');
+		if (engine.getMonitor() instanceof PhaseMetrics)
+		{
+			sb.append(((PhaseMetrics) engine.getMonitor()).toPrometheus());
+		}
+		return sb.toString();
+	}
+
+	private static void appendMetric(StringBuilder sb, String name, String endpoint, Object value)
+	{
+		sb.append(name).append("{endpoint=\"").append(endpoint).append("\"} ").append(value).append('\n');
+	}
+
+	private String convertBatch(List<String> markupTexts)
+	{
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < markupTexts.size(); i++)
+		{
+			if (i > 0)
+			{
+				sb.append(',');
+			}
+			sb.append(JSONVisitor.quote(engine.convert(markupTexts.get(i))));
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Reads the body of the request, in UTF-8, up to the maximum request size.
+	 */
+	private String readBody(HttpExchange exchange) throws IOException
+	{
+		String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (contentLength != null)
+		{
+			try
+			{
+				if (Long.parseLong(contentLength.trim()) > maxRequestSize)
+					throw new RequestTooLargeException(maxRequestSize);
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Invalid Content-Length: " + contentLength);
+			}
+		}
+		// Chunked requests have no length: check while reading
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = exchange.getRequestBody())
+		{
+			int n;
+			while ((n = in.read(buffer)) > 0)
+			{
+				body.write(buffer, 0, n);
+				if (body.size() > maxRequestSize)
+					throw new RequestTooLargeException(maxRequestSize);
+			}
+		}
+		receivedBytes.add(body.size());
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private void send(HttpExchange exchange, int status, String contentType, String content) throws IOException
+	{
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0)
+		{
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(bytes);
+			}
+		}
+		sentBytes.add(bytes.length);
+	}
+
+	/**
+	 * Sends an error response, unless the response has been started already.
+	 *
+	 * @return false if the response had been started: the exchange must then be aborted
+	 */
+	private boolean sendError(HttpExchange exchange, int status, String message) throws IOException
+	{
+		if (exchange.getResponseCode() != -1)
+			return false;
+		send(exchange, status, TEXT_TYPE, message);
+		return true;
+	}
+
+	/**
+	 * Sends the chunks with chunked transfer encoding, flushing each one: the next block is parsed only
+	 * once the previous chunk has been handed to the socket.
+	 */
+	private void stream(HttpExchange exchange, ChunkedRenderer renderer) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", HTML_TYPE);
+		exchange.sendResponseHeaders(200, 0);
+		// Not closed on failure, which would send the end of the chunks
+		OutputStream out = exchange.getResponseBody();
+		for (String chunk = renderer.nextChunk(); chunk != null; chunk = renderer.nextChunk())
+		{
+			byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+			out.write(bytes);
+			out.flush();
+			sentBytes.add(bytes.length);
+		}
+		out.close();
+	}
+
+	/**
+	 * Disables the delay of the small responses, unless the property is set already.
+	 * To call before creating the first server of the JVM.
+	 */
+	static void setNoDelayByDefault()
+	{
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+		{
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = DEFAULT_PORT;
+		int maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
+		List<String> unknown = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("--port") && i + 1 < args.length)
+			{
+				port = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--max-size") && i + 1 < args.length)
+			{
+				maxRequestSize = Integer.parseInt(args[++i]);
+			}
+			else
+			{
+				unknown.add(args[i]);
+			}
+		}
+		if (!unknown.isEmpty())
+		{
+			System.err.println("Usage: RenderServer [--port port] [--max-size bytes]");
+			System.exit(2);
+		}
+		setNoDelayByDefault();
+
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(new PhaseMetrics()).build();
+		RenderServer server = new RenderServer(engine,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxRequestSize,
+				AsyncConverter.getDefaultExecutor()).start();
+		System.out.println("PlainMark render service listening on http://" +
+				server.getAddress().getHostString() + ":" + server.getAddress().getPort() +
+				(AsyncConverter.hasVirtualThreads() ? " (virtual threads)" : ""));
+	}
+}
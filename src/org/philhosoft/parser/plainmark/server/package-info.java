@@ -0,0 +1,6 @@
+/**
+ * Optional HTTP service rendering PlainMark texts for other processes, on the JDK built-in HTTP server.
+ * <p>
+ * Depends only on the jdk.httpserver module; nothing else in the project depends on this package.
+ */
+package org.philhosoft.parser.plainmark.server;
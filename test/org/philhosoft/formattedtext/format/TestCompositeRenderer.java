@@ -0,0 +1,95 @@
+package org.philhosoft.formattedtext.format;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.Block;
+
+
+public class TestCompositeRenderer
+{
+	@Test
+	public void testSameOutputsAsSeparateRenderings() throws Exception
+	{
+		Block document = FormattedTextExamples.buildMixedBlockFragments();
+
+		CompositeRenderer renderer = new CompositeRenderer()
+				.add(new HTMLVisitor(), new ContextWithStringBuilder())
+				.add(new PlainTextVisitor(), new ContextWithStringBuilder());
+		List<String> outputs = renderer.render(document);
+
+		ContextWithStringBuilder htmlContext = new ContextWithStringBuilder();
+		document.accept(new HTMLVisitor(), htmlContext);
+		ContextWithStringBuilder textContext = new ContextWithStringBuilder();
+		document.accept(new PlainTextVisitor(), textContext);
+
+		assertThat(renderer.size()).isEqualTo(2);
+		assertThat(outputs).containsExactly(htmlContext.asString(), textContext.asString());
+	}
+
+	@Test
+	public void testExcerpt() throws Exception
+	{
+		Block document = FormattedTextExamples.buildMixedBlockFragments();
+
+		CompositeRenderer renderer = new CompositeRenderer()
+				.add(new PlainTextVisitor(), new ContextWithStringBuilder())
+				.add(new PlainTextVisitor(), new TruncatingContext(60));
+		List<String> outputs = renderer.render(document);
+
+//		System.out.println(outputs);
+		assertThat(outputs.get(1)).isEqualTo(outputs.get(0).substring(0, 60));
+		assertThat(outputs.get(1)).isEqualTo(
+				"This is a title\n" +
+				"Start of text with emphasis inside.\n" +
+				"Item 0 &");
+	}
+
+	@Test
+	public void testExcerpt_longerThanText() throws Exception
+	{
+		Block document = FormattedTextExamples.buildFragments();
+
+		CompositeRenderer renderer = new CompositeRenderer()
+				.add(new PlainTextVisitor(), new ContextWithStringBuilder())
+				.add(new PlainTextVisitor(), new TruncatingContext(1000));
+		List<String> outputs = renderer.render(document);
+
+		assertThat(outputs.get(1)).isEqualTo(outputs.get(0));
+	}
+
+	@Test
+	public void testRenderTwice() throws Exception
+	{
+		Block first = FormattedTextExamples.buildMixedBlockFragments();
+		Block second = FormattedTextExamples.buildFragments();
+
+		CompositeRenderer renderer = new CompositeRenderer()
+				.add(new PlainTextVisitor(), new ContextWithStringBuilder())
+				.add(new PlainTextVisitor(), new TruncatingContext(20, "..."));
+		renderer.render(first);
+		List<String> outputs = renderer.render(second);
+
+		List<String> expected = new CompositeRenderer()
+				.add(new PlainTextVisitor(), new ContextWithStringBuilder())
+				.add(new PlainTextVisitor(), new TruncatingContext(20, "..."))
+				.render(second);
+		assertThat(outputs).isEqualTo(expected);
+		assertThat(outputs.get(1)).isEqualTo(outputs.get(0).substring(0, 20) + "...");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRenderTwice_appendable() throws Exception
+	{
+		Block document = FormattedTextExamples.buildFragments();
+
+		CompositeRenderer renderer = new CompositeRenderer()
+				.add(new PlainTextVisitor(), new ContextWithAppendable(new StringBuilder()));
+		renderer.render(document);
+		// An Appendable cannot be cleared
+		renderer.render(document);
+	}
+}
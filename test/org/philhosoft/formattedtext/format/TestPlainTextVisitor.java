@@ -75,4 +75,21 @@ public class TestPlainTextVisitor
 				"}\n" +
 				"Boring plain text and emphasized text and even deleted text fixed width text.\n");
 	}
+
+	@Test
+	public void testTruncated() throws Exception
+	{
+		Block document = FormattedTextExamples.buildFragments();
+
+		PlainTextVisitor visitor = new PlainTextVisitor();
+		TruncatingContext ctx = new TruncatingContext(50);
+		document.accept(visitor, ctx);
+
+//		System.out.println(ctx.asString());
+		assertThat(ctx.isComplete()).isTrue();
+		assertThat(ctx.getRemaining()).isZero();
+		assertThat(ctx.asString()).isEqualTo(
+				"Start of text with emphasis inside.\n" +
+				"Strong init, f");
+	}
 }
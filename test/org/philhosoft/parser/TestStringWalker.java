@@ -219,6 +219,7 @@ public class TestStringWalker
 
 		assertThat(walker.match('e', 'e')).isFalse();
 		assertThat(walker.match("en")).isFalse();
+		assertThat(walker.position()).isEqualTo(3);
 
 		walker.forward();
 
@@ -229,6 +230,7 @@ public class TestStringWalker
 		assertThat(walker.previous()).isEqualTo('e');
 		assertThat(walker.current()).isEqualTo('\r');
 		assertThat(walker.next()).isEqualTo('B');
+		assertThat(walker.position()).isEqualTo(4);
 
 		walker.forward();
 
@@ -239,6 +241,11 @@ public class TestStringWalker
 		assertThat(walker.previous()).isEqualTo('\r');
 		assertThat(walker.current()).isEqualTo('B');
 		assertThat(walker.next()).isEqualTo('r');
+		assertThat(walker.position()).isEqualTo(6);
+
+		walker.goToNextLine();
+
+		assertThat(walker.position()).isEqualTo(s.length());
 	}
 
 	@Test
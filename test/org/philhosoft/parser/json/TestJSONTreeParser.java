@@ -0,0 +1,147 @@
+package org.philhosoft.parser.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.DecoratedFragment;
+import org.philhosoft.formattedtext.ast.FragmentDecoration;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.LinkFragment;
+import org.philhosoft.formattedtext.format.ContextWithAppendable;
+import org.philhosoft.formattedtext.format.ContextWithStringBuilder;
+import org.philhosoft.formattedtext.format.JSONVisitor;
+import org.philhosoft.parser.StringWalker;
+import org.philhosoft.parser.plainmark.BlockParser;
+import org.philhosoft.parser.plainmark.TestPlainMark;
+
+
+public class TestJSONTreeParser
+{
+	@Test
+	public void testExport() throws Exception
+	{
+		Block document = BlockParser.parse(new StringWalker("# Title\nSome *strong* text with http://example.com\n\n- item"));
+
+		String json = toJSON(document);
+
+//		System.out.println(json);
+		assertThat(json).isEqualTo("[\"d\"," +
+				"[\"t1\",[\"l\",\"Title\"]]," +
+				"[\"p\",[\"l\",\"Some \",[\"s\",\"strong\"],\" text with \",[\"a\",\"http://example.com\",\"example.com\"]]]," +
+				"[\"u\",[\"b\",[\"l\",\"item\"]]]]");
+		assertThat(JSONTreeParser.parse(json)).isEqualTo(document);
+	}
+
+	@Test
+	public void testEscapes() throws Exception
+	{
+		Line line = new Line("Quote \" backslash \\ tab \t control \u0001 separator \u2028 accent \u00E9");
+		LinkFragment link = new LinkFragment("link", "http://example.com/?q=\"x\"");
+		line.add(link);
+		DecoratedFragment code = new DecoratedFragment(FragmentDecoration.CODE, "a\nb");
+		line.add(code);
+
+		String json = toJSON(line);
+
+		assertThat(json).isEqualTo("[\"l\",\"Quote \\\" backslash \\\\ tab \\t control \\u0001 separator \\u2028 accent \u00E9\"," +
+				"[\"a\",\"http://example.com/?q=\\\"x\\\"\",\"link\"],[\"c\",\"a\\nb\"]]");
+		assertThat(JSONTreeParser.parse(json)).isEqualTo(line);
+	}
+
+	@Test
+	public void testParseWhitespaceAndEscapes() throws Exception
+	{
+		Block block = JSONTreeParser.parse(" [ \"l\" ,\n\t\"a\\/b \\u00e9\\r\" , [ \"e\" ] ] ");
+
+		Line expected = new Line("a/b \u00E9\r");
+		expected.add(new DecoratedFragment(FragmentDecoration.EMPHASIS));
+		assertThat(block).isEqualTo(expected);
+	}
+
+	@Test
+	public void testParseErrors() throws Exception
+	{
+		assertError("", "position 0: expected '['");
+		assertError("[\"l\"", "position 4: expected ',' or ']'");
+		assertError("[\"z\"]", "position 4: expected block code");
+		assertError("[\"p\",[\"l\",[\"z\"]]]", "expected fragment code");
+		assertError("[\"l\",[\"a\"]]", "expected link URL");
+		assertError("[\"l\",\"abc]", "expected '\"'");
+		assertError("[\"l\",\"\\q\"]", "position 7: expected escape sequence");
+		assertError("[\"l\",\"\\u00\"]", "expected unicode escape");
+		assertError("[\"l\",\"\\u+041\"]", "expected unicode escape");
+		assertError("[\"l\",\"\\u-001\"]", "expected unicode escape");
+		assertError("[\"l\",\"\\u\uFF10041\"]", "expected unicode escape");
+		assertError("[\"l\"] x", "position 6: expected end of input");
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(Paths.get(TestPlainMark.TEST_FILE + ".txt"));
+		String markedText = new String(bytes, StandardCharsets.UTF_8);
+		Block document = BlockParser.parse(new StringWalker(markedText));
+
+		// Streamed to an output stream
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		document.accept(new JSONVisitor(), new ContextWithAppendable(writer));
+		writer.flush();
+		String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+		assertThat(json).isEqualTo(toJSON(document));
+		assertThat(JSONTreeParser.parse(json)).isEqualTo(document);
+	}
+
+	@Test
+	public void testParseStrings() throws Exception
+	{
+		assertThat(JSONTreeParser.parseStrings("[]")).isEmpty();
+		assertThat(JSONTreeParser.parseStrings(" [ \"*Some* text\" , \"Line\\nbreak \\u00e9\" ] "))
+				.containsExactly("*Some* text", "Line\nbreak \u00e9");
+		String quoted = JSONVisitor.quote("Quote \" and \\ \t\u2028");
+		assertThat(JSONTreeParser.parseStrings("[" + quoted + "]")).containsExactly("Quote \" and \\ \t\u2028");
+
+		try
+		{
+			JSONTreeParser.parseStrings("[\"a\", 1]");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e.getMessage()).contains("position 6: expected '\"'");
+			return;
+		}
+		throw new AssertionError("No error for a number");
+	}
+
+	private static String toJSON(Block block)
+	{
+		ContextWithStringBuilder ctx = new ContextWithStringBuilder();
+		block.accept(new JSONVisitor(), ctx);
+		return ctx.asString();
+	}
+
+	private static void assertError(String json, String message)
+	{
+		try
+		{
+			JSONTreeParser.parse(json);
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e.getMessage()).contains(message);
+			return;
+		}
+		throw new AssertionError("No error for " + json);
+	}
+}
@@ -0,0 +1,66 @@
+package org.philhosoft.parser.plainmark;
+
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * Measures the bytes allocated by the current thread to run a task, with the HotSpot extension of ThreadMXBean.
+ * <p>
+ * The task is run first enough times for the JIT to compile it (escape analysis removes some allocations), or for a second
+ * for big tasks,
+ * then the result is the lowest average of several rounds, to ignore the rounds disturbed by the JIT or by class loading.
+ */
+public class AllocationMeter
+{
+	private static final int WARM_UP_RUNS = 5000;
+	private static final long MAX_WARM_UP_NANOS = 1000000000L;
+	private static final int ROUNDS = 5;
+	private static final int RUNS_PER_ROUND = 200;
+
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	public AllocationMeter()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		threadBean = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+		if (isSupported() && !threadBean.isThreadAllocatedMemoryEnabled())
+		{
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	/**
+	 * False if the JVM cannot measure the allocations per thread.
+	 */
+	public boolean isSupported()
+	{
+		return threadBean != null && threadBean.isThreadAllocatedMemorySupported();
+	}
+
+	/**
+	 * Returns the number of bytes allocated by one run of the given task.
+	 */
+	public long measure(Runnable task)
+	{
+		if (!isSupported())
+			throw new IllegalStateException("Allocated memory per thread is not supported by this JVM");
+		long threadId = Thread.currentThread().getId();
+		long warmUpStart = System.nanoTime();
+		for (int i = 0; i < WARM_UP_RUNS && System.nanoTime() - warmUpStart < MAX_WARM_UP_NANOS; i++)
+		{
+			task.run();
+		}
+		long min = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++)
+		{
+			long before = threadBean.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < RUNS_PER_ROUND; i++)
+			{
+				task.run();
+			}
+			long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+			min = Math.min(min, allocated / RUNS_PER_ROUND);
+		}
+		return min;
+	}
+}
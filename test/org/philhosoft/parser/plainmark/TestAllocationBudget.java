@@ -0,0 +1,192 @@
+package org.philhosoft.parser.plainmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.MarkupVisitor;
+import org.philhosoft.formattedtext.format.ContextWithStringBuilder;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.formattedtext.format.VisitorContext;
+
+
+/**
+ * Checks the bytes allocated per conversion of fixed inputs against a budget per scenario, to catch allocation regressions.
+ * <p>
+ * The budgets are the measures when recorded, plus a margin for the variations between JVMs.
+ * When an optimization lowers the allocations, lower the budget too, so it is kept.
+ * To record them again, uncomment the println in {@link #checkBudgets(String, Map)}.
+ * Skipped on JVMs without compressed oops (eg. big heaps), where the references take twice the memory.
+ */
+public class TestAllocationBudget
+{
+	private static final double MARGIN = 1.25;
+
+	private static final String COMMENT = "Thanks, that fixed it!\nI'd still *prefer* a proper _fix_ in the next release.";
+	private static final String LINKS = "See [the *documentation*](https://docs.example.org/guide/index.html), " +
+			"https://example.com/issues/101 and http://www.example.com/a/very/long/path/to/a/resource/page.html\n" +
+			"- [FAQ](https://example.org/faq)\n- https://example.org/downloads?sort=date&order=desc";
+	private static final String CODE = "The fix:\n```\nint index = position + offset;\nreturn index < length ? " +
+			"text.charAt(index) : END;\n```\nBefore, `charAt()` threw on `index == length`.";
+
+	private static final Map<String, String> INPUTS = new LinkedHashMap<String, String>();
+
+	// Bytes per conversion, recorded with JDK 17 (compressed oops)
+	private static final Map<String, Long> BUDGETS = new LinkedHashMap<String, Long>();
+	static
+	{
+		BUDGETS.put("parse/comment", 2100L);
+		BUDGETS.put("parse/links", 5400L);
+		BUDGETS.put("parse/code", 3100L);
+		BUDGETS.put("parse/spec", 192000L);
+		BUDGETS.put("html/comment", 1700L);
+		BUDGETS.put("html/links", 7000L);
+		BUDGETS.put("html/code", 2700L);
+		BUDGETS.put("html/spec", 212000L);
+		BUDGETS.put("text/comment", 950L);
+		BUDGETS.put("text/links", 5500L);
+		BUDGETS.put("text/code", 1200L);
+		BUDGETS.put("text/spec", 154000L);
+		BUDGETS.put("convert/comment", 3500L);
+		BUDGETS.put("convert/links", 12100L);
+		BUDGETS.put("convert/code", 5400L);
+		BUDGETS.put("convert/spec", 402000L);
+	}
+
+	private static AllocationMeter meter;
+	private final PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+
+	@BeforeClass
+	public static void setUp() throws IOException
+	{
+		meter = new AllocationMeter();
+		Assume.assumeTrue(meter.isSupported());
+		Assume.assumeTrue(hasCompressedOops());
+
+		INPUTS.put("comment", COMMENT);
+		INPUTS.put("links", LINKS);
+		INPUTS.put("code", CODE);
+		INPUTS.put("spec", new String(Files.readAllBytes(Paths.get("PlainMark - Simple Humane Markup.txt")),
+				StandardCharsets.UTF_8));
+	}
+
+	private static boolean hasCompressedOops()
+	{
+		try
+		{
+			HotSpotDiagnosticMXBean diagnosticBean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			return diagnosticBean != null &&
+					Boolean.parseBoolean(diagnosticBean.getVMOption("UseCompressedOops").getValue());
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Not a HotSpot JVM
+			return false;
+		}
+	}
+
+	@Test
+	public void testParsing()
+	{
+		Map<String, Long> measures = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, String> input : INPUTS.entrySet())
+		{
+			final String text = input.getValue();
+			measures.put(input.getKey(), meter.measure(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					engine.parse(text);
+				}
+			}));
+		}
+		checkBudgets("parse", measures);
+	}
+
+	@Test
+	public void testHTMLRendering()
+	{
+		checkBudgets("html", measureRendering(new HTMLVisitor()));
+	}
+
+	@Test
+	public void testPlainTextRendering()
+	{
+		checkBudgets("text", measureRendering(new PlainTextVisitor()));
+	}
+
+	@Test
+	public void testConversion()
+	{
+		Map<String, Long> measures = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, String> input : INPUTS.entrySet())
+		{
+			final String text = input.getValue();
+			measures.put(input.getKey(), meter.measure(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					engine.convert(text);
+				}
+			}));
+		}
+		checkBudgets("convert", measures);
+	}
+
+	private Map<String, Long> measureRendering(final MarkupVisitor<VisitorContext> visitor)
+	{
+		Map<String, Long> measures = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, String> input : INPUTS.entrySet())
+		{
+			final Block block = engine.parse(input.getValue());
+			measures.put(input.getKey(), meter.measure(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					ContextWithStringBuilder context = new ContextWithStringBuilder();
+					block.accept(visitor, context);
+					context.asString();
+				}
+			}));
+		}
+		return measures;
+	}
+
+	/**
+	 * Checks all the inputs of a scenario, to report all the exceeded budgets at once.
+	 */
+	private static void checkBudgets(String scenario, Map<String, Long> measures)
+	{
+		List<String> exceeded = new ArrayList<String>();
+		for (Map.Entry<String, Long> measure : measures.entrySet())
+		{
+			String key = scenario + "/" + measure.getKey();
+			long budget = BUDGETS.get(key);
+//			System.out.println("		BUDGETS.put(\"" + key + "\", " + Math.round(measure.getValue() * MARGIN) + "L); // " + measure.getValue());
+			if (measure.getValue() > budget)
+			{
+				exceeded.add(key + ": " + measure.getValue() + " bytes for a budget of " + budget);
+			}
+		}
+		assertThat(exceeded).isEmpty();
+	}
+}
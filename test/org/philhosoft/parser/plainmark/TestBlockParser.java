@@ -701,6 +701,64 @@ public class TestBlockParser
 		assertThat(result).isEqualTo(expected);
 	}
 
+	@Test
+	public void testMaxTextLength()
+	{
+		StringWalker walker = new StringWalker("First line\nSecond line\n\nOther paragraph\nLast line");
+
+		Block result = BlockParser.parse(walker, new ParsingParameters().compile(), 15);
+
+		// Stops at the end of the line where the limit is exceeded
+		TypedBlock expected = new TypedBlock(BlockType.DOCUMENT);
+		expected.add(createParagraph("First line", "Second line"));
+		assertThat(result).isEqualTo(expected);
+		assertThat(walker.hasMore()).isTrue();
+	}
+
+	@Test
+	public void testMaxTextLength_inCodeBlock()
+	{
+		StringWalker walker = new StringWalker("```\nCode\nMore code\n```\nLast line");
+
+		Block result = BlockParser.parse(walker, new ParsingParameters().compile(), 5);
+
+		TypedBlock expected = new TypedBlock(BlockType.DOCUMENT);
+		TypedBlock code = new TypedBlock(BlockType.CODE);
+		code.add("Code");
+		code.add("More code");
+		expected.add(code);
+		assertThat(result).isEqualTo(expected);
+	}
+
+	@Test
+	public void testMaxTextLength_notReached()
+	{
+		String text = "# Title\nSome *strong* text\n- Item";
+
+		Block result = BlockParser.parse(new StringWalker(text), new ParsingParameters().compile(), 100);
+
+		assertThat(result).isEqualTo(BlockParser.parse(new StringWalker(text)));
+	}
+
+	@Test
+	public void testNextBlock()
+	{
+		String text = "# Title\nSome *strong* text\n- Item\n- Other\n\n```\nCode\n\n```\nLast\n\n\n";
+		Block document = BlockParser.parse(new StringWalker(text));
+
+		BlockParser parser = BlockParser.start(new StringWalker(text), new ParsingParameters().compile());
+		TypedBlock result = new TypedBlock(BlockType.DOCUMENT);
+		for (Block block = parser.nextBlock(); block != null; block = parser.nextBlock())
+		{
+			result.add(block);
+		}
+		assertThat(result).isEqualTo(document);
+		assertThat(result.getBlocks()).hasSize(5);
+		assertThat(parser.nextBlock()).isNull();
+
+		assertThat(BlockParser.start(new StringWalker(""), new ParsingParameters().compile()).nextBlock()).isNull();
+	}
+
 	private TypedBlock createParagraph(String... texts)
 	{
 		TypedBlock block = new TypedBlock(BlockType.PARAGRAPH);
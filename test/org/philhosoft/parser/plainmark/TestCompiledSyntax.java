@@ -0,0 +1,90 @@
+package org.philhosoft.parser.plainmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.FragmentDecoration;
+import org.philhosoft.parser.StringWalker;
+
+
+public class TestCompiledSyntax
+{
+	@Test
+	public void testSameAsParameters() throws Exception
+	{
+		ParsingParameters parameters = new ParsingParameters();
+		CompiledSyntax syntax = parameters.compile();
+
+		for (int i = 0; i <= Character.MAX_VALUE; i++)
+		{
+			char c = (char) i;
+			assertThat(syntax.getFragmentDecoration(c)).isEqualTo(parameters.getFragmentDecoration(c));
+			assertThat(syntax.isValidURLChar(c)).isEqualTo(parameters.isValidURLChar(c));
+			assertThat(syntax.isOrderedListSuffix(c)).isEqualTo(parameters.isOrderedListSuffix(c));
+		}
+		for (String sign : parameters.getBlockTypeSigns())
+		{
+			assertThat(syntax.getBlockType(sign)).isEqualTo(parameters.getBlockType(sign));
+		}
+		assertThat(syntax.getBlockType("####")).isNull();
+		assertThat(syntax.getBlockType("")).isNull();
+		assertThat(syntax.getEscapeSign()).isEqualTo(parameters.getEscapeSign());
+		assertThat(syntax.getCodeBlockSign()).isEqualTo(parameters.getCodeBlockSign());
+		assertThat(syntax.getEllipsis()).isEqualTo(parameters.getEllipsis());
+	}
+
+	@Test
+	public void testMatchBlockSign() throws Exception
+	{
+		CompiledSyntax syntax = new ParsingParameters().compile();
+
+		assertThat(syntax.matchBlockSign(new StringWalker("# Title"), 0)).isEqualTo("#");
+		assertThat(syntax.matchBlockSign(new StringWalker("##\tTitle"), 0)).isEqualTo("##");
+		assertThat(syntax.matchBlockSign(new StringWalker("~### Title"), 1)).isEqualTo("###");
+		assertThat(syntax.matchBlockSign(new StringWalker("#### Title"), 0)).isNull();
+		assertThat(syntax.matchBlockSign(new StringWalker("#Title"), 0)).isNull();
+		assertThat(syntax.matchBlockSign(new StringWalker("+ Item"), 0)).isEqualTo("+");
+		assertThat(syntax.matchBlockSign(new StringWalker("-"), 0)).isNull();
+		assertThat(syntax.matchBlockSign(new StringWalker(""), 0)).isNull();
+	}
+
+	@Test
+	public void testMatchURLPrefix() throws Exception
+	{
+		ParsingParameters parameters = new ParsingParameters();
+		parameters.setUrlPrefixes(Arrays.asList("https://", "http://", "http", ""));
+		CompiledSyntax syntax = parameters.compile();
+
+		assertThat(syntax.matchURLPrefix(new StringWalker("https://example.com"))).isEqualTo("https://");
+		assertThat(syntax.matchURLPrefix(new StringWalker("http://example.com"))).isEqualTo("http://");
+		assertThat(syntax.matchURLPrefix(new StringWalker("http:example"))).isEqualTo("http");
+		assertThat(syntax.matchURLPrefix(new StringWalker("ftp://example.com"))).isNull();
+		assertThat(syntax.matchURLPrefix(new StringWalker(""))).isNull();
+
+		// The first in the list wins
+		parameters.setUrlPrefixes(Arrays.asList("http", "http://"));
+		syntax = parameters.compile();
+		assertThat(syntax.matchURLPrefix(new StringWalker("http://example.com"))).isEqualTo("http");
+	}
+
+	@Test
+	public void testSnapshot() throws Exception
+	{
+		ParsingParameters parameters = new ParsingParameters();
+		CompiledSyntax syntax = parameters.compile();
+
+		parameters.setEscapeSign('\\');
+		parameters.setMaxLinkLength(5);
+		parameters.getUrlPrefixes().clear();
+
+		assertThat(syntax.getEscapeSign()).isEqualTo('~');
+		assertThat(syntax.getMaxLinkLength()).isEqualTo(30);
+		assertThat(syntax.matchURLPrefix(new StringWalker("http://example.com"))).isEqualTo("http://");
+		assertThat(syntax.getFragmentDecoration('*')).isEqualTo(FragmentDecoration.STRONG);
+		assertThat(syntax.getBlockType("#")).isEqualTo(BlockType.TITLE1);
+	}
+}
@@ -571,7 +571,7 @@ public class TestFragmentParser
 		ParsingParameters parsingParameters = new ParsingParameters();
 		parsingParameters.setMaxLinkLength(0);
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -602,7 +602,7 @@ public class TestFragmentParser
 		ParsingParameters parsingParameters = new ParsingParameters();
 		parsingParameters.setMaxLinkLength(36);
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -617,7 +617,7 @@ public class TestFragmentParser
 		ParsingParameters parsingParameters = new ParsingParameters();
 		parsingParameters.setMaxLinkLength(20);
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -633,7 +633,7 @@ public class TestFragmentParser
 		ParsingParameters parsingParameters = new ParsingParameters();
 		parsingParameters.setLinkEllipsisPlacement(LinkEllipsisPlacement.START);
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -653,7 +653,7 @@ public class TestFragmentParser
 		parsingParameters.setLinkEllipsisPlacement(LinkEllipsisPlacement.START);
 		parsingParameters.setEllipsis("[...]");
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -669,7 +669,7 @@ public class TestFragmentParser
 		parsingParameters.setMaxLinkLength(20);
 		parsingParameters.setLinkEllipsisPlacement(LinkEllipsisPlacement.START);
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -685,7 +685,7 @@ public class TestFragmentParser
 		ParsingParameters parsingParameters = new ParsingParameters();
 		parsingParameters.setLinkEllipsisPlacement(LinkEllipsisPlacement.MIDDLE);
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -704,7 +704,7 @@ public class TestFragmentParser
 		parsingParameters.setMaxLinkLength(35);
 		parsingParameters.setLinkEllipsisPlacement(LinkEllipsisPlacement.MIDDLE);
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -721,7 +721,7 @@ public class TestFragmentParser
 		parsingParameters.setLinkEllipsisPlacement(LinkEllipsisPlacement.MIDDLE);
 		parsingParameters.setEllipsis("...");
 
-		assertThat(FragmentParser.parse(walker, parsingParameters)).isEqualTo(expected);
+		assertThat(FragmentParser.parse(walker, parsingParameters.compile())).isEqualTo(expected);
 	}
 
 	@Test
@@ -0,0 +1,193 @@
+package org.philhosoft.parser.plainmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.ast.Fragment;
+import org.philhosoft.formattedtext.ast.Line;
+import org.philhosoft.formattedtext.ast.LinkFragment;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+import org.philhosoft.parser.plainmark.generator.DocumentGenerator;
+import org.philhosoft.parser.plainmark.generator.DocumentGenerator.Shape;
+
+
+public class TestLinkExtractor
+{
+	@Test
+	public void testNoLinks()
+	{
+		assertThat(LinkExtractor.extract("")).isEmpty();
+		assertThat(LinkExtractor.extract("Plain *text* with [brackets] and http:// only")).isEmpty();
+	}
+
+	@Test
+	public void testAutolink()
+	{
+		String text = "See http://www.example.com/a_(b) and https://x.org.";
+		List<ExtractedLink> links = LinkExtractor.extract(text);
+
+		assertThat(links).containsExactly(
+				new ExtractedLink("http://www.example.com/a_(b)", 4, 32, 4, false),
+				new ExtractedLink("https://x.org.", 37, 51, 37, false));
+		assertThat(text.substring(links.get(0).getUrlStart(), links.get(0).getUrlEnd())).isEqualTo(links.get(0).getUrl());
+	}
+
+	@Test
+	public void testExplicitLink()
+	{
+		String text = "A [*nice* link](http://example.com/(x)) here";
+		List<ExtractedLink> links = LinkExtractor.extract(text);
+
+		assertThat(links).containsExactly(new ExtractedLink("http://example.com/(x)", 2, 39, 16, true));
+		assertThat(text.substring(links.get(0).getStart(), links.get(0).getEnd())).isEqualTo("[*nice* link](http://example.com/(x))");
+		assertThat(links.get(0).getUrlEnd()).isEqualTo(38);
+	}
+
+	@Test
+	public void testNestedLinks()
+	{
+		// Outer link first, like in a depth-first walk of the tree
+		List<ExtractedLink> links = LinkExtractor.extract("[a [b](u1) http://c.d ](u2) [e](u3)");
+		assertThat(urls(links)).containsExactly("u2", "u1", "http://c.d", "u3");
+		assertThat(links.get(0).getStart()).isEqualTo(0);
+		assertThat(links.get(1).getStart()).isEqualTo(3);
+	}
+
+	@Test
+	public void testNotLinks()
+	{
+		// Escaped, deactivated by nested brackets, unbalanced URL
+		assertThat(LinkExtractor.extract("~[a](u) [a ~](u)")).isEmpty();
+		assertThat(LinkExtractor.extract("[a] (u) a [ b ]")).isEmpty();
+		// Only the inner link is deactivated
+		assertThat(urls(LinkExtractor.extract("[a [b] c](u)"))).containsExactly("u");
+		assertThat(LinkExtractor.extract("[a](http://x.com y) and")).isEmpty();
+		// The URL walked in the invalid link is not autolinked
+		assertThat(LinkExtractor.extract("[a](http://x.com")).isEmpty();
+		// Only in the text
+		assertThat(LinkExtractor.extract("a](u)")).isEmpty();
+	}
+
+	@Test
+	public void testCode()
+	{
+		assertThat(LinkExtractor.extract("`http://a.b [c](d)` http://e.f")).containsExactly(
+				new ExtractedLink("http://e.f", 20, 30, 20, false));
+		assertThat(urls(LinkExtractor.extract("```\nhttp://a.b\n```\nhttp://c.d\n```\n[e](f)"))).containsExactly("http://c.d");
+	}
+
+	@Test
+	public void testBlocks()
+	{
+		String text = "# [Title](u1)\r\n\r\n- http://a.b\r\n12. [c](u2)\r\n~~[d](u3) ~~[e](u4)";
+		List<ExtractedLink> links = LinkExtractor.extract(text);
+
+		assertThat(urls(links)).containsExactly("u1", "http://a.b", "u2", "u4");
+		for (ExtractedLink link : links)
+		{
+			assertThat(text.substring(link.getUrlStart(), link.getUrlEnd())).isEqualTo(link.getUrl());
+		}
+		assertThat(links.get(1).getStart()).isEqualTo(19);
+	}
+
+	@Test
+	public void testSameAsParsedTree()
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		for (int seed = 0; seed < 50; seed++)
+		{
+			DocumentGenerator generator = new DocumentGenerator.Builder()
+					.setSeed(seed)
+					.setDecorations(seed % 5 / 10.0, seed % 4)
+					.setUrls(seed % 3 / 4.0 + 0.1, 10, 60)
+					.setEscapeFrequency(seed % 3 / 20.0)
+					.setCrlf(seed % 2 == 0)
+					.build();
+			checkSameAsParsedTree(generator.generate(3000), engine);
+			checkSameAsParsedTree(generator.generate(Shape.values()[seed % Shape.values().length], 3000), engine);
+		}
+	}
+
+	@Test
+	public void testSameAsParsedTree_markupSoup()
+	{
+		String[] tokens =
+		{
+			"[", "]", "(", ")", "](", "~", "*", "_", "`", "http://a", "https://b.c/(", "x", "1", " ", " ", "\n", "\r\n",
+			"- ", "# ", "1. ", "```\n", "~- ",
+		};
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		Random random = new Random(0);
+		for (int i = 0; i < 2000; i++)
+		{
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(40);
+			for (int t = 0; t < length; t++)
+			{
+				sb.append(tokens[random.nextInt(tokens.length)]);
+			}
+			checkSameAsParsedTree(sb.toString(), engine);
+		}
+	}
+
+	private static void checkSameAsParsedTree(String text, PlainMarkEngine engine)
+	{
+		List<String> expected = new ArrayList<String>();
+		collectURLs(engine.parse(text), expected);
+		List<ExtractedLink> links = engine.extractLinks(text);
+//		System.out.println(text + "\n" + links);
+		assertThat(urls(links)).as(text).isEqualTo(expected);
+		for (ExtractedLink link : links)
+		{
+			assertThat(text.substring(link.getUrlStart(), link.getUrlEnd())).as(text).isEqualTo(link.getUrl());
+			if (link.isExplicit())
+			{
+				assertThat(text.charAt(link.getStart())).isEqualTo('[');
+				assertThat(text.charAt(link.getEnd() - 1)).isEqualTo(')');
+			}
+		}
+	}
+
+	private static void collectURLs(Block block, List<String> urls)
+	{
+		if (block instanceof TypedBlock)
+		{
+			for (Block child : ((TypedBlock) block).getBlocks())
+			{
+				collectURLs(child, urls);
+			}
+		}
+		else
+		{
+			collectURLs(((Line) block).getFragments(), urls);
+		}
+	}
+
+	private static void collectURLs(List<Fragment> fragments, List<String> urls)
+	{
+		for (Fragment fragment : fragments)
+		{
+			if (fragment instanceof LinkFragment)
+			{
+				urls.add(((LinkFragment) fragment).getUrl());
+			}
+			collectURLs(fragment.getFragments(), urls);
+		}
+	}
+
+	private static List<String> urls(List<ExtractedLink> links)
+	{
+		List<String> urls = new ArrayList<String>();
+		for (ExtractedLink link : links)
+		{
+			urls.add(link.getUrl());
+		}
+		return urls;
+	}
+}
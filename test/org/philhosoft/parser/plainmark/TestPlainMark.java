@@ -1,5 +1,7 @@
 package org.philhosoft.parser.plainmark;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
@@ -19,6 +21,7 @@ import org.philhosoft.formattedtext.ast.BlockType;
 import org.philhosoft.formattedtext.format.HTMLBlockEndVisitor;
 import org.philhosoft.formattedtext.format.HTMLBlockStartVisitor;
 import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
 import org.philhosoft.formattedtext.format.VisitorContext;
 
 
@@ -112,6 +115,58 @@ public class TestPlainMark
 		}
 	}
 
+	@Test
+	public void testConvertTruncated_html()
+	{
+		PlainMark pm = new PlainMark().setVisitor(new HTMLVisitor());
+		String text = "# Title\nSome *strong _and emphasized_ text* here\n* item one\n* item _two_\n\nLast paragraph";
+
+		assertThat(pm.convert(text, 25)).isEqualTo(
+				"<div>\n" +
+				"<h4>Title</h4>\n" +
+				"<p>Some <strong>strong <em>and emph…</em></strong></p>\n" +
+				"\n</div>\n");
+		assertThat(pm.convert(text, 1000)).isEqualTo(pm.convert(text));
+	}
+
+	@Test
+	public void testConvertTruncated_plainText()
+	{
+		ParsingParameters parameters = new ParsingParameters();
+		parameters.setEllipsis("...");
+		PlainMark pm = new PlainMark().setVisitor(new PlainTextVisitor()).setParsingParameters(parameters);
+		String text = "First [link](http://www.example.com) and\n- list item";
+
+		assertThat(pm.convert(text, 8)).isEqualTo("First li...");
+		assertThat(pm.convert(text, 0)).isEqualTo("...");
+	}
+
+	@Test
+	public void testConvertTruncated_exactLength()
+	{
+		PlainMark pm = new PlainMark().setVisitor(new HTMLVisitor());
+
+		// Ellipsis only if there is more text
+		assertThat(pm.convert("Two\nLines", 3)).isEqualTo("<div>\n<p>Two<br>\n…</p>\n\n</div>\n");
+		assertThat(pm.convert("One", 3)).isEqualTo("<div>\n<p>One</p>\n\n</div>\n");
+	}
+
+	@Test
+	public void testParametersCompiledOnce()
+	{
+		ParsingParameters parameters = new ParsingParameters();
+		parameters.setEllipsis("...");
+		PlainMark pm = new PlainMark().setVisitor(new PlainTextVisitor()).setParsingParameters(parameters);
+		String text = "Some text";
+
+		assertThat(pm.convert(text, 4)).isEqualTo("Some...");
+		// Ignored until set again
+		parameters.setEllipsis("~");
+		assertThat(pm.convert(text, 4)).isEqualTo("Some...");
+		pm.setParsingParameters(parameters);
+		assertThat(pm.convert(text, 4)).isEqualTo("Some~");
+	}
+
 	private String readFile(Path path) throws IOException
 	{
 		List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
@@ -0,0 +1,235 @@
+package org.philhosoft.parser.plainmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+
+
+public class TestPlainMarkEngine
+{
+	private static final int THREAD_NB = 32;
+	private static final int ITERATION_NB = 50;
+
+	@Test
+	public void testConvert() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+
+		assertThat(engine.convert("# Title\nSome *strong* text")).isEqualTo(PlainMark.convertToHTML("# Title\nSome *strong* text"));
+		assertThat(engine.convert("Some *strong* text", 7)).isEqualTo("<div>\n<p>Some <strong>st…</strong></p>\n\n</div>\n");
+	}
+
+	@Test
+	public void testParametersSnapshot() throws Exception
+	{
+		ParsingParameters parameters = new ParsingParameters();
+		parameters.setMaxLinkLength(10);
+		PlainMarkEngine engine = new PlainMarkEngine.Builder()
+				.setParsingParameters(parameters)
+				.setVisitor(new PlainTextVisitor())
+				.build();
+		String text = "See http://www.example.com/some/page";
+		String before = engine.convert(text);
+
+		parameters.setMaxLinkLength(0);
+		parameters.getUrlPrefixes().clear();
+
+		assertThat(engine.convert(text)).isEqualTo(before);
+		assertThat(before).isEqualTo("See www.exampl… - http://www.example.com/some/page\n");
+	}
+
+	@Test
+	public void testMonitor() throws Exception
+	{
+		final List<ConversionStats> statsList = new ArrayList<ConversionStats>();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(new ConversionMonitor()
+		{
+			@Override
+			public boolean isEnabled()
+			{
+				return true;
+			}
+
+			@Override
+			public void conversionStarted(ConversionStats stats)
+			{
+				stats.setAttachment("started");
+			}
+
+			@Override
+			public void parsingDone(ConversionStats stats)
+			{
+				assertThat(stats.getLineCount()).isPositive();
+				assertThat(stats.getOutputLength()).isZero();
+			}
+
+			@Override
+			public void conversionDone(ConversionStats stats)
+			{
+				statsList.add(stats);
+			}
+
+			@Override
+			public void cacheLookup(boolean hit)
+			{
+			}
+		}).build();
+		String text = "# Title\nSome *strong* text\n- One";
+
+		String output = engine.convert(text);
+		assertThat(output).isEqualTo(PlainMark.convertToHTML(text));
+		assertThat(engine.convert(text, 7)).isEqualTo(new PlainMarkEngine.Builder().build().convert(text, 7));
+
+		assertThat(statsList).hasSize(2);
+		ConversionStats stats = statsList.get(0);
+//		System.out.println(stats);
+		assertThat(stats.getInputLength()).isEqualTo(text.length());
+		assertThat(stats.getOutputLength()).isEqualTo(output.length());
+		assertThat(stats.getBlockCount()).isEqualTo(5); // Document, title, paragraph, list, item
+		assertThat(stats.getLineCount()).isEqualTo(3);
+		assertThat(stats.getFragmentCount()).isEqualTo(6);
+		assertThat(stats.getMaxFragmentDepth()).isEqualTo(2);
+		assertThat(stats.getEngineFingerprint()).isEqualTo(engine.getFingerprint());
+		assertThat(stats.getAttachment()).isEqualTo("started");
+		assertThat(stats.getBlockParsingNanos()).isGreaterThanOrEqualTo(0);
+		assertThat(stats.getFragmentParsingNanos()).isPositive();
+		assertThat(stats.getRenderingNanos()).isPositive();
+		assertThat(stats.getTotalNanos()).isEqualTo(
+				stats.getBlockParsingNanos() + stats.getFragmentParsingNanos() + stats.getRenderingNanos());
+		// Truncated: parsing stops after the title and the first line
+		assertThat(statsList.get(1).getLineCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void testMonitorDisabled() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(new ConversionMonitor()
+		{
+			@Override
+			public boolean isEnabled()
+			{
+				return false;
+			}
+
+			@Override
+			public void conversionStarted(ConversionStats stats)
+			{
+				throw new AssertionError("Not enabled");
+			}
+
+			@Override
+			public void parsingDone(ConversionStats stats)
+			{
+				throw new AssertionError("Not enabled");
+			}
+
+			@Override
+			public void conversionDone(ConversionStats stats)
+			{
+				throw new AssertionError("Not enabled");
+			}
+
+			@Override
+			public void cacheLookup(boolean hit)
+			{
+			}
+		}).build();
+
+		assertThat(engine.convert("Some *text*")).isEqualTo(PlainMark.convertToHTML("Some *text*"));
+		assertThat(engine.convert("Some *text*", 4)).isEqualTo(new PlainMarkEngine.Builder().build().convert("Some *text*", 4));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNoVisitor() throws Exception
+	{
+		new PlainMarkEngine.Builder().setVisitor(null).build();
+	}
+
+	@Test
+	public void testSharedEngine() throws Exception
+	{
+		final List<String> texts = new ArrayList<String>();
+		texts.add(readSpecification());
+		texts.add("# Title\n\n* Item *strong* _emphasis_\n* Item http://example.com/~x~\n\n```\ncode\n```\n");
+		texts.add("Some [link _text_](http://example.com) and `code`\n1. One\n2. Two\n");
+		texts.add("~*Not strong~* -deleted- and a long URL: https://www.example.com/some/long/path?query=value");
+
+		final PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		final List<String> expected = new ArrayList<String>();
+		final List<String> expectedExcerpts = new ArrayList<String>();
+		for (String text : texts)
+		{
+			expected.add(engine.convert(text));
+			expectedExcerpts.add(engine.convert(text, 20));
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_NB);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < THREAD_NB; t++)
+		{
+			final int offset = t;
+			results.add(executor.submit(new Callable<Integer>()
+			{
+				@Override
+				public Integer call() throws Exception
+				{
+					start.await();
+					int errorNb = 0;
+					for (int i = 0; i < ITERATION_NB; i++)
+					{
+						// Building parameters and engines concurrently must be safe too
+						PlainMarkEngine localEngine = new PlainMarkEngine.Builder()
+								.setParsingParameters(new ParsingParameters())
+								.build();
+						int index = (offset + i) % texts.size();
+						String text = texts.get(index);
+						if (!engine.convert(text).equals(expected.get(index)))
+						{
+							errorNb++;
+						}
+						if (!engine.convert(text, 20).equals(expectedExcerpts.get(index)))
+						{
+							errorNb++;
+						}
+						if (!localEngine.convert(text).equals(expected.get(index)))
+						{
+							errorNb++;
+						}
+					}
+					return errorNb;
+				}
+			}));
+		}
+		start.countDown();
+
+		int errorNb = 0;
+		for (Future<Integer> result : results)
+		{
+			errorNb += result.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		assertThat(errorNb).isEqualTo(0);
+	}
+
+	private static String readSpecification() throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(Paths.get(TestPlainMark.TEST_FILE + ".txt"));
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,103 @@
+package org.philhosoft.parser.plainmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.Block;
+import org.philhosoft.formattedtext.format.ContextWithAppendable;
+import org.philhosoft.parser.StringWalker;
+
+
+public class TestPlainMarkVisitor
+{
+	@Test
+	public void testBlocks()
+	{
+		assertThat(PlainMark.convertToPlainMark("")).isEqualTo("");
+		assertThat(PlainMark.convertToPlainMark("  Indented\nLines")).isEqualTo("Indented\nLines\n");
+		assertThat(PlainMark.convertToPlainMark("First\n\n\n\nSecond")).isEqualTo("First\n\nSecond\n");
+		assertThat(PlainMark.convertToPlainMark("#  Title\n## Sub-title\n\n## Other")).isEqualTo("# Title\n## Sub-title\n\n## Other\n");
+		assertThat(PlainMark.convertToPlainMark("Text\n* One\n+ Two\n\n- Three\n5. Four\n9. Five\nEnd")).isEqualTo(
+				"Text\n- One\n- Two\n\n- Three\n1. Four\n1. Five\nEnd\n");
+		assertThat(PlainMark.convertToPlainMark("```\n  *code*  ~\n\n```\nText")).isEqualTo("```\n  *code*  ~\n\n```\nText\n");
+	}
+
+	@Test
+	public void testEscapes()
+	{
+		assertThat(PlainMark.convertToPlainMark("well-known, a - b, 2*3, snake_case, ~x")).isEqualTo("well-known, a - b, 2*3, snake_case, ~x\n");
+		assertThat(PlainMark.convertToPlainMark("~*not strong~* ~[brackets~] a~~")).isEqualTo("~*not strong~* ~[brackets~] a~~\n");
+		assertThat(PlainMark.convertToPlainMark("Unterminated *strong")).isEqualTo("Unterminated ~*strong\n");
+		assertThat(PlainMark.convertToPlainMark("`a ~` b~~` and ~~")).isEqualTo("`a ~` b~~` and ~~\n");
+		// Escapes at start of line
+		assertThat(PlainMark.convertToPlainMark("~# Not a title\n~- Not an item\n~12. Not an item")).isEqualTo(
+				"~# Not a title\n~- Not an item\n~12. Not an item\n");
+		assertThat(PlainMark.convertToPlainMark("~~# Tilde\n~~~- Tilde")).isEqualTo("~~# Tilde\n~~~~- Tilde\n");
+	}
+
+	@Test
+	public void testLinks()
+	{
+		assertThat(PlainMark.convertToPlainMark("See http://www.example.com/foo(bar), or [*this*](http://x.com/a).")).isEqualTo(
+				"See http://www.example.com/foo(bar), or [*this*](http://x.com/a).\n");
+		// Explicit links equivalent to autolinks are simplified, unless followed by a valid URL char
+		assertThat(PlainMark.convertToPlainMark("[www.example.com](http://www.example.com) [www.example.com](http://www.example.com)!")).isEqualTo(
+				"http://www.example.com [www.example.com](http://www.example.com)!\n");
+		// Shortened link text
+		String longURL = "http://www.example.com/some/long/path/to/a/page.html";
+		assertThat(PlainMark.convertToPlainMark(longURL)).isEqualTo(longURL + "\n");
+	}
+
+	@Test
+	public void testRoundTrip_autolinks()
+	{
+		// Autolinks are found after any character, and can end with unclosed parentheses or before an unmatched one
+		// The URL of an invalid link is text, not autolinked
+		String[] texts =
+		{
+			"ahttp://x(", "ahttp://x( b", "a *bhttp://x(* c", "[ahttp://x(](u)", "1http://x.com/(a)(b", "_http://x(_ and http://y.org",
+			"http://http://a)", "(http://x.com/(a))", "[](http://a", "[*a*](http://x y", "[[](http://a", "[[[](](http://a ]]()",
+		};
+		for (String text : texts)
+		{
+			String canonical = PlainMark.convertToPlainMark(text);
+//			System.out.println(text + " -> " + canonical);
+			assertThat(PlainMark.convertToHTML(canonical)).as(text).isEqualTo(PlainMark.convertToHTML(text));
+			assertThat(PlainMark.convertToPlainMark(canonical)).as(text).isEqualTo(canonical);
+		}
+	}
+
+	@Test
+	public void testStreaming()
+	{
+		Block document = BlockParser.parse(new StringWalker("# Title\nSome *strong* text"));
+
+		StringWriter writer = new StringWriter();
+		ContextWithAppendable context = new ContextWithAppendable(writer);
+		document.accept(new PlainMarkVisitor(), context);
+
+		assertThat(writer.toString()).isEqualTo("# Title\nSome *strong* text\n");
+		assertThat(context.asString()).isEqualTo(writer.toString());
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(Paths.get(TestPlainMark.TEST_FILE + ".txt"));
+		String markedText = new String(bytes, StandardCharsets.UTF_8);
+
+		String canonical = PlainMark.convertToPlainMark(markedText);
+
+		// Consecutive text fragments can be merged, so we compare the renderings
+		assertThat(PlainMark.convertToHTML(canonical)).isEqualTo(PlainMark.convertToHTML(markedText));
+		assertThat(PlainMark.convertToPlainMark(canonical)).isEqualTo(canonical);
+		assertThat(canonical.length()).isLessThan(markedText.length());
+	}
+}
@@ -0,0 +1,160 @@
+package org.philhosoft.parser.plainmark.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.philhosoft.formattedtext.ast.TextFragment;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.batch.BatchReport.Status;
+
+
+public class TestBatchConverter
+{
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path source;
+	private Path target;
+	private PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+
+	@Before
+	public void setUp() throws Exception
+	{
+		source = temporaryFolder.newFolder("source").toPath();
+		target = temporaryFolder.getRoot().toPath().resolve("target");
+		write("first.txt", "# First\nSome *strong* text, in café");
+		write("sub/second.txt", "- One\n- Two");
+		write("sub/deeper/third.txt", "");
+		write("sub/ignored.md", "Not *PlainMark*");
+	}
+
+	@Test
+	public void testConvert() throws Exception
+	{
+		BatchReport report = new BatchConverter(engine, 2).convert(source, target);
+
+		assertThat(report.getCount(Status.CONVERTED)).isEqualTo(3);
+		assertThat(report.getCount(Status.FAILED)).isZero();
+		assertThat(report.getFileResults().get(0).getRelativePath()).isEqualTo("first.txt");
+		assertThat(report.getConvertedSize()).isEqualTo(Files.size(source.resolve("first.txt")) + 11);
+		assertThat(read(target.resolve("first.html"))).isEqualTo(engine.convert("# First\nSome *strong* text, in café"));
+		assertThat(read(target.resolve("sub/second.html"))).isEqualTo(engine.convert("- One\n- Two"));
+		assertThat(read(target.resolve("sub/deeper/third.html"))).isEqualTo(engine.convert(""));
+		assertThat(Files.exists(target.resolve("sub/ignored.html"))).isFalse();
+		assertThat(Files.exists(target.resolve(ConversionManifest.FILE_NAME))).isTrue();
+	}
+
+	@Test
+	public void testSkipUnchanged() throws Exception
+	{
+		new BatchConverter(engine, 2).convert(source, target);
+
+		BatchReport report = new BatchConverter(engine, 2).convert(source, target);
+		assertThat(report.getCount(Status.SKIPPED)).isEqualTo(3);
+		assertThat(report.getConvertedSize()).isZero();
+
+		write("sub/second.txt", "- One\n- Two\n- Three");
+		Files.delete(target.resolve("first.html"));
+		report = new BatchConverter(engine, 2).convert(source, target);
+		assertThat(report.getCount(Status.CONVERTED)).isEqualTo(2);
+		assertThat(report.getCount(Status.SKIPPED)).isEqualTo(1);
+		assertThat(read(target.resolve("sub/second.html"))).isEqualTo(engine.convert("- One\n- Two\n- Three"));
+
+		report = new BatchConverter(engine, 2).setForce(true).convert(source, target);
+		assertThat(report.getCount(Status.CONVERTED)).isEqualTo(3);
+
+		// Another configuration renders differently
+		PlainMarkEngine plainTextEngine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()).build();
+		report = new BatchConverter(plainTextEngine, 2).convert(source, target);
+		assertThat(report.getCount(Status.CONVERTED)).isEqualTo(3);
+		assertThat(read(target.resolve("first.html"))).isEqualTo("First\nSome strong text, in café\n");
+	}
+
+	@Test
+	public void testFailure() throws Exception
+	{
+		PlainMarkEngine failingEngine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor()
+		{
+			@Override
+			public void visit(TextFragment fragment, VisitorContext context)
+			{
+				if (fragment.getText().equals("Two"))
+					throw new IllegalArgumentException("Cannot render Two");
+				super.visit(fragment, context);
+			}
+		}).build();
+
+		BatchReport report = new BatchConverter(failingEngine, 1).convert(source, target);
+
+		assertThat(report.getCount(Status.CONVERTED)).isEqualTo(2);
+		assertThat(report.getCount(Status.FAILED)).isEqualTo(1);
+		assertThat(report.getFileResults().get(2).getRelativePath()).isEqualTo("sub/second.txt");
+		assertThat(report.getFileResults().get(2).getError()).hasMessage("Cannot render Two");
+		// Not recorded in the manifest: retried
+		report = new BatchConverter(failingEngine, 1).convert(source, target);
+		assertThat(report.getCount(Status.SKIPPED)).isEqualTo(2);
+		assertThat(report.getCount(Status.FAILED)).isEqualTo(1);
+	}
+
+	@Test
+	public void testTargetInSource() throws Exception
+	{
+		Path nestedTarget = source.resolve("html");
+
+		new BatchConverter(engine, 2).convert(source, nestedTarget);
+		write("html/stray.txt", "Not a source");
+		BatchReport report = new BatchConverter(engine, 2).convert(source, nestedTarget);
+
+		assertThat(report.getFileResults()).hasSize(3);
+		assertThat(report.getCount(Status.SKIPPED)).isEqualTo(3);
+	}
+
+	@Test
+	public void testCommandLine() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+		int exitCode = BatchConverter.run(new String[] { "-j", "3", "-v", source.toString(), target.toString() },
+				new PrintStream(out, true), new PrintStream(err, true));
+
+		assertThat(exitCode).isZero();
+		String output = out.toString();
+//		System.out.println(output);
+		assertThat(output).contains("CONVERTED").contains("sub/second.txt").contains("MB/s")
+				.contains("3 converted, 0 skipped, 0 failed");
+		assertThat(err.size()).isZero();
+
+		assertThat(BatchConverter.run(new String[] { "-j", "0", source.toString(), target.toString() },
+				new PrintStream(out, true), new PrintStream(err, true))).isEqualTo(2);
+		assertThat(BatchConverter.run(new String[] { source.toString() },
+				new PrintStream(out, true), new PrintStream(err, true))).isEqualTo(2);
+		assertThat(err.toString()).startsWith("Usage:");
+	}
+
+	private void write(String path, String content) throws IOException
+	{
+		Path file = source.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(Path file) throws IOException
+	{
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,73 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Replays a Zipfian trace of requests (a few very popular texts, a long tail of rare ones)
+ * on caches with and without frequency admission, comparing their hit rates.
+ * <p>
+ * The CacheSimulation of the benchmark module reports these hit rates, for other capacities and skews too.
+ */
+public class TestCacheSimulation
+{
+	private static final int ITEM_NB = 50000;
+	private static final int REQUEST_NB = 300000;
+	private static final double ZIPF_EXPONENT = 0.9;
+	private static final String OUTPUT = new String(new char[200]);
+
+	@Test
+	public void testZipfianTrace() throws Exception
+	{
+		int[] trace = makeZipfianTrace(new Random(42));
+		long entryWeight = RenderCache.weigh(OUTPUT);
+
+		for (int capacity : new int[] { 500, 2500 })
+		{
+			double lruHitRate = replay(new RenderCache(entryWeight * capacity, false), trace);
+			double tinyLfuHitRate = replay(new RenderCache(entryWeight * capacity, true), trace);
+
+//			System.out.println(String.format("Capacity %d: LRU %.1f %%, TinyLFU %.1f %%", capacity, lruHitRate * 100, tinyLfuHitRate * 100));
+			assertThat(tinyLfuHitRate).isGreaterThan(lruHitRate);
+		}
+	}
+
+	private static double replay(RenderCache cache, int[] trace)
+	{
+		for (int item : trace)
+		{
+			RenderKey key = new RenderKey(item, item, 0);
+			if (cache.get(key) == null)
+			{
+				cache.put(key, OUTPUT);
+			}
+		}
+		assertThat(cache.getWeight()).isLessThanOrEqualTo(cache.getMaxWeight());
+		return cache.getHitRate();
+	}
+
+	/**
+	 * Makes a trace of item numbers, the probability of item k being proportional to 1 / k^s.
+	 */
+	private static int[] makeZipfianTrace(Random random)
+	{
+		double[] cumulated = new double[ITEM_NB];
+		double sum = 0;
+		for (int k = 0; k < ITEM_NB; k++)
+		{
+			sum += 1 / Math.pow(k + 1, ZIPF_EXPONENT);
+			cumulated[k] = sum;
+		}
+		int[] trace = new int[REQUEST_NB];
+		for (int i = 0; i < REQUEST_NB; i++)
+		{
+			int index = Arrays.binarySearch(cumulated, random.nextDouble() * sum);
+			trace[i] = index >= 0 ? index : -index - 1;
+		}
+		return trace;
+	}
+}
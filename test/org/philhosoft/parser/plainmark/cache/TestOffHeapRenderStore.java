@@ -0,0 +1,150 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+
+public class TestOffHeapRenderStore
+{
+	@Test
+	public void testPutGet() throws Exception
+	{
+		OffHeapRenderStore store = new OffHeapRenderStore(1024, 4096);
+		RenderKey key = RenderKey.of(0, "Café *crème*");
+
+		assertThat(store.get(key)).isNull();
+		assertThat(store.put(key, "<p>Café <strong>crème</strong></p>")).isTrue();
+		assertThat(store.put(key, "<p>Other</p>")).isFalse();
+
+		ByteBuffer buffer = store.get(key);
+		assertThat(buffer.isDirect()).isTrue();
+		assertThat(buffer.isReadOnly()).isTrue();
+		assertThat(buffer.remaining()).isEqualTo("<p>Café <strong>crème</strong></p>".getBytes(StandardCharsets.UTF_8).length);
+		assertThat(store.getString(key)).isEqualTo("<p>Café <strong>crème</strong></p>");
+		assertThat(store.size()).isEqualTo(1);
+		assertThat(store.getSlabCount()).isEqualTo(1);
+	}
+
+	@Test(expected = ReadOnlyBufferException.class)
+	public void testReadOnly() throws Exception
+	{
+		OffHeapRenderStore store = new OffHeapRenderStore(1024, 4096);
+		RenderKey key = RenderKey.of(0, "text");
+		store.put(key, "output");
+
+		store.get(key).put((byte) 'x');
+	}
+
+	@Test
+	public void testTooBig() throws Exception
+	{
+		OffHeapRenderStore store = new OffHeapRenderStore(16, 64);
+
+		assertThat(store.put(RenderKey.of(0, "text"), "An output longer than a slab")).isFalse();
+		assertThat(store.size()).isEqualTo(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoHeadroom() throws Exception
+	{
+		new OffHeapRenderStore(1000, 1999);
+	}
+
+	@Test
+	public void testEviction() throws Exception
+	{
+		// 4 slabs of 10 outputs of 100 bytes, and one of headroom
+		OffHeapRenderStore store = new OffHeapRenderStore(1000, 5000);
+		for (int i = 0; i < 40; i++)
+		{
+			assertThat(store.put(key(i), output(i))).isTrue();
+		}
+		assertThat(store.getSlabCount()).isEqualTo(4);
+		assertThat(store.getEvictionCount()).isEqualTo(0);
+
+		store.put(key(40), output(40));
+
+		// Full slabs: the first one has been reclaimed, its outputs dropped
+		assertThat(store.getSlabCount()).isEqualTo(4);
+		assertThat(store.getEvictionCount()).isEqualTo(10);
+		assertThat(store.get(key(0))).isNull();
+		assertThat(store.getString(key(10))).isEqualTo(output(10));
+		assertThat(store.getString(key(40))).isEqualTo(output(40));
+		assertThat(store.size()).isEqualTo(31);
+	}
+
+	@Test
+	public void testCompaction() throws Exception
+	{
+		OffHeapRenderStore store = new OffHeapRenderStore(1000, 5000);
+		for (int i = 0; i < 40; i++)
+		{
+			store.put(key(i), output(i));
+		}
+		ByteBuffer kept = store.get(key(11));
+		// Mostly dead slab
+		for (int i = 10; i < 18; i++)
+		{
+			store.remove(key(i));
+		}
+
+		store.put(key(40), output(40));
+
+		// Its remaining outputs have been moved
+		assertThat(store.getCompactionCount()).isEqualTo(2);
+		assertThat(store.getEvictionCount()).isEqualTo(0);
+		assertThat(store.getString(key(18))).isEqualTo(output(18));
+		assertThat(store.getString(key(19))).isEqualTo(output(19));
+		assertThat(store.getString(key(0))).isEqualTo(output(0));
+		assertThat(store.getLiveBytes()).isEqualTo(33 * 100);
+		// The slices given before remain valid
+		assertThat(StandardCharsets.UTF_8.decode(kept).toString()).isEqualTo(output(11));
+	}
+
+	@Test
+	public void testCompaction_noRoomForOutput() throws Exception
+	{
+		OffHeapRenderStore store = new OffHeapRenderStore(1000, 3000);
+		for (int i = 0; i < 20; i++)
+		{
+			store.put(key(i), output(i));
+		}
+		for (int i = 0; i < 6; i++)
+		{
+			store.remove(key(i));
+		}
+		StringBuilder big = new StringBuilder();
+		while (big.length() < 700)
+		{
+			big.append("<p>Big</p>");
+		}
+
+		// The 4 outputs left in the first slab and the new one don't fit in a slab: they are evicted
+		assertThat(store.put(key(20), big.toString())).isTrue();
+		assertThat(store.getEvictionCount()).isEqualTo(4);
+		assertThat(store.getCompactionCount()).isEqualTo(0);
+		assertThat(store.getString(key(20))).isEqualTo(big.toString());
+		assertThat(store.getSlabCount()).isEqualTo(2);
+	}
+
+	private static RenderKey key(int i)
+	{
+		return new RenderKey(i, i, 0);
+	}
+
+	private static String output(int i)
+	{
+		String s = "<p>Output " + i + "</p>";
+		StringBuilder sb = new StringBuilder(s);
+		while (sb.length() < 100)
+		{
+			sb.append('.');
+		}
+		return sb.toString();
+	}
+}
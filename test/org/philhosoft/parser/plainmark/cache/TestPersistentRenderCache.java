@@ -0,0 +1,187 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+
+public class TestPersistentRenderCache
+{
+	private static final int CAPACITY = 64 * 1024;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testWarmStart() throws Exception
+	{
+		Path file = temporaryFolder.getRoot().toPath().resolve("render.cache");
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			assertThat(cache.put(key(1, 7), "<p>Café</p>")).isTrue();
+			assertThat(cache.put(key(1, 7), "<p>Other</p>")).isFalse();
+			cache.put(key(2, 7), "<p>Two</p>");
+			assertThat(cache.get(key(1, 7))).isEqualTo("<p>Café</p>");
+		}
+
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			assertThat(cache.size()).isEqualTo(2);
+			assertThat(cache.get(key(1, 7))).isEqualTo("<p>Café</p>");
+			assertThat(StandardCharsets.UTF_8.decode(cache.getBytes(key(2, 7))).toString()).isEqualTo("<p>Two</p>");
+			assertThat(cache.get(key(3, 7))).isNull();
+
+			// Appending after the loaded records
+			cache.put(key(3, 7), "<p>Three</p>");
+		}
+
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			assertThat(cache.size()).isEqualTo(3);
+			assertThat(cache.get(key(3, 7))).isEqualTo("<p>Three</p>");
+		}
+	}
+
+	@Test
+	public void testInvalidation() throws Exception
+	{
+		Path file = temporaryFolder.getRoot().toPath().resolve("render.cache");
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			cache.put(key(1, 7), "<p>Old parameters</p>");
+			cache.put(key(1, 8), "<p>Other parameters</p>");
+			cache.invalidate(7);
+			assertThat(cache.get(key(1, 7))).isNull();
+			cache.put(key(2, 7), "<p>New parameters</p>");
+		}
+
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			assertThat(cache.get(key(1, 7))).isNull();
+			assertThat(cache.get(key(1, 8))).isEqualTo("<p>Other parameters</p>");
+			assertThat(cache.get(key(2, 7))).isEqualTo("<p>New parameters</p>");
+		}
+	}
+
+	@Test
+	public void testCorruption() throws Exception
+	{
+		Path file = temporaryFolder.getRoot().toPath().resolve("render.cache");
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			cache.put(key(1, 7), "<p>One</p>");
+			cache.put(key(2, 7), "<p>Two</p>");
+		}
+		byte[] content = Files.readAllBytes(file);
+		String text = new String(content, StandardCharsets.ISO_8859_1);
+		int position = text.indexOf("One");
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"))
+		{
+			raf.seek(position);
+			raf.write('X');
+		}
+
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			assertThat(cache.get(key(1, 7))).isNull();
+			assertThat(cache.getCorruptionCount()).isEqualTo(1);
+			assertThat(cache.get(key(2, 7))).isEqualTo("<p>Two</p>");
+			assertThat(cache.size()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void testPartialRecord() throws Exception
+	{
+		Path file = temporaryFolder.getRoot().toPath().resolve("render.cache");
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			cache.put(key(1, 7), "<p>One</p>");
+			cache.put(key(2, 7), "<p>Two</p>");
+		}
+		// Simulate a crash while writing the second record: its header is not valid
+		String text = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+		int secondRecord = text.indexOf("PMRE", text.indexOf("PMRE") + 1);
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"))
+		{
+			raf.seek(secondRecord);
+			raf.writeInt(0);
+		}
+
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			assertThat(cache.size()).isEqualTo(1);
+			assertThat(cache.get(key(1, 7))).isEqualTo("<p>One</p>");
+			cache.put(key(3, 7), "<p>Three</p>");
+			assertThat(cache.get(key(3, 7))).isEqualTo("<p>Three</p>");
+		}
+	}
+
+	@Test
+	public void testFull() throws Exception
+	{
+		Path file = temporaryFolder.getRoot().toPath().resolve("render.cache");
+		try (PersistentRenderCache cache = PersistentRenderCache.open(file, 1024))
+		{
+			StringBuilder output = new StringBuilder();
+			for (int i = 0; i < 400; i++)
+			{
+				output.append('x');
+			}
+			assertThat(cache.put(key(1, 7), output.toString())).isTrue();
+			assertThat(cache.put(key(2, 7), output.toString())).isTrue();
+			// Starts over
+			assertThat(cache.put(key(3, 7), output.toString())).isTrue();
+			assertThat(cache.size()).isEqualTo(1);
+			assertThat(cache.get(key(1, 7))).isNull();
+			assertThat(cache.get(key(3, 7))).isEqualTo(output.toString());
+
+			output.setLength(1024);
+			assertThat(cache.put(key(4, 7), output.toString())).isFalse();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotACacheFile() throws Exception
+	{
+		Path file = temporaryFolder.newFile("other.txt").toPath();
+		Files.write(file, new byte[100]);
+
+		PersistentRenderCache.open(file, CAPACITY);
+	}
+
+	@Test
+	public void testSecondLevel() throws Exception
+	{
+		Path file = temporaryFolder.getRoot().toPath().resolve("render.cache");
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		try (PersistentRenderCache persistentCache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			RenderCache cache = new RenderCache(100000, true, persistentCache);
+			cache.convert(engine, "Some *text*");
+		}
+
+		try (PersistentRenderCache persistentCache = PersistentRenderCache.open(file, CAPACITY))
+		{
+			assertThat(persistentCache.get(RenderKey.of(engine.getFingerprint(), "Some *text*")))
+					.isEqualTo(engine.convert("Some *text*"));
+			RenderCache cache = new RenderCache(100000, true, persistentCache);
+			assertThat(cache.convert(engine, "Some *text*")).isEqualTo(engine.convert("Some *text*"));
+		}
+	}
+
+	private static RenderKey key(int content, long configuration)
+	{
+		return new RenderKey(content, content * 31L, configuration);
+	}
+}
@@ -0,0 +1,184 @@
+package org.philhosoft.parser.plainmark.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.parser.plainmark.ParsingParameters;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+
+public class TestRenderCache
+{
+	private PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+
+	@Test
+	public void testHitAndMiss() throws Exception
+	{
+		RenderCache cache = new RenderCache(100000);
+
+		String first = cache.convert(engine, "Some *strong* text");
+		String second = cache.convert(engine, "Some *strong* text");
+		cache.convert(engine, "Some _other_ text");
+
+		assertThat(second).isSameAs(first).isEqualTo(engine.convert("Some *strong* text"));
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(2);
+		assertThat(cache.getHitRate()).isEqualTo(1.0 / 3);
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.getWeight()).isEqualTo(RenderCache.weigh(first) + RenderCache.weigh(engine.convert("Some _other_ text")));
+	}
+
+	@Test
+	public void testConfigurationInKey() throws Exception
+	{
+		RenderCache cache = new RenderCache(100000);
+		PlainMarkEngine textEngine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()).build();
+		ParsingParameters parameters = new ParsingParameters();
+		parameters.setMaxLinkLength(10);
+		PlainMarkEngine shortLinkEngine = new PlainMarkEngine.Builder().setParsingParameters(parameters).build();
+		PlainMarkEngine otherEngine = new PlainMarkEngine.Builder().setVisitorConfiguration("custom tags").build();
+		String text = "See http://www.example.com/some/long/path";
+
+		assertThat(cache.convert(engine, text)).isEqualTo(engine.convert(text));
+		assertThat(cache.convert(textEngine, text)).isEqualTo(textEngine.convert(text));
+		assertThat(cache.convert(shortLinkEngine, text)).isEqualTo(shortLinkEngine.convert(text));
+		cache.convert(otherEngine, text);
+		assertThat(cache.getHitCount()).isEqualTo(0);
+		assertThat(cache.size()).isEqualTo(4);
+
+		// Same configuration, same fingerprint
+		assertThat(new PlainMarkEngine.Builder().build().getFingerprint()).isEqualTo(engine.getFingerprint());
+		cache.convert(new PlainMarkEngine.Builder().build(), text);
+		assertThat(cache.getHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testEviction() throws Exception
+	{
+		String output = engine.convert("Text 0");
+		long entryWeight = RenderCache.weigh(output);
+		RenderCache cache = new RenderCache(entryWeight * 10, false);
+
+		for (int i = 0; i < 10; i++)
+		{
+			cache.convert(engine, "Text " + i);
+		}
+		assertThat(cache.size()).isEqualTo(10);
+		assertThat(cache.getEvictionCount()).isEqualTo(0);
+
+		// Make the first one recently used
+		Thread.sleep(1);
+		cache.convert(engine, "Text 0");
+		cache.convert(engine, "Text 10");
+
+		assertThat(cache.getWeight()).isLessThanOrEqualTo((long) (entryWeight * 10 * 0.9));
+		// Down to 90% of the budget: 11 entries (the last one slightly bigger), 3 to evict
+		assertThat(cache.getEvictionCount()).isEqualTo(3);
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 0"))).isEqualTo(output);
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 1"))).isNull();
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 2"))).isNull();
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 3"))).isNull();
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 4"))).isNotNull();
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 10"))).isNotNull();
+	}
+
+	@Test
+	public void testAdmission() throws Exception
+	{
+		long entryWeight = RenderCache.weigh(engine.convert("Text 0"));
+		RenderCache cache = new RenderCache(entryWeight * 10);
+		for (int n = 0; n < 3; n++)
+		{
+			for (int i = 0; i < 10; i++)
+			{
+				cache.convert(engine, "Text " + i);
+			}
+		}
+		assertThat(cache.size()).isEqualTo(10);
+		assertThat(cache.getHitCount()).isEqualTo(20);
+
+		// Seen once: less popular than the least recently used entry, not admitted
+		cache.convert(engine, "Text 10");
+		assertThat(cache.getRejectionCount()).isEqualTo(1);
+		assertThat(cache.getEvictionCount()).isEqualTo(0);
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 0"))).isNotNull();
+
+		// Becoming popular: admitted
+		for (int n = 0; n < 4; n++)
+		{
+			cache.convert(engine, "Text 11");
+		}
+		assertThat(cache.getEvictionCount()).isGreaterThan(0);
+		assertThat(cache.get(RenderKey.of(engine.getFingerprint(), "Text 11"))).isNotNull();
+		assertThat(cache.getWeight()).isLessThanOrEqualTo(cache.getMaxWeight());
+	}
+
+	@Test
+	public void testTooBig() throws Exception
+	{
+		RenderCache cache = new RenderCache(RenderCache.ENTRY_OVERHEAD + 10);
+
+		cache.convert(engine, "Some text longer than the budget");
+
+		assertThat(cache.size()).isEqualTo(0);
+		assertThat(cache.getWeight()).isEqualTo(0);
+	}
+
+	@Test
+	public void testInvalidate() throws Exception
+	{
+		RenderCache cache = new RenderCache(100000);
+		cache.convert(engine, "One");
+		cache.convert(engine, "Two");
+
+		cache.invalidate(RenderKey.of(engine.getFingerprint(), "One"));
+		assertThat(cache.size()).isEqualTo(1);
+		cache.clear();
+		assertThat(cache.size()).isEqualTo(0);
+		assertThat(cache.getWeight()).isEqualTo(0);
+	}
+
+	@Test
+	public void testConcurrentUse() throws Exception
+	{
+		final RenderCache cache = new RenderCache(RenderCache.weigh(engine.convert("Text 00")) * 50);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int t = 0; t < 8; t++)
+		{
+			final int seed = t;
+			results.add(executor.submit(new Callable<Boolean>()
+			{
+				@Override
+				public Boolean call() throws Exception
+				{
+					boolean ok = true;
+					for (int i = 0; i < 2000; i++)
+					{
+						String text = "Text " + (i * 31 + seed) % 100;
+						ok &= cache.convert(engine, text).equals(engine.convert(text));
+					}
+					return ok;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results)
+		{
+			assertThat(result.get()).isTrue();
+		}
+		executor.shutdown();
+
+		assertThat(cache.getWeight()).isLessThanOrEqualTo(cache.getMaxWeight());
+		assertThat(cache.getHitCount() + cache.getMissCount()).isEqualTo(8 * 2000);
+//		System.out.println(cache);
+	}
+}
@@ -0,0 +1,133 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.TextFragment;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+
+public class TestAsyncConverter
+{
+	private static final int CONCURRENT_CONVERSIONS = 1000;
+
+	@Test
+	public void testConvertAsync() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()).build();
+		AsyncConverter converter = new AsyncConverter(engine);
+
+		assertThat(converter.getExecutor()).isSameAs(AsyncConverter.getDefaultExecutor());
+		assertThat(converter.convertAsync("Some *strong* text").get()).isEqualTo("Some strong text\n");
+		assertThat(converter.convertAsync("Some *strong* text", 7).get()).isEqualTo("Some st…");
+		assertThat(converter.convertAsync("*One*").thenCombine(converter.convertAsync("_Two_"), concatenation()).get())
+				.isEqualTo("One\nTwo\n");
+	}
+
+	@Test
+	public void testConvertAsync_exception() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()
+		{
+			@Override
+			public void visit(TextFragment fragment, VisitorContext context)
+			{
+				throw new IllegalArgumentException("Cannot render " + fragment.getText());
+			}
+		}).build();
+
+		try
+		{
+			new AsyncConverter(engine).convertAsync("boom").get();
+		}
+		catch (ExecutionException e)
+		{
+			assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class).hasMessage("Cannot render boom");
+			return;
+		}
+		throw new AssertionError("Exception not propagated");
+	}
+
+	@Test
+	public void testConvertAsync_noMonitorHeld() throws Exception
+	{
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		final List<MonitorInfo> lockedMonitors = new ArrayList<MonitorInfo>();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor()
+		{
+			@Override
+			public void visit(TextFragment fragment, VisitorContext context)
+			{
+				long threadId = Thread.currentThread().getId();
+				for (MonitorInfo monitor : threadBean.getThreadInfo(new long[] { threadId }, true, false)[0].getLockedMonitors())
+				{
+					lockedMonitors.add(monitor);
+				}
+				super.visit(fragment, context);
+			}
+		}).build();
+
+		new AsyncConverter(engine).convertAsync("# Title\n\n- Some *strong* text\n- http://example.com").get();
+
+		// A monitor held while converting would pin the carrier of a virtual thread
+		assertThat(lockedMonitors).isEmpty();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoExecutor() throws Exception
+	{
+		new AsyncConverter(new PlainMarkEngine.Builder().build(), null);
+	}
+
+	/**
+	 * A burst of concurrent conversions on the default executor gives the same outputs as sequential ones.
+	 * Timings of bursts on platform and virtual threads are in the BurstBenchmark of the benchmark module.
+	 */
+	@Test
+	public void testConcurrentConversions() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		AsyncConverter converter = new AsyncConverter(engine);
+		List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>(CONCURRENT_CONVERSIONS);
+		for (int i = 0; i < CONCURRENT_CONVERSIONS; i++)
+		{
+			futures.add(converter.convertAsync(makeText(i)));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get();
+
+		for (int i = 0; i < CONCURRENT_CONVERSIONS; i++)
+		{
+			assertThat(futures.get(i).get()).isEqualTo(engine.convert(makeText(i)));
+		}
+	}
+
+	private static String makeText(int i)
+	{
+		return "# Comment " + i + "\n\nSome *strong* text, _emphasis_ and http://example.com/" + i + "\n- item " + i;
+	}
+
+	private static BiFunction<String, String, String> concatenation()
+	{
+		return new BiFunction<String, String, String>()
+		{
+			@Override
+			public String apply(String a, String b)
+			{
+				return a + b;
+			}
+		};
+	}
+}
@@ -0,0 +1,103 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.JSONVisitor;
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.TestPlainMark;
+
+
+public class TestChunkedRenderer
+{
+	private static final String[] TEXTS =
+	{
+		"",
+		"Simple plain text",
+		"# Title\nSome *strong* text\n- Item\n- Other\n\n```\nCode\n\n```\nLast",
+		"Paragraph\n\nOther paragraph\n\n\n1. One\n2. Two\n> Quote?\n## Sub-title\n## Continued",
+		"```\nUnclosed code\n\nblock",
+	};
+
+	@Test
+	public void testHTML() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		for (String text : TEXTS)
+		{
+			assertThat(join(renderChunks(engine, text))).isEqualTo(engine.convert(text));
+		}
+
+		List<String> chunks = renderChunks(engine, "# Title\nSome *strong* text\n- Item\n- Other");
+		assertThat(chunks).hasSize(3);
+		assertThat(chunks.get(0)).startsWith("<div").contains("Title").doesNotContain("strong");
+		assertThat(chunks.get(2)).contains("Other").endsWith("</div>\n");
+	}
+
+	@Test
+	public void testPlainText() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()).build();
+		for (String text : TEXTS)
+		{
+			assertThat(join(renderChunks(engine, text))).isEqualTo(engine.convert(text));
+		}
+	}
+
+	@Test
+	public void testSpec() throws Exception
+	{
+		byte[] content = Files.readAllBytes(Paths.get(TestPlainMark.TEST_FILE + ".txt"));
+		String text = new String(content, StandardCharsets.UTF_8);
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor(2)).build();
+
+		List<String> chunks = renderChunks(engine, text);
+
+		assertThat(chunks.size()).isGreaterThan(10);
+		assertThat(join(chunks)).isEqualTo(engine.convert(text));
+	}
+
+	@Test
+	public void testNotIncremental() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new JSONVisitor()).build();
+		String text = "# Title\nSome *strong* text\n- Item\n- Other";
+		ChunkedRenderer renderer = new ChunkedRenderer(engine, text);
+
+		assertThat(renderer.isIncremental()).isFalse();
+		assertThat(renderer.nextChunk()).isEqualTo(engine.convert(text));
+		assertThat(renderer.nextChunk()).isNull();
+		assertThat(new ChunkedRenderer(new PlainMarkEngine.Builder().build(), text).isIncremental()).isTrue();
+	}
+
+	private static List<String> renderChunks(PlainMarkEngine engine, String text)
+	{
+		ChunkedRenderer renderer = new ChunkedRenderer(engine, text);
+		List<String> chunks = new ArrayList<String>();
+		for (String chunk = renderer.nextChunk(); chunk != null; chunk = renderer.nextChunk())
+		{
+			chunks.add(chunk);
+		}
+		assertThat(renderer.nextChunk()).isNull();
+		return chunks;
+	}
+
+	private static String join(List<String> chunks)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (String chunk : chunks)
+		{
+			sb.append(chunk);
+		}
+		return sb.toString();
+	}
+}
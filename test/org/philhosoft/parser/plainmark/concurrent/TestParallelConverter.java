@@ -0,0 +1,119 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.TextFragment;
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.metrics.PhaseMetrics;
+
+
+public class TestParallelConverter
+{
+	private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConvertAll_order() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		List<String> texts = makeTexts(1000);
+
+		List<String> results = new ParallelConverter(engine, executor, 4).convertAll(texts);
+
+		assertThat(results).hasSize(texts.size());
+		for (int i = 0; i < texts.size(); i++)
+		{
+			assertThat(results.get(i)).isEqualTo(engine.convert(texts.get(i)));
+		}
+	}
+
+	@Test
+	public void testConvertAll_stream() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()).build();
+		List<StringBuilder> texts = new ArrayList<StringBuilder>();
+		texts.add(new StringBuilder("*One*"));
+		texts.add(new StringBuilder("_Two_"));
+		texts.add(new StringBuilder("-Three-"));
+
+		List<String> results = new ParallelConverter(engine, executor, 2).convertAll(texts.stream());
+
+		assertThat(results).containsExactly("One\n", "Two\n", "Three\n");
+	}
+
+	@Test
+	public void testConvertAll_monitored() throws Exception
+	{
+		PhaseMetrics metrics = new PhaseMetrics();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(metrics).build();
+		List<String> texts = makeTexts(100);
+
+		List<String> results = new ParallelConverter(engine, executor, 4).convertAll(texts);
+
+		assertThat(metrics.getConversionCount()).isEqualTo(texts.size());
+		assertThat(results.get(1)).isEqualTo(new PlainMarkEngine.Builder().build().convert(texts.get(1)));
+	}
+
+	@Test
+	public void testConvertAll_smallBatches() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()).build();
+
+		assertThat(new ParallelConverter(engine).convertAll(Collections.<String>emptyList())).isEmpty();
+		assertThat(new ParallelConverter(engine, executor, 1).convertAll(Collections.singletonList("*a*"))).containsExactly("a\n");
+	}
+
+	@Test
+	public void testConvertAll_exception() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()
+		{
+			@Override
+			public void visit(TextFragment fragment, VisitorContext context)
+			{
+				if (fragment.getText().equals("boom"))
+					throw new IllegalArgumentException("Cannot render boom");
+				super.visit(fragment, context);
+			}
+		}).build();
+		List<String> texts = makeTexts(100);
+		texts.set(42, "boom");
+
+		try
+		{
+			new ParallelConverter(engine, executor, 4).convertAll(texts);
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e.getMessage()).isEqualTo("Cannot render boom");
+			return;
+		}
+		throw new AssertionError("Exception not propagated");
+	}
+
+	private static List<String> makeTexts(int count)
+	{
+		List<String> texts = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++)
+		{
+			texts.add("# Comment " + i + "\n\nSome *strong* text, _emphasis_ and http://example.com/" + i + "\n- item " + i);
+		}
+		return texts;
+	}
+}
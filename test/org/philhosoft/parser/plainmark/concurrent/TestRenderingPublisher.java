@@ -0,0 +1,211 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.BlockType;
+import org.philhosoft.formattedtext.ast.TypedBlock;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+
+public class TestRenderingPublisher
+{
+	private static final String TEXT = "# Title\nSome *strong* text\n- Item\n- Other\n\n```\nCode\n```\nLast paragraph";
+	private static final Executor CALLER_THREAD = new Executor()
+	{
+		@Override
+		public void execute(Runnable command)
+		{
+			command.run();
+		}
+	};
+
+	private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Records the chunks, requesting them by batches.
+	 */
+	private static class RecordingSubscriber implements Flow.Subscriber<ByteBuffer>
+	{
+		private final long batchSize;
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		private final AtomicInteger chunkCount = new AtomicInteger();
+		private final CountDownLatch finished = new CountDownLatch(1);
+		protected volatile Flow.Subscription subscription;
+		private volatile Throwable error;
+		private volatile boolean completed;
+		private int received;
+
+		public RecordingSubscriber(long batchSize)
+		{
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription)
+		{
+			this.subscription = subscription;
+			subscription.request(batchSize);
+		}
+
+		@Override
+		public void onNext(ByteBuffer chunk)
+		{
+			byte[] bytes = new byte[chunk.remaining()];
+			chunk.get(bytes);
+			output.write(bytes, 0, bytes.length);
+			chunkCount.incrementAndGet();
+			if (++received == batchSize)
+			{
+				received = 0;
+				subscription.request(batchSize);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable)
+		{
+			error = throwable;
+			finished.countDown();
+		}
+
+		@Override
+		public void onComplete()
+		{
+			completed = true;
+			finished.countDown();
+		}
+
+		public String getOutput()
+		{
+			return new String(output.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testPublish() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+
+		for (long batchSize : new long[] { 1, 2, Long.MAX_VALUE })
+		{
+			RecordingSubscriber subscriber = new RecordingSubscriber(batchSize);
+			new RenderingPublisher(engine, TEXT, executor).subscribe(subscriber);
+
+			assertThat(subscriber.finished.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(subscriber.completed).isTrue();
+			assertThat(subscriber.error).isNull();
+			assertThat(subscriber.chunkCount.get()).isEqualTo(5);
+			assertThat(subscriber.getOutput()).isEqualTo(engine.convert(TEXT));
+		}
+	}
+
+	@Test
+	public void testPublish_requestsFromOnNext() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		RecordingSubscriber subscriber = new RecordingSubscriber(1);
+
+		// Reentrant requests must not recurse
+		new RenderingPublisher(engine, TEXT, CALLER_THREAD).subscribe(subscriber);
+
+		assertThat(subscriber.completed).isTrue();
+		assertThat(subscriber.getOutput()).isEqualTo(engine.convert(TEXT));
+	}
+
+	@Test
+	public void testBackpressure() throws Exception
+	{
+		final AtomicInteger renderedBlockCount = new AtomicInteger();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor()
+		{
+			@Override
+			public void visit(TypedBlock block, VisitorContext context)
+			{
+				if (block.getType() != BlockType.DOCUMENT && context.isInOneOf(BlockType.DOCUMENT))
+				{
+					renderedBlockCount.incrementAndGet();
+				}
+				super.visit(block, context);
+			}
+		}).build();
+		final CountDownLatch twoChunks = new CountDownLatch(2);
+		RecordingSubscriber subscriber = new RecordingSubscriber(2)
+		{
+			@Override
+			public void onNext(ByteBuffer chunk)
+			{
+				twoChunks.countDown();
+				if (twoChunks.getCount() > 0)
+				{
+					super.onNext(chunk);
+				}
+				// Then stops requesting
+			}
+		};
+
+		new RenderingPublisher(engine, TEXT, executor).subscribe(subscriber);
+		assertThat(twoChunks.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(100);
+
+		assertThat(renderedBlockCount.get()).isEqualTo(2);
+		assertThat(subscriber.completed).isFalse();
+
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertThat(subscriber.finished.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(renderedBlockCount.get()).isEqualTo(5);
+	}
+
+	@Test
+	public void testCancel() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		RecordingSubscriber subscriber = new RecordingSubscriber(1)
+		{
+			@Override
+			public void onNext(ByteBuffer chunk)
+			{
+				super.onNext(chunk);
+				subscription.cancel();
+			}
+		};
+
+		new RenderingPublisher(engine, TEXT, CALLER_THREAD).subscribe(subscriber);
+
+		assertThat(subscriber.chunkCount.get()).isEqualTo(1);
+		assertThat(subscriber.completed).isFalse();
+	}
+
+	@Test
+	public void testInvalidRequest() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+		RecordingSubscriber subscriber = new RecordingSubscriber(0);
+
+		new RenderingPublisher(engine, TEXT, CALLER_THREAD).subscribe(subscriber);
+
+		assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+		assertThat(subscriber.chunkCount.get()).isZero();
+	}
+}
@@ -0,0 +1,167 @@
+package org.philhosoft.parser.plainmark.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class TestSingleFlight
+{
+	private static final int THREAD_NB = 16;
+
+	private ExecutorService executor = Executors.newFixedThreadPool(THREAD_NB);
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testCoalescing() throws Exception
+	{
+		final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+		final AtomicInteger computationCount = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<String> computation = new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				computationCount.incrementAndGet();
+				release.await(10, TimeUnit.SECONDS);
+				return "rendered";
+			}
+		};
+
+		List<Future<String>> results = submitAll(singleFlight, "key", computation);
+		waitForCoalescing(singleFlight, THREAD_NB - 1);
+		release.countDown();
+
+		for (Future<String> result : results)
+		{
+			assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("rendered");
+		}
+		assertThat(computationCount.get()).isEqualTo(1);
+		assertThat(singleFlight.getInFlightCount()).isEqualTo(0);
+
+		// Done: computed again
+		assertThat(singleFlight.execute("key", computation)).isEqualTo("rendered");
+		assertThat(computationCount.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testDistinctKeys() throws Exception
+	{
+		SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+
+		String a = singleFlight.execute("a", new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return "A";
+			}
+		});
+
+		assertThat(a).isEqualTo("A");
+		assertThat(singleFlight.getCoalescedCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testExceptionPropagation() throws Exception
+	{
+		final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final IllegalArgumentException failure = new IllegalArgumentException("Bad markup");
+
+		List<Future<String>> results = submitAll(singleFlight, "key", new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				release.await(10, TimeUnit.SECONDS);
+				throw failure;
+			}
+		});
+		waitForCoalescing(singleFlight, THREAD_NB - 1);
+		release.countDown();
+
+		for (Future<String> result : results)
+		{
+			try
+			{
+				result.get(10, TimeUnit.SECONDS);
+				throw new AssertionError("No exception");
+			}
+			catch (ExecutionException e)
+			{
+				assertThat(e.getCause()).isSameAs(failure);
+			}
+		}
+		assertThat(singleFlight.getInFlightCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testCheckedException() throws Exception
+	{
+		SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+		try
+		{
+			singleFlight.execute("key", new Callable<String>()
+			{
+				@Override
+				public String call() throws Exception
+				{
+					throw new IOException("Cannot read");
+				}
+			});
+			throw new AssertionError("No exception");
+		}
+		catch (IllegalStateException e)
+		{
+			assertThat(e.getCause()).isInstanceOf(IOException.class);
+		}
+	}
+
+	private List<Future<String>> submitAll(final SingleFlight<String, String> singleFlight, final String key,
+			final Callable<String> computation)
+	{
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i = 0; i < THREAD_NB; i++)
+		{
+			results.add(executor.submit(new Callable<String>()
+			{
+				@Override
+				public String call() throws Exception
+				{
+					return singleFlight.execute(key, computation);
+				}
+			}));
+		}
+		return results;
+	}
+
+	private static void waitForCoalescing(SingleFlight<?, ?> singleFlight, int count) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 10000;
+		while (singleFlight.getCoalescedCount() < count && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(1);
+		}
+		assertThat(singleFlight.getCoalescedCount()).isEqualTo(count);
+	}
+}
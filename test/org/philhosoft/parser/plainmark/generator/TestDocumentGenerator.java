@@ -0,0 +1,124 @@
+package org.philhosoft.parser.plainmark.generator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.format.PlainTextVisitor;
+import org.philhosoft.parser.plainmark.PlainMark;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.generator.DocumentGenerator.Shape;
+
+
+public class TestDocumentGenerator
+{
+	@Test
+	public void testReproducible()
+	{
+		DocumentGenerator first = new DocumentGenerator.Builder().setSeed(42).build();
+		DocumentGenerator second = new DocumentGenerator.Builder().setSeed(42).build();
+		DocumentGenerator other = new DocumentGenerator.Builder().setSeed(43).build();
+
+		String document = first.generate(2000);
+		assertThat(document.length()).isGreaterThanOrEqualTo(2000);
+		assertThat(second.generate(2000)).isEqualTo(document);
+		assertThat(other.generate(2000)).isNotEqualTo(document);
+		// Next documents of the sequence
+		assertThat(first.generate(Shape.BRACKET_STORM, 500)).isEqualTo(second.generate(Shape.BRACKET_STORM, 500));
+		assertThat(first.generate(100)).isNotEqualTo(document);
+	}
+
+	@Test
+	public void testSettings()
+	{
+		String lists = new DocumentGenerator.Builder()
+				.setBlockWeights(0, 1, 0, 0)
+				.setDecorations(0, 0)
+				.setUrls(0, 10, 10)
+				.setEscapeFrequency(0)
+				.setNonAsciiShare(0)
+				.setCrlf(true)
+				.build().generate(5000);
+
+		assertThat(lists).matches("(?s)[a-z0-9 .*+\\-\\r\\n]+");
+		assertThat(lists.replace("\r\n", "")).doesNotContain("\n").doesNotContain("\r");
+		for (String line : lists.split("\r\n"))
+		{
+			if (!line.isEmpty())
+			{
+				assertThat(line).matches("([-*+]|[0-9]+\\.) [a-z ]+");
+			}
+		}
+
+		String decorated = new DocumentGenerator.Builder().setBlockWeights(1, 0, 0, 0).setDecorations(1, 3).build()
+				.generate(5000);
+		assertThat(decorated).contains("*", "_", "`");
+		String html = PlainMark.convertToHTML(decorated);
+		assertThat(html).contains("<strong>", "<em>", "<code>");
+
+		String links = new DocumentGenerator.Builder().setUrls(0.5, 100, 200).build().generate(5000);
+		assertThat(PlainMark.convertToHTML(links)).contains("<a href='http");
+	}
+
+	@Test
+	public void testInvalidSettings()
+	{
+		try
+		{
+			new DocumentGenerator.Builder().setLineLength(10, 5);
+			fail("Should have thrown an exception");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e).hasMessage("Invalid range: 10 to 5");
+		}
+		try
+		{
+			new DocumentGenerator.Builder().setBlockWeights(0, 0, 0, 0);
+			fail("Should have thrown an exception");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e).hasMessage("Block weights must be positive, and not all zero");
+		}
+		try
+		{
+			new DocumentGenerator.Builder().setNonAsciiShare(1.5);
+			fail("Should have thrown an exception");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e).hasMessage("Probability out of [0, 1]: 1.5");
+		}
+	}
+
+	/**
+	 * Converts many generated documents, checking that the conversion doesn't fail and that the canonical PlainMark
+	 * renders as the original text.
+	 */
+	@Test
+	public void testFuzz()
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setVisitor(new PlainTextVisitor()).build();
+		for (int seed = 0; seed < 50; seed++)
+		{
+			DocumentGenerator generator = new DocumentGenerator.Builder()
+					.setSeed(seed)
+					.setDecorations(seed % 5 / 10.0, seed % 4)
+					.setEscapeFrequency(seed % 3 / 20.0)
+					.setCrlf(seed % 2 == 0)
+					.setNonAsciiShare(seed % 7 / 20.0)
+					.build();
+			checkRoundTrip(generator.generate(3000), engine);
+			checkRoundTrip(generator.generate(Shape.values()[seed % Shape.values().length], 3000), engine);
+		}
+	}
+
+	private static void checkRoundTrip(String document, PlainMarkEngine engine)
+	{
+		String canonical = PlainMark.convertToPlainMark(document);
+		assertThat(PlainMark.convertToHTML(canonical)).isEqualTo(PlainMark.convertToHTML(document));
+		assertThat(engine.convert(document)).isNotNull();
+	}
+}
@@ -0,0 +1,163 @@
+package org.philhosoft.parser.plainmark.jfr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.philhosoft.formattedtext.ast.TextFragment;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+
+
+public class TestJFRConversionMonitor
+{
+	private static final String CONVERSION = "org.philhosoft.plainmark.Conversion";
+	private static final String PARSING = "org.philhosoft.plainmark.Parsing";
+	private static final String RENDERING = "org.philhosoft.plainmark.Rendering";
+	private static final String TEXT = "# Title\nSome *strong _nested_* text\n- One";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testAllEvents() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(new JFRConversionMonitor()).build();
+
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording())
+		{
+			recording.enable(CONVERSION).withThreshold(Duration.ZERO);
+			recording.enable(PARSING);
+			recording.enable(RENDERING);
+			recording.start();
+			engine.convert(TEXT);
+			engine.convert("Other text");
+			recording.stop();
+			events = readEvents(recording);
+		}
+
+		List<RecordedEvent> conversions = filter(events, CONVERSION);
+		assertThat(conversions).hasSize(2);
+		assertThat(filter(events, PARSING)).hasSize(2);
+		assertThat(filter(events, RENDERING)).hasSize(2);
+
+		RecordedEvent conversion = conversions.get(0);
+//		System.out.println(conversion);
+		assertThat(conversion.getInt("inputLength")).isEqualTo(TEXT.length());
+		assertThat(conversion.getInt("outputLength")).isEqualTo(engine.convert(TEXT).length());
+		assertThat(conversion.getInt("textHash")).isEqualTo(TEXT.hashCode());
+		assertThat(conversion.getInt("blockCount")).isEqualTo(5);
+		assertThat(conversion.getInt("lineCount")).isEqualTo(3);
+		assertThat(conversion.getInt("maxFragmentDepth")).isEqualTo(3);
+		assertThat(conversion.getLong("engineFingerprint")).isEqualTo(engine.getFingerprint());
+		assertThat(conversion.getDuration().toNanos()).isGreaterThanOrEqualTo(
+				conversion.getDuration("blockParsingTime").plus(conversion.getDuration("fragmentParsingTime"))
+						.plus(conversion.getDuration("renderingTime")).toNanos());
+
+		RecordedEvent parsing = filter(events, PARSING).get(0);
+		assertThat(parsing.getInt("lineCount")).isEqualTo(3);
+		assertThat(parsing.getStartTime()).isGreaterThanOrEqualTo(conversion.getStartTime());
+		RecordedEvent rendering = filter(events, RENDERING).get(0);
+		assertThat(rendering.getStartTime()).isGreaterThanOrEqualTo(parsing.getEndTime());
+		assertThat(rendering.getEndTime()).isLessThanOrEqualTo(conversion.getEndTime());
+	}
+
+	@Test
+	public void testOnlySlowConversions() throws Exception
+	{
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(new JFRConversionMonitor())
+				.setVisitor(new HTMLVisitor()
+				{
+					@Override
+					public void visit(TextFragment fragment, VisitorContext context)
+					{
+						if (fragment.getText().equals("Slow"))
+						{
+							sleep(30);
+						}
+						super.visit(fragment, context);
+					}
+				}).build();
+
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording())
+		{
+			// Default settings of the events
+			recording.enable(CONVERSION);
+			recording.start();
+			engine.convert(TEXT);
+			engine.convert("Slow");
+			engine.convert("Other text");
+			recording.stop();
+			events = readEvents(recording);
+		}
+
+		assertThat(filter(events, PARSING)).isEmpty();
+		List<RecordedEvent> conversions = filter(events, CONVERSION);
+		assertThat(conversions).hasSize(1);
+		assertThat(conversions.get(0).getInt("textHash")).isEqualTo("Slow".hashCode());
+		assertThat(conversions.get(0).getDuration("renderingTime").toMillis()).isGreaterThanOrEqualTo(30);
+	}
+
+	@Test
+	public void testNotRecording() throws Exception
+	{
+		JFRConversionMonitor monitor = new JFRConversionMonitor();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(monitor).build();
+
+		assertThat(monitor.isEnabled()).isFalse();
+		assertThat(engine.convert(TEXT)).isEqualTo(new PlainMarkEngine.Builder().build().convert(TEXT));
+		try (Recording recording = new Recording())
+		{
+			recording.enable(RENDERING);
+			recording.start();
+			assertThat(monitor.isEnabled()).isTrue();
+		}
+		assertThat(monitor.isEnabled()).isFalse();
+	}
+
+	private List<RecordedEvent> readEvents(Recording recording) throws Exception
+	{
+		Path file = temporaryFolder.newFile("recording.jfr").toPath();
+		recording.dump(file);
+		return RecordingFile.readAllEvents(file);
+	}
+
+	private static List<RecordedEvent> filter(List<RecordedEvent> events, String name)
+	{
+		List<RecordedEvent> filtered = new ArrayList<RecordedEvent>();
+		for (RecordedEvent event : events)
+		{
+			if (event.getEventType().getName().equals(name))
+			{
+				filtered.add(event);
+			}
+		}
+		return filtered;
+	}
+
+	private static void sleep(long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
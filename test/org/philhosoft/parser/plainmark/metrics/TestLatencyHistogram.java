@@ -0,0 +1,155 @@
+package org.philhosoft.parser.plainmark.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TestLatencyHistogram
+{
+	@Test
+	public void testBuckets()
+	{
+		assertThat(LatencyHistogram.indexOf(0)).isEqualTo(0);
+		assertThat(LatencyHistogram.indexOf(127)).isEqualTo(127);
+		assertThat(LatencyHistogram.indexOf(128)).isEqualTo(128);
+		assertThat(LatencyHistogram.indexOf(129)).isEqualTo(128);
+		assertThat(LatencyHistogram.indexOf(130)).isEqualTo(129);
+		assertThat(LatencyHistogram.indexOf(Long.MAX_VALUE)).isLessThan(3776);
+
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++)
+		{
+			long value = random.nextLong() >>> (1 + random.nextInt(63));
+			int index = LatencyHistogram.indexOf(value);
+			assertThat(value).isBetween(LatencyHistogram.lowestValueAt(index), LatencyHistogram.highestValueAt(index));
+			// Precision of 1/64 (two significant digits)
+			assertThat(LatencyHistogram.highestValueAt(index) - LatencyHistogram.lowestValueAt(index))
+					.isLessThanOrEqualTo(Math.max(0, value / 64));
+		}
+	}
+
+	@Test
+	public void testPercentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertThat(histogram.getValueAtPercentile(99)).isZero();
+		assertThat(histogram.getMax()).isZero();
+
+		for (long v = 1; v <= 10000; v++)
+		{
+			histogram.record(v * 1000);
+		}
+		histogram.record(-5);
+
+		assertThat(histogram.getCount()).isEqualTo(10001);
+		assertThat(histogram.getMin()).isZero();
+		assertThat(histogram.getMax()).isEqualTo(10000000);
+		assertThat(histogram.getValueAtPercentile(0)).isZero();
+		assertThat(histogram.getValueAtPercentile(50)).isBetween(5000000L, 5000000L + 5000000 / 64);
+		assertThat(histogram.getValueAtPercentile(99)).isBetween(9900000L, 9900000L + 9900000 / 64);
+		assertThat(histogram.getValueAtPercentile(99.9)).isBetween(9990000L, 10000000L);
+		assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10000000);
+		assertThat(histogram.getMean()).isBetween(4950000.0, 5050000.0);
+//		System.out.println(histogram);
+	}
+
+	@Test
+	public void testAdd()
+	{
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		first.record(1000, 99);
+		second.record(50000);
+		second.record(200);
+
+		first.add(second);
+		first.add(new LatencyHistogram());
+
+		assertThat(first.getCount()).isEqualTo(101);
+		assertThat(first.getMin()).isEqualTo(200);
+		assertThat(first.getMax()).isEqualTo(50000);
+		assertThat(first.getValueAtPercentile(99)).isBetween(1000L, 1015L);
+		assertThat(first.getValueAtPercentile(99.9)).isEqualTo(50000);
+		assertThat(second.getCount()).isEqualTo(2);
+
+		LatencyHistogram copy = first.copy();
+		first.reset();
+		assertThat(first.getCount()).isZero();
+		assertThat(first.getMin()).isZero();
+		assertThat(copy.getCount()).isEqualTo(101);
+	}
+
+	@Test
+	public void testExport()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(3);
+		histogram.record(1234567, 10);
+		histogram.record(987654321);
+
+		String exported = histogram.export();
+		LatencyHistogram parsed = LatencyHistogram.parse(exported);
+
+		assertThat(exported).startsWith("LatencyHistogram 1\n3 987654321\n3 1\n");
+		assertThat(parsed.getCount()).isEqualTo(12);
+		assertThat(parsed.getMin()).isEqualTo(3);
+		assertThat(parsed.getMax()).isEqualTo(987654321);
+		assertThat(parsed.getValueAtPercentile(50)).isEqualTo(histogram.getValueAtPercentile(50));
+		assertThat(parsed.export()).isEqualTo(exported);
+		assertThat(LatencyHistogram.parse(new LatencyHistogram().export()).getCount()).isZero();
+
+		try
+		{
+			LatencyHistogram.parse("3 1\n");
+			fail("Should have thrown an exception");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e).hasMessage("Not an exported histogram");
+		}
+		try
+		{
+			LatencyHistogram.parse("LatencyHistogram 1\n0 0\nx 1\n");
+			fail("Should have thrown an exception");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertThat(e).hasMessage("Invalid exported histogram");
+		}
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final long offset = t;
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 10000; i++)
+					{
+						histogram.record(i * 10 + offset);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertThat(histogram.getCount()).isEqualTo(40000);
+		assertThat(histogram.getMin()).isZero();
+		assertThat(histogram.getMax()).isEqualTo(99993);
+	}
+}
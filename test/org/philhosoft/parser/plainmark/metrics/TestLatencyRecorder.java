@@ -0,0 +1,79 @@
+package org.philhosoft.parser.plainmark.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.metrics.LatencyRecorder.SizeClass;
+
+
+public class TestLatencyRecorder
+{
+	@Test
+	public void testSizeClasses()
+	{
+		assertThat(SizeClass.of(0)).isEqualTo(SizeClass.TINY);
+		assertThat(SizeClass.of(255)).isEqualTo(SizeClass.TINY);
+		assertThat(SizeClass.of(256)).isEqualTo(SizeClass.SMALL);
+		assertThat(SizeClass.of(65535)).isEqualTo(SizeClass.MEDIUM);
+		assertThat(SizeClass.of(65536)).isEqualTo(SizeClass.LARGE);
+		assertThat(SizeClass.of(Integer.MAX_VALUE)).isEqualTo(SizeClass.LARGE);
+	}
+
+	@Test
+	public void testMonitor()
+	{
+		LatencyRecorder latencies = new LatencyRecorder();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(latencies).build();
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+		{
+			big.append("Some *strong* text in a longer document\n");
+		}
+
+		engine.convert("Short *comment*");
+		engine.convert("Other _comment_");
+		engine.convert(big.toString());
+
+		assertThat(latencies.getHistogram(SizeClass.TINY).getCount()).isEqualTo(2);
+		assertThat(latencies.getHistogram(SizeClass.SMALL).getCount()).isEqualTo(1);
+		assertThat(latencies.getHistogram(SizeClass.MEDIUM).getCount()).isZero();
+		assertThat(latencies.getHistogram(SizeClass.SMALL).getMax()).isPositive();
+		assertThat(latencies.getTotal().getCount()).isEqualTo(3);
+		assertThat(latencies.report()).contains("TINY", "SMALL", "ALL", "p99.9");
+//		System.out.println(latencies.report());
+
+		latencies.reset();
+		assertThat(latencies.getTotal().getCount()).isZero();
+	}
+
+	@Test
+	public void testAdd()
+	{
+		LatencyRecorder first = new LatencyRecorder();
+		LatencyRecorder second = new LatencyRecorder();
+		first.record(10, 1000);
+		second.record(10, 2000);
+		second.record(100000, 5000000);
+
+		first.add(second);
+
+		assertThat(first.getHistogram(SizeClass.TINY).getCount()).isEqualTo(2);
+		assertThat(first.getHistogram(SizeClass.TINY).getMax()).isEqualTo(2000);
+		assertThat(first.getHistogram(SizeClass.LARGE).getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testPrometheus()
+	{
+		LatencyRecorder latencies = new LatencyRecorder();
+		latencies.record(10, 1000000);
+
+		assertThat(latencies.toPrometheus())
+				.contains("# TYPE plainmark_conversion_latency_seconds summary\n")
+				.contains("plainmark_conversion_latency_seconds{size=\"tiny\",quantile=\"0.99\"} 0.001")
+				.contains("plainmark_conversion_latency_seconds_count{size=\"tiny\"} 1\n")
+				.contains("plainmark_conversion_latency_seconds_count{size=\"large\"} 0\n");
+	}
+}
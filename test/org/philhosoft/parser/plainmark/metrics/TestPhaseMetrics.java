@@ -0,0 +1,105 @@
+package org.philhosoft.parser.plainmark.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.cache.RenderCache;
+
+
+public class TestPhaseMetrics
+{
+	private static final String TEXT = "# Title\nSome *strong* text\n- One";
+
+	@Test
+	public void testAggregation() throws Exception
+	{
+		PhaseMetrics metrics = new PhaseMetrics();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(metrics).build();
+
+		String output = engine.convert(TEXT);
+		engine.convert("Other _text_");
+
+		assertThat(metrics.getConversionCount()).isEqualTo(2);
+		assertThat(metrics.getInputChars()).isEqualTo(TEXT.length() + 12);
+		assertThat(metrics.getOutputChars()).isEqualTo(output.length() + engine.convert("Other _text_").length());
+		assertThat(metrics.getBlockCount()).isEqualTo(5 + 2 + 2);
+		assertThat(metrics.getLineCount()).isEqualTo(3 + 1 + 1);
+		assertThat(metrics.getRenderingNanos()).isPositive();
+		double[] shares = metrics.getPhaseShares();
+		assertThat(shares[0] + shares[1] + shares[2]).isBetween(0.999, 1.001);
+//		System.out.println(metrics);
+
+		metrics.reset();
+		assertThat(metrics.getConversionCount()).isZero();
+		assertThat(metrics.getPhaseShares()).containsExactly(0, 0, 0);
+	}
+
+	@Test
+	public void testCacheLookups() throws Exception
+	{
+		PhaseMetrics metrics = new PhaseMetrics();
+		PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(metrics).build();
+		RenderCache cache = new RenderCache(100000);
+
+		cache.convert(engine, TEXT);
+		cache.convert(engine, TEXT);
+		cache.convert(engine, TEXT);
+
+		assertThat(metrics.getCacheMissCount()).isEqualTo(1);
+		assertThat(metrics.getCacheHitCount()).isEqualTo(2);
+		assertThat(metrics.getConversionCount()).isEqualTo(1);
+		assertThat(metrics.toPrometheus())
+				.contains("plainmark_conversions_total 1\n")
+				.contains("plainmark_nodes_total{type=\"fragment\"} 6\n")
+				.contains("plainmark_cache_lookups_total{result=\"hit\"} 2\n")
+				.contains("plainmark_phase_seconds_total{phase=\"rendering\"} ");
+	}
+
+	@Test
+	public void testConcurrentConversions() throws Exception
+	{
+		PhaseMetrics metrics = new PhaseMetrics();
+		final PlainMarkEngine engine = new PlainMarkEngine.Builder().setMonitor(metrics).build();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < 8; t++)
+			{
+				futures.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						for (int i = 0; i < 500; i++)
+						{
+							engine.convert(TEXT);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures)
+			{
+				future.get();
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		assertThat(metrics.getConversionCount()).isEqualTo(4000);
+		assertThat(metrics.getLineCount()).isEqualTo(4000 * 3);
+		assertThat(metrics.getInputChars()).isEqualTo(4000L * TEXT.length());
+	}
+}
@@ -0,0 +1,177 @@
+package org.philhosoft.parser.plainmark.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.philhosoft.formattedtext.ast.LinkFragment;
+import org.philhosoft.formattedtext.format.HTMLVisitor;
+import org.philhosoft.formattedtext.format.JSONVisitor;
+import org.philhosoft.formattedtext.format.VisitorContext;
+import org.philhosoft.parser.plainmark.PlainMarkEngine;
+import org.philhosoft.parser.plainmark.concurrent.AsyncConverter;
+
+
+public class TestRenderServer
+{
+	private static final String TEXT = "# Title\nSome *strong* text, in café\n- One\n- Two";
+
+	private PlainMarkEngine engine = new PlainMarkEngine.Builder().build();
+	private HttpClient client = HttpClient.newHttpClient();
+	private RenderServer server;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		server = new RenderServer(engine, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				1000, AsyncConverter.getDefaultExecutor()).start();
+	}
+
+	@After
+	public void tearDown()
+	{
+		server.close();
+	}
+
+	@Test
+	public void testRender() throws Exception
+	{
+		HttpResponse<String> response = post("/render", TEXT);
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.headers().firstValue("Content-Type").get()).startsWith("text/html");
+		assertThat(response.body()).isEqualTo(engine.convert(TEXT));
+	}
+
+	@Test
+	public void testStream() throws Exception
+	{
+		HttpResponse<String> response = post("/render/stream", TEXT);
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.body()).isEqualTo(engine.convert(TEXT));
+	}
+
+	@Test
+	public void testBatch() throws Exception
+	{
+		HttpResponse<String> response = post("/render/batch", "[\"*One*\", \"Two\\nlines\", \"\"]");
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.body()).isEqualTo("[" + JSONVisitor.quote(engine.convert("*One*")) + "," +
+				JSONVisitor.quote(engine.convert("Two\nlines")) + "," + JSONVisitor.quote(engine.convert("")) + "]");
+		assertThat(response.body()).startsWith("[\"<div>\\n<p><strong>One</strong></p>\\n");
+
+		assertThat(post("/render/batch", "[\"Unclosed").statusCode()).isEqualTo(400);
+	}
+
+	@Test
+	public void testErrors() throws Exception
+	{
+		StringBuilder tooLarge = new StringBuilder();
+		for (int i = 0; i <= 100; i++)
+		{
+			tooLarge.append("Some text\n");
+		}
+		assertThat(post("/render", tooLarge.toString()).statusCode()).isEqualTo(413);
+		assertThat(post("/render/stream", tooLarge.toString()).statusCode()).isEqualTo(413);
+
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/render")).GET().build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertThat(response.statusCode()).isEqualTo(405);
+		assertThat(response.headers().firstValue("Allow").get()).isEqualTo("POST");
+	}
+
+	@Test
+	public void testConversionFailure() throws Exception
+	{
+		server.close();
+		PlainMarkEngine failingEngine = new PlainMarkEngine.Builder().setVisitor(new HTMLVisitor()
+		{
+			@Override
+			public void visit(LinkFragment fragment, VisitorContext context)
+			{
+				throw new IllegalStateException("Secret detail");
+			}
+		}).build();
+		server = new RenderServer(failingEngine, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				1000, AsyncConverter.getDefaultExecutor()).start();
+		String text = "First block\n\nSecond block with http://example.com";
+
+		HttpResponse<String> response = post("/render", text);
+		assertThat(response.statusCode()).isEqualTo(500);
+		assertThat(response.body()).doesNotContain("Secret").doesNotContain("IllegalStateException");
+
+		// The first block has been sent already: the response is truncated, not ended
+		try
+		{
+			response = post("/render/stream", text);
+			assertThat(response.statusCode()).isEqualTo(200);
+			assertThat(response.body()).isNotEqualTo(engine.convert(text));
+			throw new AssertionError("Truncated response not detected: " + response.body());
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception
+	{
+		post("/render", TEXT);
+		post("/render", TEXT);
+		post("/render/batch", "[\"*One*\", \"Two\"]");
+		post("/render", new String(new char[2000]));
+
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/metrics")).GET().build(),
+				HttpResponse.BodyHandlers.ofString());
+
+		assertThat(response.statusCode()).isEqualTo(200);
+//		System.out.println(response.body());
+		assertThat(response.body())
+				.contains("plainmark_requests_total{endpoint=\"render\"} 3\n")
+				.contains("plainmark_requests_total{endpoint=\"batch\"} 1\n")
+				.contains("plainmark_errors_total{endpoint=\"render\"} 1\n")
+				.contains("plainmark_rejected_total 1\n")
+				.contains("plainmark_received_bytes_total " + (2 * TEXT.getBytes(StandardCharsets.UTF_8).length + 16) + "\n")
+				.contains("plainmark_in_flight 1\n");
+	}
+
+	@Test
+	public void testLoadGenerator() throws Exception
+	{
+		LoadGenerator generator = new LoadGenerator(uri("/render"), TEXT, 4);
+
+		LoadGenerator.Result result = generator.run(200);
+
+//		System.out.println(result);
+		assertThat(result.getRequestCount()).isEqualTo(200);
+		assertThat(result.getErrorCount()).isZero();
+		assertThat(result.getLatencyPercentile(50)).isPositive().isLessThanOrEqualTo(result.getLatencyPercentile(99));
+		assertThat(server.getMetrics()).contains("plainmark_requests_total{endpoint=\"render\"} 200\n");
+	}
+
+	private HttpResponse<String> post(String path, String body) throws Exception
+	{
+		HttpRequest request = HttpRequest.newBuilder(uri(path))
+				.POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8)).build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+	}
+
+	private URI uri(String path)
+	{
+		return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+	}
+}